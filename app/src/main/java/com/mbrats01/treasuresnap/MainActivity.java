@@ -71,6 +71,19 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
+    // Proximity alerts only follow the player while the app is in the foreground
+    @Override
+    protected void onStart() {
+        super.onStart();
+        TreasureSnapApplication.getProximityMonitor(this).start();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        TreasureSnapApplication.getProximityMonitor(this).stop();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
@@ -0,0 +1,66 @@
+package com.mbrats01.treasuresnap;
+
+import android.app.Application;
+import android.content.Context;
+
+import androidx.core.content.ContextCompat;
+
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureStore;
+import com.mbrats01.treasuresnap.image.PhotoInfoBackfill;
+import com.mbrats01.treasuresnap.image.ThumbnailCache;
+import com.mbrats01.treasuresnap.image.ThumbnailLoader;
+import com.mbrats01.treasuresnap.location.ProximityMonitor;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class TreasureSnapApplication extends Application {
+
+    private static final long THUMBNAIL_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // Imports and exports wait on the main thread, so they get their own thread
+    private final ExecutorService transferExecutor = Executors.newSingleThreadExecutor();
+    private TreasureRepository treasureRepository;
+    private ThumbnailLoader thumbnailLoader;
+    private ProximityMonitor proximityMonitor;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Start loading saved treasures as early as possible
+        treasureRepository = TreasureStore.open(
+                new File(getFilesDir(), "treasures.log"),
+                getFilesDir(),
+                ioExecutor,
+                ContextCompat.getMainExecutor(this));
+
+        ThumbnailCache thumbnailCache = new ThumbnailCache(
+                new File(getCacheDir(), "thumbnails"), THUMBNAIL_CACHE_BYTES);
+        thumbnailLoader = new ThumbnailLoader(thumbnailCache, getResources().getDisplayMetrics());
+
+        // Older treasures have no stored photo metadata yet, read it once in the background
+        new PhotoInfoBackfill(treasureRepository, ioExecutor).start();
+
+        proximityMonitor = new ProximityMonitor(this, treasureRepository);
+    }
+
+    public static TreasureRepository getTreasureRepository(Context context) {
+        return ((TreasureSnapApplication) context.getApplicationContext()).treasureRepository;
+    }
+
+    public static ThumbnailLoader getThumbnailLoader(Context context) {
+        return ((TreasureSnapApplication) context.getApplicationContext()).thumbnailLoader;
+    }
+
+    public static ExecutorService getTransferExecutor(Context context) {
+        return ((TreasureSnapApplication) context.getApplicationContext()).transferExecutor;
+    }
+
+    public static ProximityMonitor getProximityMonitor(Context context) {
+        return ((TreasureSnapApplication) context.getApplicationContext()).proximityMonitor;
+    }
+}
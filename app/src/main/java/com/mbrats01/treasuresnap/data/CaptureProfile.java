@@ -0,0 +1,32 @@
+package com.mbrats01.treasuresnap.data;
+
+// How a photo was captured: tuned for a fast shutter, for image quality, or left at the camera
+// defaults. Stored with each treasure by its code, so codes must never change.
+public enum CaptureProfile {
+    // Camera defaults; also what every treasure captured before profiles existed was taken with
+    STANDARD(0),
+    // Shortest shutter lag, for captures on the move
+    FAST(1),
+    // Full resolution and finer JPEG compression, for showcase treasures
+    QUALITY(2);
+
+    private final int code;
+
+    CaptureProfile(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    // The profile with the given code, or STANDARD for a code this version doesn't know
+    public static CaptureProfile fromCode(int code) {
+        for (CaptureProfile profile : values()) {
+            if (profile.code == code) {
+                return profile;
+            }
+        }
+        return STANDARD;
+    }
+}
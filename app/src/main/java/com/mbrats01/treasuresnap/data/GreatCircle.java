@@ -0,0 +1,70 @@
+package com.mbrats01.treasuresnap.data;
+
+/**
+ * Great-circle distances on a spherical Earth. Searches compare haversine values
+ * (sin²(θ/2) of the central angle θ) instead of metres, since they grow with the distance and
+ * need no inverse trigonometry.
+ */
+public final class GreatCircle {
+
+    // Mean Earth radius
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private GreatCircle() {
+    }
+
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        return toMeters(haversine(lat1, lon1, Math.cos(Math.toRadians(lat1)), lat2, lon2));
+    }
+
+    // Haversine of the central angle between two points; cosLat1 is cos(lat1) in radians
+    static double haversine(double lat1, double lon1, double cosLat1, double lat2, double lon2) {
+        return haversine(haverSin(Math.toRadians(lon1 - lon2)), cosLat1, lat1, lat2);
+    }
+
+    // Same with the longitude term already worked out, for comparing against several latitudes
+    static double haversine(double haverSinDLon, double cosLat1, double lat1, double lat2) {
+        return cosLat1 * Math.cos(Math.toRadians(lat2)) * haverSinDLon + haverSin(Math.toRadians(lat1 - lat2));
+    }
+
+    // Lower bound of the haversine from a point to any point of a latitude/longitude box
+    static double haversineToBox(double lat, double lon, double cosLat,
+                                 double south, double west, double north, double east) {
+        if (lon >= west && lon <= east) {
+            if (lat < south) {
+                return haverSin(Math.toRadians(lat - south));
+            }
+            return lat > north ? haverSin(Math.toRadians(lat - north)) : 0;
+        }
+        // The closest point lies on the nearer of the west and east edges: at the foot of the
+        // perpendicular if that falls on the edge, otherwise at a corner
+        double haverSinDLon = Math.min(haverSin(Math.toRadians(lon - west)), haverSin(Math.toRadians(lon - east)));
+        double vertexLat = vertexLatitude(lat, haverSinDLon);
+        if (vertexLat > south && vertexLat < north) {
+            return haversine(haverSinDLon, cosLat, lat, vertexLat);
+        }
+        return Math.min(haversine(haverSinDLon, cosLat, lat, south), haversine(haverSinDLon, cosLat, lat, north));
+    }
+
+    static double toMeters(double haversine) {
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.sqrt(Math.min(1, haversine)));
+    }
+
+    static double fromMeters(double meters) {
+        return haverSin(Math.min(Math.PI, meters / EARTH_RADIUS_METERS));
+    }
+
+    private static double haverSin(double theta) {
+        double s = Math.sin(theta / 2);
+        return s * s;
+    }
+
+    // Latitude of the point closest to lat on a meridian the given longitude difference away
+    private static double vertexLatitude(double lat, double haverSinDLon) {
+        double cosDLon = 1 - 2 * haverSinDLon;
+        if (cosDLon <= 0) {
+            return lat > 0 ? 90 : -90;
+        }
+        return Math.toDegrees(Math.atan(Math.tan(Math.toRadians(lat)) / cosDLon));
+    }
+}
@@ -0,0 +1,178 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Static 2D k-d tree stored implicitly in the order of its coordinate arrays (in the style of
+ * KDBush): {@link #build} reorders the points in place, after which range and radius queries
+ * need no extra memory beyond the arrays themselves.
+ */
+final class KdTree2D {
+
+    static final int NODE_SIZE = 64;
+
+    private KdTree2D() {
+    }
+
+    // Reorders ids, x and y (first n entries) into k-d order
+    static void build(int[] ids, double[] x, double[] y, int n) {
+        sort(ids, x, y, 0, n - 1, 0);
+    }
+
+    // Reports the array positions of points inside the box
+    static void range(double[] x, double[] y, int n,
+                      double minX, double minY, double maxX, double maxY, IntConsumer consumer) {
+        if (n == 0) return;
+        int[] stack = new int[3 * 64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int axis = stack[--top];
+            int right = stack[--top];
+            int left = stack[--top];
+
+            if (right - left <= NODE_SIZE) {
+                for (int i = left; i <= right; i++) {
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        consumer.accept(i);
+                    }
+                }
+                continue;
+            }
+
+            int m = (left + right) >> 1;
+            if (x[m] >= minX && x[m] <= maxX && y[m] >= minY && y[m] <= maxY) {
+                consumer.accept(m);
+            }
+            if (axis == 0 ? minX <= x[m] : minY <= y[m]) {
+                stack = push(stack, top, left, m - 1, 1 - axis);
+                top += 3;
+            }
+            if (axis == 0 ? maxX >= x[m] : maxY >= y[m]) {
+                stack = push(stack, top, m + 1, right, 1 - axis);
+                top += 3;
+            }
+        }
+    }
+
+    // Reports the array positions of points within distance r of (qx, qy)
+    static void within(double[] x, double[] y, int n, double qx, double qy, double r, IntConsumer consumer) {
+        if (n == 0) return;
+        double r2 = r * r;
+        int[] stack = new int[3 * 64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            int axis = stack[--top];
+            int right = stack[--top];
+            int left = stack[--top];
+
+            if (right - left <= NODE_SIZE) {
+                for (int i = left; i <= right; i++) {
+                    if (squaredDistance(x[i], y[i], qx, qy) <= r2) {
+                        consumer.accept(i);
+                    }
+                }
+                continue;
+            }
+
+            int m = (left + right) >> 1;
+            if (squaredDistance(x[m], y[m], qx, qy) <= r2) {
+                consumer.accept(m);
+            }
+            if (axis == 0 ? qx - r <= x[m] : qy - r <= y[m]) {
+                stack = push(stack, top, left, m - 1, 1 - axis);
+                top += 3;
+            }
+            if (axis == 0 ? qx + r >= x[m] : qy + r >= y[m]) {
+                stack = push(stack, top, m + 1, right, 1 - axis);
+                top += 3;
+            }
+        }
+    }
+
+    private static int[] push(int[] stack, int top, int left, int right, int axis) {
+        if (top + 3 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top] = left;
+        stack[top + 1] = right;
+        stack[top + 2] = axis;
+        return stack;
+    }
+
+    private static void sort(int[] ids, double[] x, double[] y, int left, int right, int axis) {
+        if (right - left <= NODE_SIZE) return;
+        int m = (left + right) >> 1;
+        select(ids, x, y, m, left, right, axis);
+        sort(ids, x, y, left, m - 1, 1 - axis);
+        sort(ids, x, y, m + 1, right, 1 - axis);
+    }
+
+    // Floyd-Rivest selection: puts the k-th smallest coordinate on the given axis at position k
+    private static void select(int[] ids, double[] x, double[] y, int k, int left, int right, int axis) {
+        double[] c = axis == 0 ? x : y;
+        while (right > left) {
+            if (right - left > 600) {
+                int n = right - left + 1;
+                int m = k - left + 1;
+                double z = Math.log(n);
+                double s = 0.5 * Math.exp(2 * z / 3);
+                double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * (m - n / 2 < 0 ? -1 : 1);
+                int newLeft = (int) Math.max(left, Math.floor(k - m * s / n + sd));
+                int newRight = (int) Math.min(right, Math.floor(k + (n - m) * s / n + sd));
+                select(ids, x, y, k, newLeft, newRight, axis);
+            }
+
+            double t = c[k];
+            int i = left;
+            int j = right;
+
+            swap(ids, x, y, left, k);
+            if (c[right] > t) swap(ids, x, y, left, right);
+
+            while (i < j) {
+                swap(ids, x, y, i, j);
+                i++;
+                j--;
+                while (c[i] < t) i++;
+                while (c[j] > t) j--;
+            }
+
+            if (c[left] == t) {
+                swap(ids, x, y, left, j);
+            } else {
+                j++;
+                swap(ids, x, y, j, right);
+            }
+
+            if (j <= k) left = j + 1;
+            if (k <= j) right = j - 1;
+        }
+    }
+
+    private static void swap(int[] ids, double[] x, double[] y, int i, int j) {
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        double t = x[i];
+        x[i] = x[j];
+        x[j] = t;
+        t = y[i];
+        y[i] = y[j];
+        y[j] = t;
+    }
+
+    private static double squaredDistance(double ax, double ay, double bx, double by) {
+        double dx = ax - bx;
+        double dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,35 @@
+package com.mbrats01.treasuresnap.data;
+
+// Photo metadata recorded once at capture time so display code never has to re-read the file
+public class PhotoInfo {
+
+    // EXIF orientation value used until the metadata is known
+    public static final int ORIENTATION_UNKNOWN = -1;
+    public static final PhotoInfo UNKNOWN = new PhotoInfo(ORIENTATION_UNKNOWN, 0, 0, 0);
+
+    private final int orientation;
+    private final int width;
+    private final int height;
+    private final long fileSize;
+
+    public PhotoInfo(int orientation, int width, int height, long fileSize) {
+        this.orientation = orientation;
+        this.width = width;
+        this.height = height;
+        this.fileSize = fileSize;
+    }
+
+    // EXIF orientation tag value, or ORIENTATION_UNKNOWN
+    public int getOrientation() { return orientation; }
+
+    // Stored pixel dimensions, before the orientation is applied
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public long getFileSize() { return fileSize; }
+
+    public boolean isKnown() {
+        return orientation != ORIENTATION_UNKNOWN;
+    }
+}
@@ -0,0 +1,60 @@
+package com.mbrats01.treasuresnap.data;
+
+// A single find: the photo that was taken, where/when and how it was taken
+public class Treasure {
+
+    // Id of a treasure that has not been stored yet; stored treasures are numbered from 1
+    public static final long NO_ID = 0;
+
+    private final long id;
+    private final String photoPath;
+    private final double latitude;
+    private final double longitude;
+    private final long timestamp;
+    private final PhotoInfo photoInfo;
+    private final CaptureProfile captureProfile;
+
+    public Treasure(String photoPath, double latitude, double longitude, long timestamp) {
+        this(photoPath, latitude, longitude, timestamp, PhotoInfo.UNKNOWN);
+    }
+
+    public Treasure(String photoPath, double latitude, double longitude, long timestamp, PhotoInfo photoInfo) {
+        this(NO_ID, photoPath, latitude, longitude, timestamp, photoInfo);
+    }
+
+    public Treasure(String photoPath, double latitude, double longitude, long timestamp, PhotoInfo photoInfo,
+                    CaptureProfile captureProfile) {
+        this(NO_ID, photoPath, latitude, longitude, timestamp, photoInfo, captureProfile);
+    }
+
+    public Treasure(long id, String photoPath, double latitude, double longitude, long timestamp,
+                    PhotoInfo photoInfo) {
+        this(id, photoPath, latitude, longitude, timestamp, photoInfo, CaptureProfile.STANDARD);
+    }
+
+    public Treasure(long id, String photoPath, double latitude, double longitude, long timestamp,
+                    PhotoInfo photoInfo, CaptureProfile captureProfile) {
+        this.id = id;
+        this.photoPath = photoPath;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.timestamp = timestamp;
+        this.photoInfo = photoInfo;
+        this.captureProfile = captureProfile;
+    }
+
+    // Stable id assigned by the repository, NO_ID until the treasure has been added
+    public long getId() { return id; }
+
+    public String getPhotoPath() { return photoPath; }
+
+    public double getLatitude() { return latitude; }
+
+    public double getLongitude() { return longitude; }
+
+    public long getTimestamp() { return timestamp; }
+
+    public PhotoInfo getPhotoInfo() { return photoInfo; }
+
+    public CaptureProfile getCaptureProfile() { return captureProfile; }
+}
@@ -0,0 +1,90 @@
+package com.mbrats01.treasuresnap.data;
+
+/**
+ * Bounded history of row additions and removals, stamped with the data version they produced.
+ * Lets a consumer that rendered version {@code v} apply just the changes made after it, and
+ * tells it to rebuild from scratch when those changes have already been dropped.
+ */
+public class TreasureChangeLog {
+
+    // Receives the changes made after a given version, oldest first
+    public interface Visitor {
+        void onChange(int row, boolean added);
+    }
+
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final long[] versions;
+    private final int[] rows;
+    private final boolean[] additions;
+    private int start;
+    private int count;
+    private long version;
+    // Changes up to and including this version are no longer retained
+    private long droppedVersion;
+
+    public TreasureChangeLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TreasureChangeLog(int capacity) {
+        versions = new long[capacity];
+        rows = new int[capacity];
+        additions = new boolean[capacity];
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void recordAdded(int row) {
+        record(row, true);
+    }
+
+    public void recordRemoved(int row) {
+        record(row, false);
+    }
+
+    // Records a contiguous run of appended rows as a single version
+    public void recordAdded(int fromRow, int toRow) {
+        version++;
+        for (int row = fromRow; row < toRow; row++) {
+            push(row, true);
+        }
+    }
+
+    /**
+     * Visits every change made after {@code sinceVersion}. Returns false, without visiting
+     * anything, if some of those changes were already dropped and the caller must rebuild.
+     */
+    public boolean changesSince(long sinceVersion, Visitor visitor) {
+        if (sinceVersion < droppedVersion) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int slot = (start + i) % versions.length;
+            if (versions[slot] > sinceVersion) {
+                visitor.onChange(rows[slot], additions[slot]);
+            }
+        }
+        return true;
+    }
+
+    private void record(int row, boolean added) {
+        version++;
+        push(row, added);
+    }
+
+    private void push(int row, boolean added) {
+        if (count == versions.length) {
+            droppedVersion = versions[start];
+            start = (start + 1) % versions.length;
+            count--;
+        }
+        int slot = (start + count) % versions.length;
+        versions[slot] = version;
+        rows[slot] = row;
+        additions[slot] = added;
+        count++;
+    }
+}
@@ -0,0 +1,402 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical point clustering precomputed for every zoom level, in the style of supercluster.
+ *
+ * Points are projected to Web Mercator world coordinates in [0, 1]. The finest level holds the
+ * points themselves; each coarser zoom merges the nodes of the level below that fall within the
+ * cluster radius at that zoom. Every level is stored as a static k-d tree, so fetching the
+ * clusters for a zoom and viewport is a level lookup plus a range query.
+ *
+ * Built with timestamps, every node also knows the time span of its points, so a time range is
+ * a query as well: nodes wholly inside it are reported as they are, nodes partly inside it with
+ * the count and centre of just their points in range, found without visiting whole subtrees
+ * that are inside or outside it.
+ */
+public class TreasureClusterIndex {
+
+    // Receives one cluster (or single point when count == 1) per call
+    public interface ClusterVisitor {
+        void visit(int zoom, int node, double latitude, double longitude, int count);
+    }
+
+    private final int minZoom;
+    private final int maxZoom;
+    // Cluster radius in world units at zoom 0
+    private final double worldRadius;
+    // levels[z - minZoom] for z in [minZoom, maxZoom + 1]; the last one holds the points
+    private final Level[] levels;
+    // Position of every leaf in the points level
+    private final int[] leafNodes;
+
+    private TreasureClusterIndex(int minZoom, int maxZoom, double worldRadius, Level[] levels) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+        this.worldRadius = worldRadius;
+        this.levels = levels;
+        Level points = levels[levels.length - 1];
+        leafNodes = new int[points.size];
+        for (int node = 0; node < points.size; node++) {
+            leafNodes[points.ids[node]] = node;
+        }
+    }
+
+    /**
+     * Builds the hierarchy for n points. {@code radius} is the cluster radius in the same units
+     * as {@code tileSize} (dp on Google Maps, where the world is 256dp wide at zoom 0).
+     * Point i is reported by getLeaves() as leaf id i.
+     */
+    public static TreasureClusterIndex build(double[] latitudes, double[] longitudes, int n,
+                                             int minZoom, int maxZoom, double radius, double tileSize) {
+        return build(latitudes, longitudes, null, n, minZoom, maxZoom, radius, tileSize);
+    }
+
+    // As above, with the capture time of every point for time range queries; null for none
+    public static TreasureClusterIndex build(double[] latitudes, double[] longitudes, long[] timestamps,
+                                             int n, int minZoom, int maxZoom, double radius,
+                                             double tileSize) {
+        Level[] levels = new Level[maxZoom - minZoom + 2];
+
+        Level points = new Level(n);
+        for (int i = 0; i < n; i++) {
+            points.x[i] = longitudeToX(longitudes[i]);
+            points.y[i] = latitudeToY(latitudes[i]);
+            points.ids[i] = i;
+        }
+        Arrays.fill(points.count, 0, n, 1);
+        points.size = n;
+        KdTree2D.build(points.ids, points.x, points.y, n);
+        if (timestamps != null) {
+            points.minTime = new long[n];
+            for (int i = 0; i < n; i++) {
+                points.minTime[i] = timestamps[points.ids[i]];
+            }
+            points.maxTime = points.minTime;
+        }
+        levels[levels.length - 1] = points;
+
+        for (int zoom = maxZoom; zoom >= minZoom; zoom--) {
+            Level finer = levels[zoom - minZoom + 1];
+            double r = radius / (tileSize * Math.pow(2, zoom));
+            levels[zoom - minZoom] = finer.merge(r);
+        }
+        return new TreasureClusterIndex(minZoom, maxZoom, radius / tileSize, levels);
+    }
+
+    public int getMaxZoom() {
+        return maxZoom;
+    }
+
+    // Number of clusters and single points at the given zoom
+    public int getNodeCount(float zoom) {
+        return levels[levelIndex(zoom)].size;
+    }
+
+    /**
+     * Visits the clusters at the given zoom whose centre lies in the box. A box whose west edge
+     * is greater than its east edge crosses the antimeridian.
+     */
+    public void getClusters(float zoom, double south, double west, double north, double east,
+                            ClusterVisitor visitor) {
+        getClusters(zoom, south, west, north, east, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * As above, limited to the points captured between from and to inclusive: clusters are
+     * reported with the count and centre of their points in the range and skipped if they have
+     * none. Without timestamps the range is ignored.
+     */
+    public void getClusters(float zoom, double south, double west, double north, double east,
+                            long from, long to, ClusterVisitor visitor) {
+        int level = levelIndex(zoom);
+        Level nodes = levels[level];
+        // x and y weighted by count, and the count, of the points of one node in range
+        double[] sum = new double[3];
+        IntConsumer report = !hasTimeRange(nodes, from, to)
+                ? node -> report(level, node, visitor)
+                : node -> reportInRange(level, node, from, to, sum, visitor);
+
+        double minY = latitudeToY(north);
+        double maxY = latitudeToY(south);
+        if (east - west >= 360) {
+            KdTree2D.range(nodes.x, nodes.y, nodes.size, 0, minY, 1, maxY, report);
+        } else if (west > east) {
+            KdTree2D.range(nodes.x, nodes.y, nodes.size, longitudeToX(west), minY, 1, maxY, report);
+            KdTree2D.range(nodes.x, nodes.y, nodes.size, 0, minY, longitudeToX(east), maxY, report);
+        } else {
+            KdTree2D.range(nodes.x, nodes.y, nodes.size, longitudeToX(west), minY, longitudeToX(east), maxY, report);
+        }
+    }
+
+    // Visits every node of the given zoom
+    public void getClusters(float zoom, ClusterVisitor visitor) {
+        getClusters(zoom, -90, -180, 90, 180, visitor);
+    }
+
+    // Distance in world units within which nodes were merged into the clusters of the given
+    // zoom; 0 past the last cluster level, where every point is its own node
+    public double getRadius(float zoom) {
+        int level = levelIndex(zoom);
+        return level == levels.length - 1 ? 0 : worldRadius / Math.pow(2, level + minZoom);
+    }
+
+    // Reports the nodes of the given zoom whose centre is within r of the world position x, y
+    public void getNodesWithin(float zoom, double x, double y, double r, IntConsumer consumer) {
+        Level nodes = levels[levelIndex(zoom)];
+        KdTree2D.within(nodes.x, nodes.y, nodes.size, x, y, r, consumer);
+    }
+
+    // The node of the given zoom that holds a leaf, as reported by getClusters()
+    public int getNode(float zoom, int leaf) {
+        int level = levelIndex(zoom);
+        int node = leafNodes[leaf];
+        for (int finer = levels.length - 1; finer > level; finer--) {
+            node = levels[finer].parent[node];
+        }
+        return node;
+    }
+
+    private void report(int level, int node, ClusterVisitor visitor) {
+        Level nodes = levels[level];
+        visitor.visit(level + minZoom, node,
+                yToLatitude(nodes.y[node]), xToLongitude(nodes.x[node]), nodes.count[node]);
+    }
+
+    private void reportInRange(int level, int node, long from, long to, double[] sum,
+                               ClusterVisitor visitor) {
+        Level nodes = levels[level];
+        if (nodes.maxTime[node] < from || nodes.minTime[node] > to) {
+            return;
+        }
+        if (nodes.minTime[node] >= from && nodes.maxTime[node] <= to) {
+            report(level, node, visitor);
+            return;
+        }
+        sum[0] = 0;
+        sum[1] = 0;
+        sum[2] = 0;
+        sumInRange(level, node, from, to, sum);
+        // The span can overlap the range without any point falling inside it
+        if (sum[2] > 0) {
+            visitor.visit(level + minZoom, node,
+                    yToLatitude(sum[1] / sum[2]), xToLongitude(sum[0] / sum[2]), (int) sum[2]);
+        }
+    }
+
+    // Node positions are the centres of their points, so a subtree wholly in range adds its
+    // position times its count without being visited
+    private void sumInRange(int level, int node, long from, long to, double[] sum) {
+        Level nodes = levels[level];
+        if (nodes.maxTime[node] < from || nodes.minTime[node] > to) {
+            return;
+        }
+        if (nodes.minTime[node] >= from && nodes.maxTime[node] <= to) {
+            sum[0] += nodes.x[node] * nodes.count[node];
+            sum[1] += nodes.y[node] * nodes.count[node];
+            sum[2] += nodes.count[node];
+            return;
+        }
+        for (int i = nodes.childStart[node]; i < nodes.childStart[node + 1]; i++) {
+            sumInRange(level + 1, nodes.children[i], from, to, sum);
+        }
+    }
+
+    private static boolean hasTimeRange(Level nodes, long from, long to) {
+        return nodes.minTime != null && (from != Long.MIN_VALUE || to != Long.MAX_VALUE);
+    }
+
+    // Reports the leaf ids of every point inside a node returned by getClusters()
+    public void getLeaves(int zoom, int node, IntConsumer consumer) {
+        collectLeaves(zoom - minZoom, node, consumer);
+    }
+
+    // As above, only for the points captured between from and to inclusive
+    public void getLeaves(int zoom, int node, long from, long to, IntConsumer consumer) {
+        int level = zoom - minZoom;
+        if (!hasTimeRange(levels[level], from, to)) {
+            collectLeaves(level, node, consumer);
+        } else {
+            collectLeavesInRange(level, node, from, to, consumer);
+        }
+    }
+
+    private void collectLeavesInRange(int level, int node, long from, long to, IntConsumer consumer) {
+        Level nodes = levels[level];
+        if (nodes.maxTime[node] < from || nodes.minTime[node] > to) {
+            return;
+        }
+        if (nodes.minTime[node] >= from && nodes.maxTime[node] <= to) {
+            collectLeaves(level, node, consumer);
+            return;
+        }
+        for (int i = nodes.childStart[node]; i < nodes.childStart[node + 1]; i++) {
+            collectLeavesInRange(level + 1, nodes.children[i], from, to, consumer);
+        }
+    }
+
+    private void collectLeaves(int level, int node, IntConsumer consumer) {
+        Level nodes = levels[level];
+        if (level == levels.length - 1) {
+            consumer.accept(nodes.ids[node]);
+            return;
+        }
+        for (int i = nodes.childStart[node]; i < nodes.childStart[node + 1]; i++) {
+            collectLeaves(level + 1, nodes.children[i], consumer);
+        }
+    }
+
+    private int levelIndex(float zoom) {
+        int z = (int) Math.floor(zoom);
+        return Math.max(minZoom, Math.min(z, maxZoom + 1)) - minZoom;
+    }
+
+    public static double longitudeToX(double longitude) {
+        return longitude / 360 + 0.5;
+    }
+
+    public static double latitudeToY(double latitude) {
+        double sin = Math.sin(Math.toRadians(latitude));
+        double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+        return y < 0 ? 0 : y > 1 ? 1 : y;
+    }
+
+    public static double xToLongitude(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    public static double yToLatitude(double y) {
+        double y2 = (180 - y * 360) * Math.PI / 180;
+        return 360 * Math.atan(Math.exp(y2)) / Math.PI - 90;
+    }
+
+    // One zoom level, stored in k-d order
+    private static final class Level {
+        double[] x;
+        double[] y;
+        int[] count;
+        // Points level: original leaf id. Cluster levels: position before k-d sorting
+        int[] ids;
+        // Cluster levels only: children of node i are children[childStart[i] .. childStart[i + 1])
+        int[] childStart;
+        int[] children;
+        // Node of the next coarser level that holds node i; null for the coarsest level
+        int[] parent;
+        // Earliest and latest capture time under each node, null when built without timestamps
+        long[] minTime;
+        long[] maxTime;
+        int size;
+
+        Level(int capacity) {
+            x = new double[capacity];
+            y = new double[capacity];
+            count = new int[capacity];
+            ids = new int[capacity];
+        }
+
+        // Greedily merges every node with its unclaimed neighbours within radius r
+        Level merge(double r) {
+            Level next = new Level(size);
+            int[] childStartUnsorted = new int[size + 1];
+            int[] childrenUnsorted = new int[size];
+            boolean[] claimed = new boolean[size];
+            IntList neighbours = new IntList();
+            int childCount = 0;
+
+            for (int i = 0; i < size; i++) {
+                if (claimed[i]) continue;
+                claimed[i] = true;
+
+                neighbours.size = 0;
+                KdTree2D.within(x, y, size, x[i], y[i], r, neighbours);
+
+                int node = next.size++;
+                childStartUnsorted[node] = childCount;
+                childrenUnsorted[childCount++] = i;
+                double wx = x[i] * count[i];
+                double wy = y[i] * count[i];
+                int total = count[i];
+                for (int k = 0; k < neighbours.size; k++) {
+                    int j = neighbours.values[k];
+                    if (claimed[j]) continue;
+                    claimed[j] = true;
+                    childrenUnsorted[childCount++] = j;
+                    wx += x[j] * count[j];
+                    wy += y[j] * count[j];
+                    total += count[j];
+                }
+                next.x[node] = wx / total;
+                next.y[node] = wy / total;
+                next.count[node] = total;
+                next.ids[node] = node;
+            }
+            childStartUnsorted[next.size] = childCount;
+
+            next.trim();
+            KdTree2D.build(next.ids, next.x, next.y, next.size);
+
+            // Re-lay the counts and child lists out in the k-d order of the new level
+            int[] sortedCount = new int[next.size];
+            next.childStart = new int[next.size + 1];
+            next.children = new int[childCount];
+            int offset = 0;
+            for (int node = 0; node < next.size; node++) {
+                int original = next.ids[node];
+                sortedCount[node] = next.count[original];
+                next.childStart[node] = offset;
+                for (int c = childStartUnsorted[original]; c < childStartUnsorted[original + 1]; c++) {
+                    next.children[offset++] = childrenUnsorted[c];
+                }
+            }
+            next.childStart[next.size] = offset;
+            next.count = sortedCount;
+            next.ids = null;
+
+            parent = new int[size];
+            for (int node = 0; node < next.size; node++) {
+                for (int c = next.childStart[node]; c < next.childStart[node + 1]; c++) {
+                    parent[next.children[c]] = node;
+                }
+            }
+
+            if (minTime != null) {
+                next.minTime = new long[next.size];
+                next.maxTime = new long[next.size];
+                for (int node = 0; node < next.size; node++) {
+                    long min = Long.MAX_VALUE;
+                    long max = Long.MIN_VALUE;
+                    for (int c = next.childStart[node]; c < next.childStart[node + 1]; c++) {
+                        min = Math.min(min, minTime[next.children[c]]);
+                        max = Math.max(max, maxTime[next.children[c]]);
+                    }
+                    next.minTime[node] = min;
+                    next.maxTime[node] = max;
+                }
+            }
+            return next;
+        }
+
+        void trim() {
+            x = Arrays.copyOf(x, size);
+            y = Arrays.copyOf(y, size);
+            count = Arrays.copyOf(count, size);
+            ids = Arrays.copyOf(ids, size);
+        }
+    }
+
+    // Growable int buffer reused across neighbour queries
+    private static final class IntList implements IntConsumer {
+        int[] values = new int[16];
+        int size;
+
+        @Override
+        public void accept(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Arrays;
+
+/**
+ * Hash index from treasure id to table row, stored in two primitive arrays (open addressing
+ * with linear probing) so lookups never box the key or allocate.
+ */
+public class TreasureIdIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Id 0 is never assigned, so it marks an empty slot
+    private static final long EMPTY = Treasure.NO_ID;
+
+    private long[] keys;
+    private int[] rows;
+    private int size;
+    private int mask;
+
+    public TreasureIdIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TreasureIdIndex(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Row of the given id, or -1 if it is not indexed
+    public int get(long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        for (int slot = slot(id); ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == id) {
+                return rows[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    public void put(long id, int row) {
+        if (id == EMPTY) {
+            throw new IllegalArgumentException("Id " + EMPTY + " can't be indexed");
+        }
+        int slot = slot(id);
+        while (keys[slot] != EMPTY && keys[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == EMPTY) {
+            keys[slot] = id;
+            if (++size * 2 > keys.length) {
+                rows[slot] = row;
+                grow();
+                return;
+            }
+        }
+        rows[slot] = row;
+    }
+
+    // Removes an id, returns its row or -1 if it was not indexed
+    public int remove(long id) {
+        if (id == EMPTY) {
+            return -1;
+        }
+        int slot = slot(id);
+        while (keys[slot] != id) {
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int row = rows[slot];
+        size--;
+
+        // Shift later entries of the probe run back so lookups never stop at the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                rows[hole] = rows[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        return row;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                rows[slot] = oldRows[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        rows = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(long id) {
+        // Fibonacci hashing spreads sequential ids over the whole table
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
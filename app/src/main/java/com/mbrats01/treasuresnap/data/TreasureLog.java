@@ -0,0 +1,354 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Append-only binary log of treasures. Every record has the same size, so appending is a
+ * single positional write and record {@code i} always lives at {@code HEADER_SIZE + i * RECORD_SIZE}.
+ *
+ * Layout: header (magic, version, record size) followed by records of
+ * latitude, longitude, timestamp, photo file size, width, height, EXIF orientation, treasure id,
+ * photo reference length, capture profile and the UTF-8 photo reference. Logs written by an older version are
+ * rewritten in the current layout when opened.
+ */
+public class TreasureLog implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger("TreasureLog");
+
+    static final int MAGIC = 0x54534E50; // "TSNP"
+    static final int VERSION = 4;
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_SIZE = 128;
+    // Records encoded into one buffer by appendAll()
+    private static final int APPEND_CHUNK_RECORDS = 1024;
+
+    // Field offsets inside a record
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 8;
+    private static final int TIMESTAMP = 16;
+    private static final int FILE_SIZE = 24;
+    private static final int WIDTH = 32;
+    private static final int HEIGHT = 36;
+    private static final int ORIENTATION = 40;
+    private static final int ID = 42;
+    // A byte is plenty for MAX_PHOTO_REF_BYTES, which leaves room for the profile
+    private static final int PHOTO_REF_LENGTH = 50;
+    private static final int CAPTURE_PROFILE = 51;
+    private static final int PHOTO_REF = 52;
+    static final int MAX_PHOTO_REF_BYTES = RECORD_SIZE - PHOTO_REF;
+
+    // Version 1 records: latitude, longitude, timestamp, photo reference length, photo reference
+    private static final int V1_PHOTO_REF_LENGTH = 24;
+    private static final int V1_PHOTO_REF = 26;
+    // Version 2 records: version 1 plus the photo metadata, no id
+    private static final int V2_PHOTO_REF_LENGTH = 42;
+    private static final int V2_PHOTO_REF = 44;
+    // Version 3 records: version 2 plus the id, no capture profile, a two byte reference length
+    private static final int V3_PHOTO_REF_LENGTH = 50;
+
+    // One decoded record; read() reuses a single instance for every record it visits
+    public static class Record {
+        public long id = Treasure.NO_ID;
+        public String photoRef;
+        public double latitude;
+        public double longitude;
+        public long timestamp;
+        public int orientation = PhotoInfo.ORIENTATION_UNKNOWN;
+        public int width;
+        public int height;
+        public long fileSize;
+        public CaptureProfile captureProfile = CaptureProfile.STANDARD;
+
+        public void setPhotoInfo(PhotoInfo info) {
+            orientation = info.getOrientation();
+            width = info.getWidth();
+            height = info.getHeight();
+            fileSize = info.getFileSize();
+        }
+
+        public PhotoInfo getPhotoInfo() {
+            return orientation == PhotoInfo.ORIENTATION_UNKNOWN
+                    ? PhotoInfo.UNKNOWN
+                    : new PhotoInfo(orientation, width, height, fileSize);
+        }
+    }
+
+    // Receives decoded records while reading
+    public interface RecordVisitor {
+        void visit(Record record);
+    }
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private long recordCount;
+
+    private TreasureLog(RandomAccessFile file, long recordCount) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.recordCount = recordCount;
+    }
+
+    // Opens (or creates) the log and drops a half-written record left behind by a crash
+    public static TreasureLog open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel);
+                return new TreasureLog(file, 0);
+            }
+
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a treasure log: " + path);
+            }
+            int version = header.getInt();
+            int recordSize = header.getInt();
+            if (version < VERSION && recordSize == RECORD_SIZE) {
+                file.close();
+                migrate(path, version);
+                return open(path);
+            }
+            if (version != VERSION || recordSize != RECORD_SIZE) {
+                throw new IOException("Unsupported treasure log version " + version);
+            }
+
+            long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+            long validSize = HEADER_SIZE + records * RECORD_SIZE;
+            if (channel.size() != validSize) {
+                channel.truncate(validSize);
+            }
+            return new TreasureLog(file, records);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    // Whether the photo reference fits in a record
+    public static boolean fitsPhotoRef(String photoRef) {
+        return encode(photoRef).length <= MAX_PHOTO_REF_BYTES;
+    }
+
+    // Throws if the photo reference cannot fit in a record
+    public static void checkPhotoRef(String photoRef) {
+        if (!fitsPhotoRef(photoRef)) {
+            throw new IllegalArgumentException("Photo reference too long: " + photoRef);
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    // Appends one record at the end of the log; call sync() to make it durable
+    public synchronized void append(Record record) throws IOException {
+        checkPhotoRef(record.photoRef);
+        recordBuffer.clear();
+        encode(record, recordBuffer);
+        recordBuffer.flip();
+
+        writeFully(channel, recordBuffer, HEADER_SIZE + recordCount * RECORD_SIZE);
+        recordCount++;
+    }
+
+    // Appends the records in order with as few writes as possible; call sync() to make them
+    // durable. Nothing is written if any of them has a photo reference that doesn't fit.
+    public synchronized void appendAll(List<Record> records) throws IOException {
+        for (Record record : records) {
+            checkPhotoRef(record.photoRef);
+        }
+        int chunk = Math.min(records.size(), APPEND_CHUNK_RECORDS);
+        ByteBuffer buffer = ByteBuffer.allocate(chunk * RECORD_SIZE);
+        for (int from = 0; from < records.size(); from += APPEND_CHUNK_RECORDS) {
+            int to = Math.min(records.size(), from + APPEND_CHUNK_RECORDS);
+            buffer.clear();
+            for (int i = from; i < to; i++) {
+                encode(records.get(i), buffer);
+            }
+            buffer.flip();
+            writeFully(channel, buffer, HEADER_SIZE + recordCount * RECORD_SIZE);
+            recordCount += to - from;
+        }
+    }
+
+    // Overwrites the photo metadata of an existing record in place
+    public synchronized void updatePhotoInfo(long index, PhotoInfo info) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + ", count " + recordCount);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(ORIENTATION + 2 - FILE_SIZE);
+        buffer.putLong(info.getFileSize())
+                .putInt(info.getWidth())
+                .putInt(info.getHeight())
+                .putShort((short) info.getOrientation())
+                .flip();
+        writeFully(channel, buffer, HEADER_SIZE + index * RECORD_SIZE + FILE_SIZE);
+    }
+
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    // Reads up to maxRecords starting at fromRecord, returns how many were read
+    public int read(long fromRecord, int maxRecords, RecordVisitor visitor) throws IOException {
+        long available = getRecordCount() - fromRecord;
+        int count = (int) Math.max(0, Math.min(maxRecords, available));
+        if (count == 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+        readFully(channel, buffer, HEADER_SIZE + fromRecord * RECORD_SIZE);
+
+        Record record = new Record();
+        for (int i = 0; i < count; i++) {
+            decode(buffer, i * RECORD_SIZE, VERSION, record);
+            visitor.visit(record);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    // Decodes the record at offset as written by the given log version
+    private static void decode(ByteBuffer buffer, int offset, int version, Record record) {
+        record.latitude = buffer.getDouble(offset + LATITUDE);
+        record.longitude = buffer.getDouble(offset + LONGITUDE);
+        record.timestamp = buffer.getLong(offset + TIMESTAMP);
+
+        int refLength;
+        int refOffset;
+        record.captureProfile = CaptureProfile.STANDARD;
+        if (version == 1) {
+            record.setPhotoInfo(PhotoInfo.UNKNOWN);
+            record.id = Treasure.NO_ID;
+            refLength = buffer.getShort(offset + V1_PHOTO_REF_LENGTH);
+            refOffset = V1_PHOTO_REF;
+        } else {
+            record.fileSize = buffer.getLong(offset + FILE_SIZE);
+            record.width = buffer.getInt(offset + WIDTH);
+            record.height = buffer.getInt(offset + HEIGHT);
+            record.orientation = buffer.getShort(offset + ORIENTATION);
+            if (version == 2) {
+                record.id = Treasure.NO_ID;
+                refLength = buffer.getShort(offset + V2_PHOTO_REF_LENGTH);
+                refOffset = V2_PHOTO_REF;
+            } else if (version == 3) {
+                record.id = buffer.getLong(offset + ID);
+                refLength = buffer.getShort(offset + V3_PHOTO_REF_LENGTH);
+                refOffset = PHOTO_REF;
+            } else {
+                record.id = buffer.getLong(offset + ID);
+                record.captureProfile = CaptureProfile.fromCode(buffer.get(offset + CAPTURE_PROFILE));
+                refLength = buffer.get(offset + PHOTO_REF_LENGTH) & 0xFF;
+                refOffset = PHOTO_REF;
+            }
+        }
+        // A length that runs past the record can only come from a damaged file; the rest of the
+        // record is still good, so only the photo is lost
+        record.photoRef = refLength < 0 || refOffset + refLength > RECORD_SIZE
+                ? ""
+                : new String(buffer.array(), offset + refOffset, refLength, StandardCharsets.UTF_8);
+    }
+
+    // Rewrites a log from an older version in the current layout. Treasures written before ids
+    // existed are numbered by their position in the log. Older layouts had room for longer photo
+    // references; a treasure whose reference no longer fits keeps everything but its photo, so
+    // one such record never makes the whole log unreadable.
+    private static void migrate(File path, int version) throws IOException {
+        File migrated = new File(path.getPath() + ".migrating");
+        try (RandomAccessFile source = new RandomAccessFile(path, "r");
+             RandomAccessFile target = new RandomAccessFile(migrated, "rw")) {
+            FileChannel in = source.getChannel();
+            target.setLength(0);
+            TreasureLog out = new TreasureLog(target, 0);
+            writeHeader(out.channel);
+
+            long records = (in.size() - HEADER_SIZE) / RECORD_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            Record record = new Record();
+            for (long i = 0; i < records; i++) {
+                buffer.clear();
+                readFully(in, buffer, HEADER_SIZE + i * RECORD_SIZE);
+                decode(buffer, 0, version, record);
+                if (record.id == Treasure.NO_ID) {
+                    record.id = i + 1;
+                }
+                if (!fitsPhotoRef(record.photoRef)) {
+                    LOG.warning("Photo reference of treasure " + record.id + " too long for log version "
+                            + VERSION + ", dropped: " + record.photoRef);
+                    record.photoRef = "";
+                }
+                out.append(record);
+            }
+            out.sync();
+        }
+        if (!migrated.renameTo(path)) {
+            throw new IOException("Could not replace " + path + " with migrated log");
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE).flip();
+        channel.truncate(0);
+        writeFully(channel, header, 0);
+        channel.force(true);
+    }
+
+    // Puts one whole record, zero padded, at the buffer's position
+    private static void encode(Record record, ByteBuffer buffer) {
+        byte[] ref = encode(record.photoRef);
+        int end = buffer.position() + RECORD_SIZE;
+        buffer.putDouble(record.latitude)
+                .putDouble(record.longitude)
+                .putLong(record.timestamp)
+                .putLong(record.fileSize)
+                .putInt(record.width)
+                .putInt(record.height)
+                .putShort((short) record.orientation)
+                .putLong(record.id)
+                .put((byte) ref.length)
+                .put((byte) record.captureProfile.getCode())
+                .put(ref);
+        while (buffer.position() < end) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static byte[] encode(String photoRef) {
+        return photoRef == null ? new byte[0] : photoRef.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of treasure log");
+            }
+            position += read;
+        }
+    }
+}
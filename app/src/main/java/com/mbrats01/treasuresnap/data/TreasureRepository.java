@@ -0,0 +1,68 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.IntConsumer;
+
+// Source of truth for every treasure the player has found
+public interface TreasureRepository {
+
+    // Called whenever treasures were loaded from disk or added
+    interface Listener {
+        void onTreasuresChanged();
+    }
+
+    void add(Treasure treasure);
+
+    // Adds the treasures in order with a single change notification and returns how many
+    // there were. Cheaper than add() per treasure: indexes and the log are updated in bulk.
+    int addAll(Iterator<? extends Treasure> treasures);
+
+    default int addAll(Collection<? extends Treasure> treasures) {
+        return addAll(treasures.iterator());
+    }
+
+    // Stores photo metadata read after the treasure was added (e.g. for treasures saved before
+    // metadata was recorded at capture time)
+    void updatePhotoInfo(int index, PhotoInfo info);
+
+    int size();
+
+    Treasure get(int index);
+
+    // Index of the treasure with the given id, or -1 if there is none
+    int indexOf(long id);
+
+    // Column view of every treasure, indexed by the same row as get()
+    TreasureTable getTable();
+
+    // Bounding-box index over the rows of getTable()
+    TreasureSpatialIndex getSpatialIndex();
+
+    // Timestamp-sorted index over the rows of getTable()
+    TreasureTimeIndex getTimeIndex();
+
+    // Reports the rows inside the box (see TreasureSpatialIndex.query) that were captured
+    // between from and to inclusive, and returns how many were found
+    int query(double south, double west, double north, double east, long from, long to,
+              IntConsumer consumer);
+
+    // Reports up to k treasures closest to the point by great-circle distance, nearest first
+    // (see TreasureSpatialIndex.nearest), and returns how many were found
+    default int nearest(double latitude, double longitude, int k,
+                        TreasureSpatialIndex.NeighbourVisitor visitor) {
+        return getSpatialIndex().nearest(latitude, longitude, k, visitor);
+    }
+
+    // Increases every time treasures are added or removed
+    long getVersion();
+
+    // Visits the row changes made after the given version; false if they are no longer known
+    boolean changesSince(long version, TreasureChangeLog.Visitor visitor);
+
+    boolean isLoaded();
+
+    void addListener(Listener listener);
+
+    void removeListener(Listener listener);
+}
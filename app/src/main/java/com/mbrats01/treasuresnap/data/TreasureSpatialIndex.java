@@ -0,0 +1,418 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Point quadtree over the rows of a {@link TreasureTable}, used to find the treasures inside a
+ * latitude/longitude bounding box, or the ones closest to a point, without scanning the whole
+ * table.
+ */
+public class TreasureSpatialIndex {
+
+    // Receives the rows found by nearest(), closest first
+    public interface NeighbourVisitor {
+        void visit(int row, double distanceMeters);
+    }
+
+    static final int LEAF_CAPACITY = 32;
+    static final int MAX_DEPTH = 24;
+
+    private final TreasureTable table;
+    private Node root = new Node(-90, -180, 90, 180, 0);
+    private int size;
+
+    public TreasureSpatialIndex(TreasureTable table) {
+        this.table = table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void insert(int row) {
+        root.insert(row, clampLatitude(table.getLatitude(row)), clampLongitude(table.getLongitude(row)));
+        size++;
+    }
+
+    // Indexes every row in [fromRow, toRow). The rows are pushed down the tree together,
+    // split by quadrant at each level, instead of descending from the root one by one.
+    public void insertRange(int fromRow, int toRow) {
+        int count = toRow - fromRow;
+        if (count <= 0) {
+            return;
+        }
+        int[] rows = new int[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = fromRow + i;
+            lats[i] = clampLatitude(table.getLatitude(fromRow + i));
+            lons[i] = clampLongitude(table.getLongitude(fromRow + i));
+        }
+        root.insertAll(rows, lats, lons, 0, count);
+        size += count;
+    }
+
+    public boolean remove(int row) {
+        boolean removed = root.remove(row, clampLatitude(table.getLatitude(row)),
+                clampLongitude(table.getLongitude(row)));
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    public void clear() {
+        root = new Node(-90, -180, 90, 180, 0);
+        size = 0;
+    }
+
+    /**
+     * Reports every row inside the box and returns how many were found. A box whose west edge
+     * is greater than its east edge crosses the antimeridian.
+     */
+    public int query(double south, double west, double north, double east, IntConsumer consumer) {
+        if (west > east) {
+            return root.query(south, west, north, 180, consumer)
+                    + root.query(south, -180, north, east, consumer);
+        }
+        return root.query(south, west, north, east, consumer);
+    }
+
+    /**
+     * Reports up to k rows closest to the point by great-circle distance, nearest first, and
+     * returns how many were found. Only rows within maxDistanceMeters count.
+     *
+     * Nodes and rows are visited best first, ordered by the distance to the node's box or to the
+     * row, so the search stops after the k-th row without looking at anything further away.
+     */
+    public int nearest(double latitude, double longitude, int k, double maxDistanceMeters,
+                       NeighbourVisitor visitor) {
+        if (k <= 0 || size == 0) {
+            return 0;
+        }
+        double lat = clampLatitude(latitude);
+        double lon = clampLongitude(longitude);
+        double cosLat = Math.cos(Math.toRadians(lat));
+        double maxHaversine = GreatCircle.fromMeters(maxDistanceMeters);
+
+        SearchQueue queue = new SearchQueue();
+        queue.push(0, root, -1);
+        int found = 0;
+        while (found < k && !queue.isEmpty()) {
+            double haversine = queue.peekKey();
+            if (haversine > maxHaversine) {
+                break;
+            }
+            Node node = queue.peekNode();
+            int row = queue.peekRow();
+            queue.pop();
+
+            if (node == null) {
+                visitor.visit(row, GreatCircle.toMeters(haversine));
+                found++;
+            } else if (node.children != null) {
+                for (Node child : node.children) {
+                    queue.push(GreatCircle.haversineToBox(lat, lon, cosLat,
+                            child.south, child.west, child.north, child.east), child, -1);
+                }
+            } else {
+                for (int i = 0; i < node.count; i++) {
+                    int candidate = node.rows[i];
+                    queue.push(GreatCircle.haversine(lat, lon, cosLat,
+                            clampLatitude(table.getLatitude(candidate)),
+                            clampLongitude(table.getLongitude(candidate))), null, candidate);
+                }
+            }
+        }
+        return found;
+    }
+
+    public int nearest(double latitude, double longitude, int k, NeighbourVisitor visitor) {
+        return nearest(latitude, longitude, k, Double.POSITIVE_INFINITY, visitor);
+    }
+
+    // Whether a row lies inside the box, with the same rules as query()
+    public boolean contains(int row, double south, double west, double north, double east) {
+        double lat = clampLatitude(table.getLatitude(row));
+        double lon = clampLongitude(table.getLongitude(row));
+        if (lat < south || lat > north) {
+            return false;
+        }
+        return west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+    }
+
+    // Moves the entries of [from, to) whose key is at least pivot to the end of the range and
+    // returns where they start
+    private static int partition(int[] rows, double[] lats, double[] lons, int from, int to,
+                                 boolean byLatitude, double pivot) {
+        int i = from;
+        int j = to - 1;
+        while (i <= j) {
+            if ((byLatitude ? lats[i] : lons[i]) < pivot) {
+                i++;
+                continue;
+            }
+            int row = rows[i];
+            rows[i] = rows[j];
+            rows[j] = row;
+            double lat = lats[i];
+            lats[i] = lats[j];
+            lats[j] = lat;
+            double lon = lons[i];
+            lons[i] = lons[j];
+            lons[j] = lon;
+            j--;
+        }
+        return i;
+    }
+
+    private static double clampLatitude(double latitude) {
+        return Math.max(-90, Math.min(90, latitude));
+    }
+
+    private static double clampLongitude(double longitude) {
+        return Math.max(-180, Math.min(180, longitude));
+    }
+
+    // Binary min-heap of nodes and rows keyed by haversine, for nearest(). Rows have no node.
+    private static final class SearchQueue {
+        double[] keys = new double[64];
+        Node[] nodes = new Node[64];
+        int[] rows = new int[64];
+        int size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        Node peekNode() {
+            return nodes[0];
+        }
+
+        int peekRow() {
+            return rows[0];
+        }
+
+        void push(double key, Node node, int row) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                set(i, keys[parent], nodes[parent], rows[parent]);
+                i = parent;
+            }
+            set(i, key, node, row);
+        }
+
+        void pop() {
+            size--;
+            double key = keys[size];
+            Node node = nodes[size];
+            int row = rows[size];
+            nodes[size] = null;
+            int i = 0;
+            int half = size >> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                set(i, keys[child], nodes[child], rows[child]);
+                i = child;
+            }
+            if (size > 0) {
+                set(i, key, node, row);
+            }
+        }
+
+        private void set(int i, double key, Node node, int row) {
+            keys[i] = key;
+            nodes[i] = node;
+            rows[i] = row;
+        }
+    }
+
+    private final class Node {
+        final double south;
+        final double west;
+        final double north;
+        final double east;
+        final int depth;
+
+        int[] rows = new int[4];
+        int count;
+        // south-west, south-east, north-west, north-east
+        Node[] children;
+
+        Node(double south, double west, double north, double east, int depth) {
+            this.south = south;
+            this.west = west;
+            this.north = north;
+            this.east = east;
+            this.depth = depth;
+        }
+
+        void insert(int row, double lat, double lon) {
+            if (children != null) {
+                child(lat, lon).insert(row, lat, lon);
+                return;
+            }
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            }
+            rows[count++] = row;
+            if (count > LEAF_CAPACITY && depth < MAX_DEPTH) {
+                split();
+            }
+        }
+
+        // Inserts the rows of [from, to), whose clamped positions are in lats and lons
+        void insertAll(int[] newRows, double[] lats, double[] lons, int from, int to) {
+            if (from == to) {
+                return;
+            }
+            if (children == null) {
+                int n = to - from;
+                if (count + n <= LEAF_CAPACITY || depth >= MAX_DEPTH) {
+                    if (count + n > rows.length) {
+                        rows = Arrays.copyOf(rows, Math.max(count + n, rows.length * 2));
+                    }
+                    System.arraycopy(newRows, from, rows, count, n);
+                    count += n;
+                    return;
+                }
+                split();
+            }
+            // Same quadrants as child(): south-west, south-east, north-west, north-east
+            int northStart = partition(newRows, lats, lons, from, to, true, (south + north) / 2);
+            double midLon = (west + east) / 2;
+            int southEastStart = partition(newRows, lats, lons, from, northStart, false, midLon);
+            int northEastStart = partition(newRows, lats, lons, northStart, to, false, midLon);
+            children[0].insertAll(newRows, lats, lons, from, southEastStart);
+            children[1].insertAll(newRows, lats, lons, southEastStart, northStart);
+            children[2].insertAll(newRows, lats, lons, northStart, northEastStart);
+            children[3].insertAll(newRows, lats, lons, northEastStart, to);
+        }
+
+        boolean remove(int row, double lat, double lon) {
+            if (children != null) {
+                boolean removed = child(lat, lon).remove(row, lat, lon);
+                if (removed) {
+                    mergeIfSparse();
+                }
+                return removed;
+            }
+            for (int i = 0; i < count; i++) {
+                if (rows[i] == row) {
+                    rows[i] = rows[--count];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int query(double qSouth, double qWest, double qNorth, double qEast, IntConsumer consumer) {
+            if (qSouth > north || qNorth < south || qWest > east || qEast < west) {
+                return 0;
+            }
+            if (qSouth <= south && qNorth >= north && qWest <= west && qEast >= east) {
+                return reportAll(consumer);
+            }
+            if (children != null) {
+                int found = 0;
+                for (Node child : children) {
+                    found += child.query(qSouth, qWest, qNorth, qEast, consumer);
+                }
+                return found;
+            }
+            int found = 0;
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                double lat = clampLatitude(table.getLatitude(row));
+                double lon = clampLongitude(table.getLongitude(row));
+                if (lat >= qSouth && lat <= qNorth && lon >= qWest && lon <= qEast) {
+                    consumer.accept(row);
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        int reportAll(IntConsumer consumer) {
+            if (children != null) {
+                int found = 0;
+                for (Node child : children) {
+                    found += child.reportAll(consumer);
+                }
+                return found;
+            }
+            for (int i = 0; i < count; i++) {
+                consumer.accept(rows[i]);
+            }
+            return count;
+        }
+
+        Node child(double lat, double lon) {
+            int index = (lat >= (south + north) / 2 ? 2 : 0) + (lon >= (west + east) / 2 ? 1 : 0);
+            return children[index];
+        }
+
+        void split() {
+            double midLat = (south + north) / 2;
+            double midLon = (west + east) / 2;
+            children = new Node[]{
+                    new Node(south, west, midLat, midLon, depth + 1),
+                    new Node(south, midLon, midLat, east, depth + 1),
+                    new Node(midLat, west, north, midLon, depth + 1),
+                    new Node(midLat, midLon, north, east, depth + 1)
+            };
+            int[] oldRows = rows;
+            int oldCount = count;
+            rows = null;
+            count = 0;
+            for (int i = 0; i < oldCount; i++) {
+                int row = oldRows[i];
+                double lat = clampLatitude(table.getLatitude(row));
+                double lon = clampLongitude(table.getLongitude(row));
+                child(lat, lon).insert(row, lat, lon);
+            }
+        }
+
+        // Folds the children back into this node once they hold few enough rows
+        void mergeIfSparse() {
+            int total = 0;
+            for (Node child : children) {
+                if (child.children != null) {
+                    return;
+                }
+                total += child.count;
+            }
+            if (total > LEAF_CAPACITY / 2) {
+                return;
+            }
+            rows = new int[Math.max(4, total)];
+            count = 0;
+            for (Node child : children) {
+                System.arraycopy(child.rows, 0, rows, count, child.count);
+                count += child.count;
+            }
+            children = null;
+        }
+    }
+}
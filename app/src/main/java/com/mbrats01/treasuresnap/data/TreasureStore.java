@@ -0,0 +1,341 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Treasure repository backed by a {@link TreasureLog}.
+ *
+ * All disk work runs on {@code ioExecutor}; the in-memory table and the listeners are only
+ * touched on {@code callbackExecutor} (the main thread in the app). The log is loaded in
+ * chunks so the map can start showing treasures before the whole file has been read.
+ *
+ * Treasures are numbered in the order they were added. Ids are handed out on
+ * {@code callbackExecutor} once the highest stored id is known; a treasure added before that is
+ * numbered by the io thread, which sees the same order of additions and so picks the same id.
+ */
+public class TreasureStore implements TreasureRepository {
+
+    private static final Logger LOG = Logger.getLogger("TreasureStore");
+    static final int LOAD_CHUNK_RECORDS = 4096;
+    // Walk the time range instead of the box when it holds at most this share of the treasures
+    private static final int TIME_FIRST_FRACTION = 8;
+
+    private final File logFile;
+    private final File photoDir;
+    private final Executor ioExecutor;
+    private final Executor callbackExecutor;
+
+    private final TreasureTable table = new TreasureTable();
+    private final TreasureSpatialIndex spatialIndex = new TreasureSpatialIndex(table);
+    private final TreasureTimeIndex timeIndex = new TreasureTimeIndex(table);
+    private final TreasureChangeLog changeLog = new TreasureChangeLog();
+    // Treasures added before the log finished loading, kept in log order
+    private final TreasureTable pending = new TreasureTable();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean loaded;
+    private long nextId = 1;
+
+    // Only accessed on ioExecutor
+    private TreasureLog log;
+    private long nextLogId = 1;
+    // Treasure id of every record in the log, in log order. Ids only grow, so it is sorted. A row
+    // whose append failed has no record, so rows and records can't be matched by position.
+    private long[] recordIds = new long[0];
+    private int recordCount;
+
+    private TreasureStore(File logFile, File photoDir, Executor ioExecutor, Executor callbackExecutor) {
+        this.logFile = logFile;
+        this.photoDir = photoDir;
+        this.ioExecutor = ioExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    // Opens the store and starts loading the log in the background.
+    // Photos inside photoDir are stored by file name only so they always fit in a record.
+    public static TreasureStore open(File logFile, File photoDir,
+                                     Executor ioExecutor, Executor callbackExecutor) {
+        TreasureStore store = new TreasureStore(logFile, photoDir, ioExecutor, callbackExecutor);
+        ioExecutor.execute(store::loadLog);
+        return store;
+    }
+
+    private void loadLog() {
+        try {
+            log = TreasureLog.open(logFile);
+            long total = log.getRecordCount();
+            long position = 0;
+            while (position < total) {
+                TreasureTable chunk = new TreasureTable(LOAD_CHUNK_RECORDS);
+                position += log.read(position, LOAD_CHUNK_RECORDS, record -> {
+                    int row = chunk.add(resolvePhotoRef(record.photoRef),
+                            record.latitude, record.longitude, record.timestamp);
+                    chunk.setPhotoInfo(row, record.getPhotoInfo());
+                    chunk.setCaptureProfile(row, record.captureProfile);
+                    chunk.setId(row, record.id);
+                    nextLogId = Math.max(nextLogId, record.id + 1);
+                    addRecordId(record.id);
+                });
+                callbackExecutor.execute(() -> {
+                    appendRows(chunk);
+                    notifyChanged();
+                });
+            }
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not load treasure log", e);
+        }
+
+        long firstNewId = nextLogId;
+        callbackExecutor.execute(() -> {
+            loaded = true;
+            nextId = firstNewId;
+            for (int row = 0; row < pending.size(); row++) {
+                pending.setId(row, nextId++);
+            }
+            appendRows(pending);
+            pending.clear();
+            notifyChanged();
+        });
+    }
+
+    @Override
+    public void add(Treasure treasure) {
+        addAll(Collections.singletonList(treasure).iterator());
+    }
+
+    // The whole batch is staged in its own table, then appended to memory, indexed, announced
+    // and written to the log in one go
+    @Override
+    public int addAll(Iterator<? extends Treasure> treasures) {
+        // Everything is checked before anything is stored, so a bad reference leaves no trace
+        TreasureTable batch = new TreasureTable();
+        List<TreasureLog.Record> records = new ArrayList<>();
+        while (treasures.hasNext()) {
+            Treasure treasure = treasures.next();
+            TreasureLog.Record record = new TreasureLog.Record();
+            record.photoRef = toPhotoRef(treasure.getPhotoPath());
+            TreasureLog.checkPhotoRef(record.photoRef);
+            record.latitude = treasure.getLatitude();
+            record.longitude = treasure.getLongitude();
+            record.timestamp = treasure.getTimestamp();
+            record.setPhotoInfo(treasure.getPhotoInfo());
+            record.captureProfile = treasure.getCaptureProfile();
+            records.add(record);
+
+            int row = batch.add(treasure.getPhotoPath(), treasure.getLatitude(),
+                    treasure.getLongitude(), treasure.getTimestamp());
+            batch.setPhotoInfo(row, treasure.getPhotoInfo());
+            batch.setCaptureProfile(row, treasure.getCaptureProfile());
+        }
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        if (loaded) {
+            for (int row = 0; row < batch.size(); row++) {
+                long id = nextId++;
+                batch.setId(row, id);
+                records.get(row).id = id;
+            }
+            appendRows(batch);
+            notifyChanged();
+        } else {
+            pending.addAll(batch);
+        }
+
+        // Writes are queued behind the initial load, so the log keeps the same order as memory
+        ioExecutor.execute(() -> {
+            for (TreasureLog.Record record : records) {
+                if (record.id == Treasure.NO_ID) {
+                    record.id = nextLogId;
+                }
+                nextLogId = Math.max(nextLogId, record.id + 1);
+            }
+            if (log == null) {
+                LOG.severe("Treasure log unavailable, treasures not persisted");
+                return;
+            }
+            long before = log.getRecordCount();
+            try {
+                log.appendAll(records);
+                log.sync();
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Could not persist treasures", e);
+            }
+            // Only the records that made it into the log can be patched later
+            long written = log.getRecordCount() - before;
+            for (int i = 0; i < written; i++) {
+                addRecordId(records.get(i).id);
+            }
+        });
+        return records.size();
+    }
+
+    // The treasure's log record is looked up by id and its metadata patched in place
+    @Override
+    public void updatePhotoInfo(int index, PhotoInfo info) {
+        table.setPhotoInfo(index, info);
+        long id = table.getId(index);
+
+        ioExecutor.execute(() -> {
+            if (log == null) {
+                return;
+            }
+            int record = Arrays.binarySearch(recordIds, 0, recordCount, id);
+            if (record < 0) {
+                LOG.warning("Treasure " + id + " is not in the log, photo info not persisted");
+                return;
+            }
+            try {
+                log.updatePhotoInfo(record, info);
+            } catch (IOException | RuntimeException e) {
+                LOG.log(Level.SEVERE, "Could not persist photo info", e);
+            }
+        });
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Treasure get(int index) {
+        return table.get(index);
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return table.rowOf(id);
+    }
+
+    @Override
+    public TreasureTable getTable() {
+        return table;
+    }
+
+    @Override
+    public TreasureSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    @Override
+    public TreasureTimeIndex getTimeIndex() {
+        return timeIndex;
+    }
+
+    @Override
+    public int query(double south, double west, double north, double east, long from, long to,
+                     IntConsumer consumer) {
+        int inTime = timeIndex.count(from, to);
+        if (inTime == table.size()) {
+            return spatialIndex.query(south, west, north, east, consumer);
+        }
+
+        // Start from whichever index narrows the result most; the other condition is a cheap check
+        int[] found = new int[1];
+        if (inTime <= table.size() / TIME_FIRST_FRACTION) {
+            timeIndex.query(from, to, row -> {
+                if (spatialIndex.contains(row, south, west, north, east)) {
+                    consumer.accept(row);
+                    found[0]++;
+                }
+            });
+        } else {
+            spatialIndex.query(south, west, north, east, row -> {
+                long timestamp = table.getTimestamp(row);
+                if (timestamp >= from && timestamp <= to) {
+                    consumer.accept(row);
+                    found[0]++;
+                }
+            });
+        }
+        return found[0];
+    }
+
+    @Override
+    public long getVersion() {
+        return changeLog.getVersion();
+    }
+
+    @Override
+    public boolean changesSince(long version, TreasureChangeLog.Visitor visitor) {
+        return changeLog.changesSince(version, visitor);
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    @Override
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Closes the log once the disk work already queued is done; later writes are dropped
+    public void close() {
+        ioExecutor.execute(() -> {
+            if (log == null) {
+                return;
+            }
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Could not close treasure log", e);
+            }
+            log = null;
+        });
+    }
+
+    private void addRecordId(long id) {
+        if (recordCount == recordIds.length) {
+            recordIds = Arrays.copyOf(recordIds, Math.max(16, recordCount * 2));
+        }
+        recordIds[recordCount++] = id;
+    }
+
+    private void appendRows(TreasureTable rows) {
+        int firstRow = table.size();
+        table.addAll(rows);
+        spatialIndex.insertRange(firstRow, table.size());
+        timeIndex.insertRange(firstRow, table.size());
+        changeLog.recordAdded(firstRow, table.size());
+    }
+
+    private void notifyChanged() {
+        for (Listener listener : listeners) {
+            listener.onTreasuresChanged();
+        }
+    }
+
+    private String toPhotoRef(String photoPath) {
+        if (photoPath == null || photoDir == null) {
+            return photoPath;
+        }
+        String prefix = photoDir.getPath() + File.separator;
+        return photoPath.startsWith(prefix) ? photoPath.substring(prefix.length()) : photoPath;
+    }
+
+    private String resolvePhotoRef(String photoRef) {
+        if (photoDir == null || photoRef.isEmpty() || new File(photoRef).isAbsolute()) {
+            return photoRef;
+        }
+        return new File(photoDir, photoRef).getPath();
+    }
+}
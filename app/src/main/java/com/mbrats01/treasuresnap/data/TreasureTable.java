@@ -0,0 +1,231 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Column-oriented storage for treasures: one primitive array per field instead of one object
+ * per treasure. Photo paths are split into a small shared directory table and a per-row
+ * file name, since almost every photo lives in the same folder. Rows with a treasure id can be
+ * found by that id in constant time.
+ */
+public class TreasureTable {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private long[] ids;
+    private double[] latitudes;
+    private double[] longitudes;
+    private long[] timestamps;
+    private int[] directoryIds;
+    private String[] fileNames;
+    // Photo metadata, PhotoInfo.ORIENTATION_UNKNOWN until it has been read
+    private short[] orientations;
+    private int[] widths;
+    private int[] heights;
+    private long[] fileSizes;
+    // CaptureProfile codes
+    private byte[] captureProfiles;
+    private int size;
+
+    // Directory path table, indexed by directoryIds
+    private final ArrayList<String> directories = new ArrayList<>();
+    private final HashMap<String, Integer> directoryLookup = new HashMap<>();
+    private final TreasureIdIndex idIndex = new TreasureIdIndex();
+
+    public TreasureTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TreasureTable(int capacity) {
+        capacity = Math.max(capacity, 1);
+        ids = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        timestamps = new long[capacity];
+        directoryIds = new int[capacity];
+        fileNames = new String[capacity];
+        orientations = new short[capacity];
+        widths = new int[capacity];
+        heights = new int[capacity];
+        fileSizes = new long[capacity];
+        captureProfiles = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Appends a row without an id and returns its index
+    public int add(String photoPath, double latitude, double longitude, long timestamp) {
+        ensureCapacity(size + 1);
+        int row = size++;
+        ids[row] = Treasure.NO_ID;
+        latitudes[row] = latitude;
+        longitudes[row] = longitude;
+        timestamps[row] = timestamp;
+        setPhotoInfo(row, PhotoInfo.UNKNOWN);
+        captureProfiles[row] = (byte) CaptureProfile.STANDARD.getCode();
+
+        int split = photoPath == null ? -1 : photoPath.lastIndexOf('/');
+        if (split < 0) {
+            directoryIds[row] = -1;
+            fileNames[row] = photoPath;
+        } else {
+            directoryIds[row] = directoryId(photoPath.substring(0, split + 1));
+            fileNames[row] = photoPath.substring(split + 1);
+        }
+        return row;
+    }
+
+    public int add(Treasure treasure) {
+        int row = add(treasure.getPhotoPath(), treasure.getLatitude(), treasure.getLongitude(),
+                treasure.getTimestamp());
+        setPhotoInfo(row, treasure.getPhotoInfo());
+        setCaptureProfile(row, treasure.getCaptureProfile());
+        setId(row, treasure.getId());
+        return row;
+    }
+
+    public void setId(int row, long id) {
+        checkRow(row);
+        if (ids[row] != Treasure.NO_ID) {
+            idIndex.remove(ids[row]);
+        }
+        ids[row] = id;
+        if (id != Treasure.NO_ID) {
+            idIndex.put(id, row);
+        }
+    }
+
+    public void setPhotoInfo(int row, PhotoInfo info) {
+        checkRow(row);
+        orientations[row] = (short) info.getOrientation();
+        widths[row] = info.getWidth();
+        heights[row] = info.getHeight();
+        fileSizes[row] = info.getFileSize();
+    }
+
+    public void setCaptureProfile(int row, CaptureProfile profile) {
+        checkRow(row);
+        captureProfiles[row] = (byte) profile.getCode();
+    }
+
+    public void clear() {
+        Arrays.fill(fileNames, 0, size, null);
+        idIndex.clear();
+        size = 0;
+    }
+
+    // Appends every row of another table
+    public void addAll(TreasureTable other) {
+        ensureCapacity(size + other.size);
+        for (int i = 0; i < other.size; i++) {
+            int directory = other.directoryIds[i];
+            directoryIds[size + i] = directory < 0 ? -1 : directoryId(other.directories.get(directory));
+            ids[size + i] = other.ids[i];
+            if (other.ids[i] != Treasure.NO_ID) {
+                idIndex.put(other.ids[i], size + i);
+            }
+        }
+        System.arraycopy(other.latitudes, 0, latitudes, size, other.size);
+        System.arraycopy(other.longitudes, 0, longitudes, size, other.size);
+        System.arraycopy(other.timestamps, 0, timestamps, size, other.size);
+        System.arraycopy(other.fileNames, 0, fileNames, size, other.size);
+        System.arraycopy(other.orientations, 0, orientations, size, other.size);
+        System.arraycopy(other.widths, 0, widths, size, other.size);
+        System.arraycopy(other.heights, 0, heights, size, other.size);
+        System.arraycopy(other.fileSizes, 0, fileSizes, size, other.size);
+        System.arraycopy(other.captureProfiles, 0, captureProfiles, size, other.size);
+        size += other.size;
+    }
+
+    public long getId(int row) {
+        checkRow(row);
+        return ids[row];
+    }
+
+    // Row of the treasure with the given id, or -1 if there is none
+    public int rowOf(long id) {
+        return idIndex.get(id);
+    }
+
+    public double getLatitude(int row) {
+        checkRow(row);
+        return latitudes[row];
+    }
+
+    public double getLongitude(int row) {
+        checkRow(row);
+        return longitudes[row];
+    }
+
+    public long getTimestamp(int row) {
+        checkRow(row);
+        return timestamps[row];
+    }
+
+    public String getPhotoPath(int row) {
+        checkRow(row);
+        int directory = directoryIds[row];
+        return directory < 0 ? fileNames[row] : directories.get(directory) + fileNames[row];
+    }
+
+    public boolean hasPhotoInfo(int row) {
+        checkRow(row);
+        return orientations[row] != PhotoInfo.ORIENTATION_UNKNOWN;
+    }
+
+    public PhotoInfo getPhotoInfo(int row) {
+        if (!hasPhotoInfo(row)) {
+            return PhotoInfo.UNKNOWN;
+        }
+        return new PhotoInfo(orientations[row], widths[row], heights[row], fileSizes[row]);
+    }
+
+    public CaptureProfile getCaptureProfile(int row) {
+        checkRow(row);
+        return CaptureProfile.fromCode(captureProfiles[row]);
+    }
+
+    // Materializes a row, only meant for code that needs a standalone copy
+    public Treasure get(int row) {
+        return new Treasure(getId(row), getPhotoPath(row), getLatitude(row), getLongitude(row),
+                getTimestamp(row), getPhotoInfo(row), getCaptureProfile(row));
+    }
+
+    private int directoryId(String directory) {
+        Integer id = directoryLookup.get(directory);
+        if (id == null) {
+            id = directories.size();
+            directories.add(directory);
+            directoryLookup.put(directory, id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= latitudes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, latitudes.length + (latitudes.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        directoryIds = Arrays.copyOf(directoryIds, newCapacity);
+        fileNames = Arrays.copyOf(fileNames, newCapacity);
+        orientations = Arrays.copyOf(orientations, newCapacity);
+        widths = Arrays.copyOf(widths, newCapacity);
+        heights = Arrays.copyOf(heights, newCapacity);
+        fileSizes = Arrays.copyOf(fileSizes, newCapacity);
+        captureProfiles = Arrays.copyOf(captureProfiles, newCapacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+        }
+    }
+}
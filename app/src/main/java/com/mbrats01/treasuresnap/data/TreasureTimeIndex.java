@@ -0,0 +1,206 @@
+package com.mbrats01.treasuresnap.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Rows of a {@link TreasureTable} sorted by timestamp, used to find the treasures captured in a
+ * time range with two binary searches instead of scanning the whole table.
+ *
+ * Treasures almost always arrive in capture order, so inserting usually appends; rows that
+ * arrive out of order are sorted into place.
+ */
+public class TreasureTimeIndex {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final TreasureTable table;
+    // Sorted by timestamp, rows with equal timestamps in insertion order
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public TreasureTimeIndex(TreasureTable table) {
+        this.table = table;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void insert(int row) {
+        long timestamp = table.getTimestamp(row);
+        ensureCapacity(size + 1);
+        int position = upperBound(timestamp);
+        System.arraycopy(timestamps, position, timestamps, position + 1, size - position);
+        System.arraycopy(rows, position, rows, position + 1, size - position);
+        timestamps[position] = timestamp;
+        rows[position] = row;
+        size++;
+    }
+
+    // Indexes every row in [fromRow, toRow)
+    public void insertRange(int fromRow, int toRow) {
+        int count = toRow - fromRow;
+        if (count <= 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+
+        // Append the new rows, then sort and merge them only if they are out of order
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            int row = fromRow + i;
+            timestamps[size + i] = table.getTimestamp(row);
+            rows[size + i] = row;
+            if (size + i > 0 && timestamps[size + i] < timestamps[size + i - 1]) {
+                sorted = false;
+            }
+        }
+        if (!sorted) {
+            sortTail(size, size + count);
+        }
+        size += count;
+    }
+
+    public boolean remove(int row) {
+        long timestamp = table.getTimestamp(row);
+        for (int i = lowerBound(timestamp); i < size && timestamps[i] == timestamp; i++) {
+            if (rows[i] == row) {
+                System.arraycopy(timestamps, i + 1, timestamps, i, size - i - 1);
+                System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long getMinTimestamp() {
+        checkNotEmpty();
+        return timestamps[0];
+    }
+
+    public long getMaxTimestamp() {
+        checkNotEmpty();
+        return timestamps[size - 1];
+    }
+
+    // Number of rows with from <= timestamp <= to
+    public int count(long from, long to) {
+        return from > to ? 0 : upperBound(to) - lowerBound(from);
+    }
+
+    // Reports the rows with from <= timestamp <= to in timestamp order and returns how many
+    public int query(long from, long to, IntConsumer consumer) {
+        if (from > to) {
+            return 0;
+        }
+        int start = lowerBound(from);
+        int end = upperBound(to);
+        for (int i = start; i < end; i++) {
+            consumer.accept(rows[i]);
+        }
+        return end - start;
+    }
+
+    // First position whose timestamp is >= timestamp
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First position whose timestamp is > timestamp
+    private int upperBound(long timestamp) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Sorts [from, to) by timestamp and merges it into the sorted prefix [0, from)
+    private void sortTail(int from, int to) {
+        int count = to - from;
+        long[] newTimestamps = Arrays.copyOfRange(timestamps, from, to);
+        int[] newRows = Arrays.copyOfRange(rows, from, to);
+        mergeSort(newTimestamps, newRows, new long[count], new int[count], 0, count);
+
+        // Merge from the back so the prefix can be shifted in place
+        int i = from - 1;
+        int j = count - 1;
+        for (int k = to - 1; j >= 0; k--) {
+            if (i >= 0 && timestamps[i] > newTimestamps[j]) {
+                timestamps[k] = timestamps[i];
+                rows[k] = rows[i];
+                i--;
+            } else {
+                timestamps[k] = newTimestamps[j];
+                rows[k] = newRows[j];
+                j--;
+            }
+        }
+    }
+
+    // Stable sort of [from, to) by timestamp, keeping rows alongside
+    private static void mergeSort(long[] keys, int[] values, long[] keyBuffer, int[] valueBuffer,
+                                  int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(keys, values, keyBuffer, valueBuffer, from, mid);
+        mergeSort(keys, values, keyBuffer, valueBuffer, mid, to);
+        if (keys[mid - 1] <= keys[mid]) {
+            return;
+        }
+
+        System.arraycopy(keys, from, keyBuffer, from, to - from);
+        System.arraycopy(values, from, valueBuffer, from, to - from);
+        int left = from;
+        int right = mid;
+        for (int k = from; k < to; k++) {
+            if (right >= to || (left < mid && keyBuffer[left] <= keyBuffer[right])) {
+                keys[k] = keyBuffer[left];
+                values[k] = valueBuffer[left++];
+            } else {
+                keys[k] = keyBuffer[right];
+                values[k] = valueBuffer[right++];
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= rows.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, rows.length + (rows.length >> 1));
+        timestamps = Arrays.copyOf(timestamps, newCapacity);
+        rows = Arrays.copyOf(rows, newCapacity);
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new IllegalStateException("No treasures indexed");
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.mbrats01.treasuresnap.image;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Fills in the photo metadata of treasures saved before it was recorded at capture time.
+ *
+ * Rows are collected on the main thread in small batches, their photos are read on the
+ * background executor, and the results are written back through the repository one batch at
+ * a time, so the work never competes with the UI for long.
+ */
+public class PhotoInfoBackfill {
+
+    private static final int BATCH_SIZE = 32;
+
+    private final TreasureRepository repository;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Next row to look at; rows that could not be read are skipped until the next launch
+    private int nextRow;
+    private boolean running;
+
+    public PhotoInfoBackfill(TreasureRepository repository, Executor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    // Starts once the repository has loaded; safe to call more than once
+    @MainThread
+    public void start() {
+        if (running) {
+            return;
+        }
+        if (repository.isLoaded()) {
+            running = true;
+            nextBatch();
+            return;
+        }
+        repository.addListener(new TreasureRepository.Listener() {
+            @Override
+            public void onTreasuresChanged() {
+                if (repository.isLoaded()) {
+                    repository.removeListener(this);
+                    start();
+                }
+            }
+        });
+    }
+
+    @MainThread
+    private void nextBatch() {
+        TreasureTable table = repository.getTable();
+        int[] rows = new int[BATCH_SIZE];
+        String[] paths = new String[BATCH_SIZE];
+        int count = 0;
+        while (nextRow < table.size() && count < BATCH_SIZE) {
+            // Imported treasures come without a photo, there is nothing to read for them
+            if (!table.hasPhotoInfo(nextRow) && !table.getPhotoPath(nextRow).isEmpty()) {
+                rows[count] = nextRow;
+                paths[count] = table.getPhotoPath(nextRow);
+                count++;
+            }
+            nextRow++;
+        }
+        if (count == 0) {
+            running = false;
+            return;
+        }
+
+        int batchSize = count;
+        executor.execute(() -> {
+            PhotoInfo[] infos = new PhotoInfo[batchSize];
+            for (int i = 0; i < batchSize; i++) {
+                infos[i] = PhotoInfoReader.read(paths[i]);
+            }
+            mainHandler.post(() -> {
+                for (int i = 0; i < batchSize; i++) {
+                    if (infos[i].isKnown()) {
+                        repository.updatePhotoInfo(rows[i], infos[i]);
+                    }
+                }
+                nextBatch();
+            });
+        });
+    }
+}
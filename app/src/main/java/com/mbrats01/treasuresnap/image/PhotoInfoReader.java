@@ -0,0 +1,62 @@
+package com.mbrats01.treasuresnap.image;
+
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+
+import java.io.File;
+import java.io.IOException;
+
+// Reads the photo metadata that is stored with a treasure so display code never has to
+public final class PhotoInfoReader {
+
+    private static final String TAG = "PhotoInfoReader";
+
+    private PhotoInfoReader() {
+    }
+
+    // Reads orientation, pixel size and file size; PhotoInfo.UNKNOWN if the photo can't be read
+    @WorkerThread
+    public static PhotoInfo read(String photoPath) {
+        File file = new File(photoPath);
+        if (!file.isFile()) {
+            return PhotoInfo.UNKNOWN;
+        }
+        try {
+            ExifInterface exif = new ExifInterface(photoPath);
+            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            int width = exif.getAttributeInt(ExifInterface.TAG_IMAGE_WIDTH, 0);
+            int height = exif.getAttributeInt(ExifInterface.TAG_IMAGE_LENGTH, 0);
+            if (width <= 0 || height <= 0) {
+                // Not every writer fills in the EXIF size, fall back to the JPEG header
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeFile(photoPath, options);
+                width = Math.max(options.outWidth, 0);
+                height = Math.max(options.outHeight, 0);
+            }
+            return new PhotoInfo(orientation, width, height, file.length());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read EXIF of " + photoPath, e);
+            return PhotoInfo.UNKNOWN;
+        }
+    }
+
+    // Clockwise rotation needed to display a photo with the given EXIF orientation upright
+    public static int rotationDegrees(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+}
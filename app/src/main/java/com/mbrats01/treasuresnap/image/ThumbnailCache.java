@@ -0,0 +1,153 @@
+package com.mbrats01.treasuresnap.image;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * On-disk cache of small, already-rotated JPEG thumbnails of treasure photos.
+ *
+ * Thumbnails are written right after capture and regenerated on demand when missing. The cache
+ * is capped in bytes; files are touched on every read and the least recently used ones are
+ * deleted first when the cap is exceeded.
+ */
+public class ThumbnailCache {
+
+    private static final String TAG = "ThumbnailCache";
+    static final int MAX_EDGE = 720;
+    private static final int JPEG_QUALITY = 85;
+
+    private final File directory;
+    private final long maxBytes;
+    // Total size of the directory, computed on first use
+    private long totalBytes = -1;
+
+    public ThumbnailCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the thumbnail for a photo, generating it from the original if it is missing
+    @WorkerThread
+    @Nullable
+    public File getOrCreate(String photoPath, PhotoInfo info) {
+        File thumbnail = fileFor(photoPath);
+        if (thumbnail.exists()) {
+            thumbnail.setLastModified(System.currentTimeMillis());
+            return thumbnail;
+        }
+        return create(photoPath, info, thumbnail);
+    }
+
+    @WorkerThread
+    @Nullable
+    private File create(String photoPath, PhotoInfo info, File thumbnail) {
+        Bitmap bitmap = ThumbnailLoader.decode(photoPath, info, MAX_EDGE, MAX_EDGE);
+        if (bitmap == null) {
+            return null;
+        }
+
+        float scale = (float) MAX_EDGE / Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (scale < 1f) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale), Math.round(bitmap.getHeight() * scale), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+            return null;
+        }
+
+        // Write to a temporary file first so a crash never leaves a truncated thumbnail
+        File temp = new File(directory, thumbnail.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write thumbnail for " + photoPath, e);
+            temp.delete();
+            return null;
+        } finally {
+            bitmap.recycle();
+        }
+        if (!temp.renameTo(thumbnail)) {
+            temp.delete();
+            return thumbnail.exists() ? thumbnail : null;
+        }
+
+        onWritten(thumbnail.length());
+        return thumbnail;
+    }
+
+    private synchronized void onWritten(long bytes) {
+        if (totalBytes < 0) {
+            totalBytes = directorySize();
+        } else {
+            totalBytes += bytes;
+        }
+        if (totalBytes > maxBytes) {
+            evict();
+        }
+    }
+
+    // Deletes the least recently used thumbnails until the cache is back under its cap
+    private void evict() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".jpg"));
+        if (files == null) {
+            return;
+        }
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+
+        // Leave some headroom so we don't evict again on the next write
+        long target = maxBytes * 3 / 4;
+        for (Integer i : order) {
+            if (totalBytes <= target) {
+                break;
+            }
+            long length = files[i].length();
+            if (files[i].delete()) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private long directorySize() {
+        File[] files = directory.listFiles();
+        long size = 0;
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private File fileFor(String photoPath) {
+        // Photo name for readability, path hash so photos with the same name don't collide
+        String name = new File(photoPath).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        return new File(directory, Integer.toHexString(photoPath.hashCode()) + "_" + name + ".jpg");
+    }
+}
@@ -0,0 +1,230 @@
+package com.mbrats01.treasuresnap.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+
+import java.io.File;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads treasure photos into ImageViews off the main thread.
+ *
+ * The small thumbnail from the {@link ThumbnailCache} is read first and regenerated when missing;
+ * the full-resolution original is only decoded if no thumbnail can be made.
+ *
+ * The orientation and pixel size stored with the treasure pick an inSampleSize matched to the
+ * view without re-reading the file's EXIF or bounds, and the rotation is applied to that small
+ * bitmap. Starting a new load on a view
+ * (or calling cancel()) drops the previous request, so recycled views never show a stale photo.
+ */
+public class ThumbnailLoader {
+
+    private static final int THREADS = 2;
+    // Thumbnails are written upright, only their size still has to be read
+    private static final PhotoInfo THUMBNAIL_INFO = new PhotoInfo(ExifInterface.ORIENTATION_NORMAL, 0, 0, 0);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThumbnailCache thumbnailCache;
+    private final DisplayMetrics displayMetrics;
+    private final LruCache<String, Bitmap> memoryCache;
+
+    // Pending request per view, only touched on the main thread
+    private final Map<ImageView, Request> requests = new WeakHashMap<>();
+
+    public ThumbnailLoader(ThumbnailCache thumbnailCache, DisplayMetrics displayMetrics) {
+        this.thumbnailCache = thumbnailCache;
+        this.displayMetrics = displayMetrics;
+        int cacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    @MainThread
+    public void load(String photoPath, PhotoInfo info, ImageView view) {
+        cancel(view);
+
+        int[] size = targetSize(view);
+        String key = photoPath + "#" + size[0] + "x" + size[1];
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+
+        Request request = new Request(view);
+        requests.put(view, request);
+        request.future = executor.submit(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            Bitmap bitmap = decodeCached(photoPath, info, key, size[0], size[1]);
+            mainHandler.post(() -> deliver(request, bitmap));
+        });
+    }
+
+    // Decodes a photo into the memory cache at the size a view like sizeReference would ask for
+    @MainThread
+    public void prefetch(String photoPath, PhotoInfo info, ImageView sizeReference) {
+        int[] size = targetSize(sizeReference);
+        String key = photoPath + "#" + size[0] + "x" + size[1];
+        if (memoryCache.get(key) == null) {
+            executor.execute(() -> decodeCached(photoPath, info, key, size[0], size[1]));
+        }
+    }
+
+    // Writes the thumbnail of a freshly captured photo in the background
+    public void generateThumbnail(String photoPath, PhotoInfo info) {
+        executor.execute(() -> thumbnailCache.getOrCreate(photoPath, info));
+    }
+
+    // Decodes a photo at about the given size without keeping it in the memory cache,
+    // for callers that copy the pixels somewhere else
+    @WorkerThread
+    @Nullable
+    public Bitmap decodeThumbnail(String photoPath, PhotoInfo info, int width, int height) {
+        // Imported treasures have no photo
+        if (photoPath.isEmpty()) {
+            return null;
+        }
+        File thumbnail = thumbnailCache.getOrCreate(photoPath, info);
+        return thumbnail != null
+                ? decode(thumbnail.getPath(), THUMBNAIL_INFO, width, height)
+                : decode(photoPath, info, width, height);
+    }
+
+    // Drops the pending load for a view that is being recycled or detached
+    @MainThread
+    public void cancel(ImageView view) {
+        Request request = requests.remove(view);
+        if (request != null) {
+            request.cancelled = true;
+            if (request.future != null) {
+                request.future.cancel(false);
+            }
+        }
+    }
+
+    @WorkerThread
+    @Nullable
+    private Bitmap decodeCached(String photoPath, PhotoInfo info, String key, int width, int height) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        bitmap = decodeThumbnail(photoPath, info, width, height);
+        if (bitmap != null) {
+            memoryCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        if (request.cancelled || requests.get(request.view) != request) {
+            return;
+        }
+        requests.remove(request.view);
+        if (bitmap != null) {
+            request.view.setImageBitmap(bitmap);
+        }
+    }
+
+    // Decodes the photo at roughly the requested size with its EXIF rotation applied.
+    // Metadata that is not known yet is read from the file.
+    @WorkerThread
+    @Nullable
+    static Bitmap decode(String photoPath, PhotoInfo info, int targetWidth, int targetHeight) {
+        if (!info.isKnown()) {
+            info = PhotoInfoReader.read(photoPath);
+        }
+        int rotation = PhotoInfoReader.rotationDegrees(info.getOrientation());
+        if (rotation == 90 || rotation == 270) {
+            // The stored image is sideways, so compare against the swapped target
+            int swap = targetWidth;
+            targetWidth = targetHeight;
+            targetHeight = swap;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        int width = info.getWidth();
+        int height = info.getHeight();
+        if (width <= 0 || height <= 0) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(photoPath, options);
+            width = options.outWidth;
+            height = options.outHeight;
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+        }
+
+        options.inSampleSize = sampleSize(width, height, targetWidth, targetHeight);
+        Bitmap bitmap = BitmapFactory.decodeFile(photoPath, options);
+        if (bitmap == null || rotation == 0) {
+            return bitmap;
+        }
+
+        Matrix matrix = new Matrix();
+        matrix.postRotate(rotation);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) {
+            bitmap.recycle();
+        }
+        return rotated;
+    }
+
+    // Largest power of two that still keeps the decoded image at least as big as the target
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // Measured size if laid out, otherwise the layout params, otherwise the screen
+    private int[] targetSize(ImageView view) {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (width <= 0 && params != null) width = params.width;
+        if (height <= 0 && params != null) height = params.height;
+        if (width <= 0) width = displayMetrics.widthPixels;
+        if (height <= 0) height = displayMetrics.heightPixels / 2;
+        return new int[]{width, height};
+    }
+
+    private static final class Request {
+        final ImageView view;
+        Future<?> future;
+        volatile boolean cancelled;
+
+        Request(ImageView view) {
+            this.view = view;
+        }
+    }
+}
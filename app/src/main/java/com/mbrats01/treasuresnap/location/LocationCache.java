@@ -0,0 +1,56 @@
+package com.mbrats01.treasuresnap.location;
+
+/**
+ * Keeps the best recent location fix, so a capture can be tagged the moment the shutter fires
+ * instead of waiting for a location request.
+ *
+ * A newer fix replaces the kept one unless it is noticeably less accurate and arrived soon
+ * after it; once the kept fix is old enough, any newer fix wins. Older fixes, e.g. from a batch
+ * delivered late, never do. Use on a single thread.
+ */
+public class LocationCache {
+
+    // After this long a fix is replaced by any newer one, however inaccurate
+    static final long SUPERSEDE_AFTER_MS = 10_000;
+    // A newer fix may be this much less accurate and still replace the kept one
+    static final float ACCURACY_SLACK_METERS = 5;
+
+    private LocationFix fix;
+
+    // Returns whether the fix was kept
+    public boolean offer(LocationFix candidate) {
+        if (fix != null && !isBetter(candidate, fix)) {
+            return false;
+        }
+        fix = candidate;
+        return true;
+    }
+
+    // The kept fix if it is at most maxAgeMillis old, otherwise null
+    public LocationFix get(long nowElapsedRealtimeNanos, long maxAgeMillis) {
+        if (fix == null || fix.getAgeMillis(nowElapsedRealtimeNanos) > maxAgeMillis) {
+            return null;
+        }
+        return fix;
+    }
+
+    public void clear() {
+        fix = null;
+    }
+
+    private static boolean isBetter(LocationFix candidate, LocationFix kept) {
+        long newerByMs = (candidate.getElapsedRealtimeNanos() - kept.getElapsedRealtimeNanos()) / 1_000_000;
+        if (newerByMs <= 0) {
+            return false;
+        }
+        if (newerByMs > SUPERSEDE_AFTER_MS) {
+            return true;
+        }
+        // Unknown accuracy counts as the worst
+        if (candidate.getAccuracyMeters() <= 0) {
+            return kept.getAccuracyMeters() <= 0;
+        }
+        return kept.getAccuracyMeters() <= 0
+                || candidate.getAccuracyMeters() <= kept.getAccuracyMeters() + ACCURACY_SLACK_METERS;
+    }
+}
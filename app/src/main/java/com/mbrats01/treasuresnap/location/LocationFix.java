@@ -0,0 +1,39 @@
+package com.mbrats01.treasuresnap.location;
+
+// A location fix and when it was taken, on the elapsed-realtime clock so its age survives
+// wall clock changes
+public final class LocationFix {
+
+    private final double latitude;
+    private final double longitude;
+    // Radius in metres of 68% confidence, or 0 if unknown
+    private final float accuracyMeters;
+    private final long elapsedRealtimeNanos;
+
+    public LocationFix(double latitude, double longitude, float accuracyMeters, long elapsedRealtimeNanos) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public float getAccuracyMeters() {
+        return accuracyMeters;
+    }
+
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    public long getAgeMillis(long nowElapsedRealtimeNanos) {
+        return (nowElapsedRealtimeNanos - elapsedRealtimeNanos) / 1_000_000;
+    }
+}
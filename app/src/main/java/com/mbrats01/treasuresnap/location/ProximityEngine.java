@@ -0,0 +1,266 @@
+package com.mbrats01.treasuresnap.location;
+
+import com.mbrats01.treasuresnap.data.GreatCircle;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+/**
+ * Tells the player when a location fix comes within a radius of a treasure.
+ *
+ * The world is cut into grid cells at least one re-arm distance (a little more than the radius)
+ * across, so every treasure in range lies in the 3x3 block of cells around the player. Those
+ * cells are armed with their treasures from the spatial index; a fix only measures the distance
+ * to the treasures of the armed cells, and moving into another cell arms just the cells that
+ * came into the block. Cells are one re-arm distance tall, and wide enough that no treasure in
+ * range of a player one cell away can be more than a column over, so the block stays correct at
+ * any latitude and across the antimeridian.
+ *
+ * A treasure alerts once when the player comes within the radius, and again only after the
+ * player went a little further than the radius away from it. Use on the thread that owns the
+ * repository.
+ */
+public class ProximityEngine {
+
+    public interface Listener {
+        void onTreasureNearby(long treasureId, int row, double distanceMeters);
+    }
+
+    // A treasure is armed again once the player is this many radii away from it
+    static final double REARM_FACTOR = 1.25;
+    // Fixes less accurate than this many radii could alert for treasures still out of range
+    static final double MAX_ACCURACY_FACTOR = 2;
+    private static final double METERS_PER_DEGREE = Math.toRadians(GreatCircle.EARTH_RADIUS_METERS);
+    // Cells are queried this much larger than they are, so rounding never drops a row on an edge
+    private static final double EDGE_MARGIN = 1e-9;
+
+    private final TreasureRepository treasures;
+    private final Listener listener;
+    private double radiusMeters;
+    // Cell height in degrees: the re-arm distance, so treasures already alerted stay armed
+    private double cellDegrees;
+
+    // Armed cells by key; each holds the rows inside it
+    private final Map<Long, Cell> cells = new HashMap<>();
+    // Ids of the treasures the player is within the re-arm distance of, already alerted
+    private final Set<Long> alerted = new HashSet<>();
+    private long armedVersion = -1;
+    // Cell row of the last fix and the columns of the rows around it
+    private int armedRow = Integer.MIN_VALUE;
+    private int[] armedCenters = new int[0];
+    private int cellsArmed;
+
+    public ProximityEngine(TreasureRepository treasures, double radiusMeters, Listener listener) {
+        this.treasures = treasures;
+        this.listener = listener;
+        setRadiusMeters(radiusMeters);
+    }
+
+    public double getRadiusMeters() {
+        return radiusMeters;
+    }
+
+    // Changes the alert radius; the cells are armed again on the next fix
+    public void setRadiusMeters(double radiusMeters) {
+        if (!(radiusMeters > 0)) {
+            throw new IllegalArgumentException("Radius must be positive: " + radiusMeters);
+        }
+        this.radiusMeters = radiusMeters;
+        this.cellDegrees = Math.min(180, radiusMeters * REARM_FACTOR / METERS_PER_DEGREE);
+        reset();
+    }
+
+    // Forgets the armed cells and which treasures already alerted
+    public void reset() {
+        cells.clear();
+        alerted.clear();
+        armedVersion = -1;
+        armedRow = Integer.MIN_VALUE;
+    }
+
+    // Accuracy in metres as reported with the fix, or 0 if unknown
+    public void onLocation(double latitude, double longitude, double accuracyMeters) {
+        if (accuracyMeters > radiusMeters * MAX_ACCURACY_FACTOR || !treasures.isLoaded()) {
+            return;
+        }
+        applyTreasureChanges();
+        arm(latitude, longitude);
+
+        double rearmMeters = radiusMeters * REARM_FACTOR;
+        Set<Long> stillNear = new HashSet<>();
+        TreasureTable table = treasures.getTable();
+        for (Cell cell : cells.values()) {
+            for (int i = 0; i < cell.count; i++) {
+                int row = cell.rows[i];
+                double distance = GreatCircle.distanceMeters(latitude, longitude,
+                        table.getLatitude(row), table.getLongitude(row));
+                if (distance > rearmMeters) {
+                    continue;
+                }
+                long id = table.getId(row);
+                if (alerted.contains(id)) {
+                    stillNear.add(id);
+                } else if (distance <= radiusMeters) {
+                    stillNear.add(id);
+                    listener.onTreasureNearby(id, row, distance);
+                }
+            }
+        }
+        // Anything not seen is out of the re-arm distance, or in a cell that was let go
+        alerted.clear();
+        alerted.addAll(stillNear);
+    }
+
+    // How many cells were armed from the spatial index so far, for tests and tuning
+    int getCellsArmed() {
+        return cellsArmed;
+    }
+
+    int getArmedTreasureCount() {
+        int count = 0;
+        for (Cell cell : cells.values()) {
+            count += cell.count;
+        }
+        return count;
+    }
+
+    // Arms the 3x3 block of cells around the fix and lets go of the ones outside it. Rows have
+    // columns of their own width, so the block moves whenever the column of any of its three
+    // rows changes, not just the player's own.
+    private void arm(double latitude, double longitude) {
+        int row = cellRow(latitude);
+        int[] centers = new int[3];
+        for (int i = 0; i < 3; i++) {
+            int r = row - 1 + i;
+            centers[i] = r < cellRow(-90) || r > cellRow(90) ? -1 : cellColumn(r, longitude);
+        }
+        if (row == armedRow && Arrays.equals(centers, armedCenters)) {
+            return;
+        }
+        armedRow = row;
+        armedCenters = centers;
+
+        Set<Long> block = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            if (centers[i] < 0) {
+                continue;
+            }
+            int r = row - 1 + i;
+            int columns = columnCount(r);
+            for (int c = centers[i] - 1; c <= centers[i] + 1; c++) {
+                int wrapped = Math.floorMod(c, columns);
+                long key = key(r, wrapped);
+                if (block.add(key) && !cells.containsKey(key)) {
+                    cells.put(key, load(r, wrapped));
+                }
+            }
+        }
+        for (Iterator<Long> keys = cells.keySet().iterator(); keys.hasNext(); ) {
+            if (!block.contains(keys.next())) {
+                keys.remove();
+            }
+        }
+    }
+
+    private Cell load(int row, int column) {
+        cellsArmed++;
+        double width = columnWidth(row);
+        double west = -180 + column * width;
+        Cell cell = new Cell();
+        TreasureTable table = treasures.getTable();
+        IntConsumer keepOwn = found -> {
+            // The box is a little larger than the cell, so rows on an edge are found by both
+            // neighbours; each keeps only the rows that fall in it
+            if (cellRow(table.getLatitude(found)) == row
+                    && cellColumn(row, table.getLongitude(found)) == column) {
+                cell.add(found);
+            }
+        };
+        double south = row * cellDegrees - EDGE_MARGIN;
+        double north = (row + 1) * cellDegrees + EDGE_MARGIN;
+        treasures.getSpatialIndex().query(south, west - EDGE_MARGIN, north, west + width + EDGE_MARGIN, keepOwn);
+        if (column == 0) {
+            // Longitude 180 belongs to the first column, like -180
+            treasures.getSpatialIndex().query(south, 180 - EDGE_MARGIN, north, 180, keepOwn);
+        }
+        return cell;
+    }
+
+    // Adds new treasures to the armed cells they fall in; anything else starts over
+    private void applyTreasureChanges() {
+        long version = treasures.getVersion();
+        if (version == armedVersion) {
+            return;
+        }
+        TreasureTable table = treasures.getTable();
+        boolean[] rebuild = {armedVersion < 0};
+        if (!rebuild[0] && !treasures.changesSince(armedVersion, (row, isAddition) -> {
+            if (!isAddition) {
+                rebuild[0] = true;
+                return;
+            }
+            int cellRow = cellRow(table.getLatitude(row));
+            Cell cell = cells.get(key(cellRow, cellColumn(cellRow, table.getLongitude(row))));
+            if (cell != null) {
+                cell.add(row);
+            }
+        })) {
+            rebuild[0] = true;
+        }
+        armedVersion = version;
+        if (rebuild[0]) {
+            cells.clear();
+            armedRow = Integer.MIN_VALUE;
+        }
+    }
+
+    private int cellRow(double latitude) {
+        return (int) Math.floor(Math.max(-90, Math.min(90, latitude)) / cellDegrees);
+    }
+
+    private int cellColumn(int row, double longitude) {
+        double lon = ((longitude + 180) % 360 + 360) % 360;
+        return Math.min(columnCount(row) - 1, (int) Math.floor(lon / columnWidth(row)));
+    }
+
+    // Columns split the row evenly, so the last one is as wide as the rest across the antimeridian
+    private int columnCount(int row) {
+        // Widest longitude difference to a point within one cell height of a player at most one
+        // cell height further poleward than the row
+        double edge = Math.max(Math.abs(row * cellDegrees), Math.abs((row + 1) * cellDegrees));
+        double cos = Math.cos(Math.toRadians(Math.min(90, edge + cellDegrees)));
+        double sin = Math.sin(Math.toRadians(cellDegrees));
+        if (sin >= cos) {
+            return 1;
+        }
+        double minWidth = Math.toDegrees(Math.asin(sin / cos));
+        return Math.max(1, (int) Math.floor(360 / minWidth));
+    }
+
+    private double columnWidth(int row) {
+        return 360.0 / columnCount(row);
+    }
+
+    private static long key(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    private static final class Cell {
+        int[] rows = new int[8];
+        int count;
+
+        void add(int row) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+    }
+}
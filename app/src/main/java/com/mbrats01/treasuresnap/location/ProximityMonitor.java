@@ -0,0 +1,151 @@
+package com.mbrats01.treasuresnap.location;
+
+import android.Manifest;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Build;
+import android.os.Looper;
+import android.text.format.DateUtils;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+import com.mbrats01.treasuresnap.MainActivity;
+import com.mbrats01.treasuresnap.R;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+/**
+ * Streams location updates into a {@link ProximityEngine} while the app is in the foreground
+ * and posts a notification for every treasure the player comes close to.
+ *
+ * Updates are requested at balanced power and delivered in batches, so the radio and the CPU
+ * wake up once per batch rather than once per fix; every fix of a batch is still checked.
+ */
+public class ProximityMonitor {
+
+    public static final String PREFS = "proximity";
+    public static final String PREF_ENABLED = "enabled";
+    public static final String PREF_RADIUS_METERS = "radius_meters";
+
+    private static final String CHANNEL_ID = "proximity";
+    private static final long UPDATE_INTERVAL_MS = 10_000;
+    // Fixes are held back and delivered together for up to this long
+    private static final long MAX_UPDATE_DELAY_MS = 60_000;
+
+    private final Context context;
+    private final TreasureRepository treasures;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final ProximityEngine engine;
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            for (Location location : result.getLocations()) {
+                engine.onLocation(location.getLatitude(), location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : 0);
+            }
+        }
+    };
+    private boolean started;
+
+    public ProximityMonitor(Context context, TreasureRepository treasures) {
+        this.context = context.getApplicationContext();
+        this.treasures = treasures;
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(this.context);
+        this.engine = new ProximityEngine(treasures, getRadiusMeters(), this::notifyNearby);
+    }
+
+    public boolean isEnabled() {
+        return prefs().getBoolean(PREF_ENABLED, false);
+    }
+
+    // Turning alerts off stops the updates right away; turning them on takes effect on start()
+    public void setEnabled(boolean enabled) {
+        prefs().edit().putBoolean(PREF_ENABLED, enabled).apply();
+        if (!enabled) {
+            stop();
+        }
+    }
+
+    public double getRadiusMeters() {
+        return prefs().getFloat(PREF_RADIUS_METERS,
+                context.getResources().getInteger(R.integer.proximity_radius_meters));
+    }
+
+    // Requests location updates if alerts are on and location is granted; call on the main thread
+    public void start() {
+        if (started || !isEnabled()
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        createChannel();
+        double radiusMeters = getRadiusMeters();
+        if (radiusMeters != engine.getRadiusMeters()) {
+            engine.setRadiusMeters(radiusMeters);
+        }
+        LocationRequest request = new LocationRequest.Builder(
+                Priority.PRIORITY_BALANCED_POWER_ACCURACY, UPDATE_INTERVAL_MS)
+                .setMaxUpdateDelayMillis(MAX_UPDATE_DELAY_MS)
+                // Smaller moves can't bring a treasure into range that wasn't almost there already
+                .setMinUpdateDistanceMeters((float) (radiusMeters / 4))
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, callback, Looper.getMainLooper());
+        started = true;
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        fusedLocationClient.removeLocationUpdates(callback);
+        started = false;
+    }
+
+    private void notifyNearby(long treasureId, int row, double distanceMeters) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        TreasureTable table = treasures.getTable();
+        Intent intent = new Intent(context, MainActivity.class)
+                .setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                context, 0, intent, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_menu_map)
+                .setContentTitle(context.getString(R.string.proximity_title))
+                .setContentText(context.getString(R.string.proximity_text,
+                        Math.round(distanceMeters),
+                        DateUtils.getRelativeTimeSpanString(table.getTimestamp(row))))
+                .setContentIntent(contentIntent)
+                .setAutoCancel(true);
+        // One notification per treasure, replaced if the player comes back to it
+        NotificationManagerCompat.from(context).notify(Long.hashCode(treasureId), builder.build());
+    }
+
+    private void createChannel() {
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+                context.getString(R.string.proximity_channel), NotificationManager.IMPORTANCE_DEFAULT);
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    private SharedPreferences prefs() {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+}
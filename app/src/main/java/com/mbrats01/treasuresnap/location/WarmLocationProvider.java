@@ -0,0 +1,129 @@
+package com.mbrats01.treasuresnap.location;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams high accuracy location updates while a screen that needs the player's position is
+ * open, and keeps the best recent fix in a {@link LocationCache}, so it is on hand as soon as it
+ * is asked for. Use on the main thread.
+ */
+public class WarmLocationProvider {
+
+    // Fixes older than this are not used to tag a capture
+    public static final long MAX_FIX_AGE_MS = 30_000;
+    private static final long UPDATE_INTERVAL_MS = 1_000;
+    // How long awaitFix() waits for a first fix before giving up
+    private static final long AWAIT_TIMEOUT_MS = 10_000;
+
+    private final Context context;
+    private final FusedLocationProviderClient fusedLocationClient;
+    private final LocationCache cache = new LocationCache();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Consumer<LocationFix>> waiting = new ArrayList<>();
+    private final LocationCallback callback = new LocationCallback() {
+        @Override
+        public void onLocationResult(@NonNull LocationResult result) {
+            for (Location location : result.getLocations()) {
+                offer(location);
+            }
+        }
+    };
+    private boolean started;
+
+    public WarmLocationProvider(Context context) {
+        this.context = context.getApplicationContext();
+        this.fusedLocationClient = LocationServices.getFusedLocationProviderClient(this.context);
+    }
+
+    // Starts streaming if location is granted; the last known location seeds the cache meanwhile
+    public void start() {
+        if (started || ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        started = true;
+        fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
+            if (location != null && started) {
+                offer(location);
+            }
+        });
+        LocationRequest request = new LocationRequest.Builder(
+                Priority.PRIORITY_HIGH_ACCURACY, UPDATE_INTERVAL_MS)
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, callback, Looper.getMainLooper());
+    }
+
+    // Stops streaming; anything still waiting for a fix gets null
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        fusedLocationClient.removeLocationUpdates(callback);
+        handler.removeCallbacksAndMessages(null);
+        deliver(null);
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    // The best fix at most MAX_FIX_AGE_MS old, or null if there is none yet
+    @Nullable
+    public LocationFix getFix() {
+        return cache.get(SystemClock.elapsedRealtimeNanos(), MAX_FIX_AGE_MS);
+    }
+
+    // Hands over the current fix, or the next one to arrive; null if none comes in time
+    public void awaitFix(Consumer<LocationFix> consumer) {
+        LocationFix fix = getFix();
+        if (fix != null || !started) {
+            consumer.accept(fix);
+            return;
+        }
+        waiting.add(consumer);
+        if (waiting.size() == 1) {
+            handler.postDelayed(() -> deliver(null), AWAIT_TIMEOUT_MS);
+        }
+    }
+
+    private void offer(Location location) {
+        cache.offer(new LocationFix(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 0,
+                location.getElapsedRealtimeNanos()));
+        LocationFix fix = getFix();
+        if (fix != null && !waiting.isEmpty()) {
+            handler.removeCallbacksAndMessages(null);
+            deliver(fix);
+        }
+    }
+
+    private void deliver(LocationFix fix) {
+        List<Consumer<LocationFix>> consumers = new ArrayList<>(waiting);
+        waiting.clear();
+        for (Consumer<LocationFix> consumer : consumers) {
+            consumer.accept(fix);
+        }
+    }
+}
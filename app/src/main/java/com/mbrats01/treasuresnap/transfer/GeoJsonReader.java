@@ -0,0 +1,166 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams the Point features of a GeoJSON FeatureCollection, or of a single Feature, as
+ * treasures. Only the feature being read is kept in memory; other geometries are skipped.
+ *
+ * Recognised properties are "photo", "time" (ISO 8601) and "timestamp" (epoch milliseconds).
+ * Points without two numeric coordinates on the globe are reported as skipped.
+ */
+final class GeoJsonReader {
+
+    // The parts of the current feature, which may come in any order
+    private static final class Feature {
+        String geometryType;
+        boolean hasCoordinates;
+        double latitude;
+        double longitude;
+        String photo;
+        long timestamp;
+        // Only parsed when there is no "timestamp", which is cheaper to read
+        String time;
+
+        void reset() {
+            geometryType = null;
+            hasCoordinates = false;
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+            photo = null;
+            timestamp = TreasureFormat.NO_TIMESTAMP;
+            time = null;
+        }
+    }
+
+    private GeoJsonReader() {
+    }
+
+    static int read(Reader in, long defaultTimestamp, TreasureSink sink) throws IOException {
+        JsonStreamReader json = new JsonStreamReader(in);
+        int[] count = {0};
+        readObject(json, new Feature(), defaultTimestamp, sink, count);
+        return count[0];
+    }
+
+    // A feature, or a collection whose "features" are read one by one
+    private static void readObject(JsonStreamReader json, Feature feature, long defaultTimestamp,
+                                   TreasureSink sink, int[] count) throws IOException {
+        feature.reset();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "features":
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        readObject(json, feature, defaultTimestamp, sink, count);
+                    }
+                    json.endArray();
+                    feature.reset();
+                    break;
+                case "geometry":
+                    readGeometry(json, feature);
+                    break;
+                case "properties":
+                    readProperties(json, feature);
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        if (!"Point".equals(feature.geometryType)) {
+            return;
+        }
+        if (!feature.hasCoordinates || !TreasureFormat.isValidPosition(feature.latitude, feature.longitude)) {
+            sink.skip();
+            return;
+        }
+        long timestamp = feature.timestamp;
+        if (timestamp == TreasureFormat.NO_TIMESTAMP && feature.time != null) {
+            timestamp = TreasureFormat.parseTime(feature.time);
+        }
+        if (timestamp == TreasureFormat.NO_TIMESTAMP) {
+            timestamp = defaultTimestamp;
+        }
+        sink.accept(new Treasure(feature.photo, feature.latitude, feature.longitude, timestamp));
+        count[0]++;
+    }
+
+    private static void readGeometry(JsonStreamReader json, Feature feature) throws IOException {
+        if (json.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "type":
+                    feature.geometryType = json.nextString();
+                    break;
+                case "coordinates":
+                    readPosition(json, feature);
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+    }
+
+    // [longitude, latitude, (elevation)]; only numbers count, nested arrays belong to other
+    // geometries
+    private static void readPosition(JsonStreamReader json, Feature feature) throws IOException {
+        feature.hasCoordinates = false;
+        if (json.peek() != JsonStreamReader.Token.BEGIN_ARRAY) {
+            json.skipValue();
+            return;
+        }
+        json.beginArray();
+        int numbers = 0;
+        while (json.hasNext()) {
+            if (json.peek() != JsonStreamReader.Token.NUMBER) {
+                json.skipValue();
+                continue;
+            }
+            if (numbers == 0) {
+                feature.longitude = json.nextDouble();
+            } else if (numbers == 1) {
+                feature.latitude = json.nextDouble();
+            } else {
+                json.skipValue();
+            }
+            numbers++;
+        }
+        json.endArray();
+        feature.hasCoordinates = numbers >= 2;
+    }
+
+    private static void readProperties(JsonStreamReader json, Feature feature) throws IOException {
+        if (json.peek() != JsonStreamReader.Token.BEGIN_OBJECT) {
+            json.skipValue();
+            return;
+        }
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            JsonStreamReader.Token token = json.peek();
+            if (name.equals("photo") && token == JsonStreamReader.Token.STRING) {
+                feature.photo = json.nextString();
+            } else if (name.equals("time") && token == JsonStreamReader.Token.STRING) {
+                feature.time = json.nextString();
+            } else if (name.equals("timestamp") && token == JsonStreamReader.Token.NUMBER) {
+                feature.timestamp = json.nextLong();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+    }
+}
@@ -0,0 +1,67 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+
+// Writes treasures as Point features of a GeoJSON FeatureCollection, one feature per line
+final class GeoJsonWriter implements TreasureWriter {
+
+    private final Writer out;
+    private boolean first = true;
+
+    GeoJsonWriter(Writer out) throws IOException {
+        this.out = new BufferedWriter(out);
+        this.out.write("{\"type\":\"FeatureCollection\",\"features\":[\n");
+    }
+
+    @Override
+    public void write(long id, String photoPath, double latitude, double longitude, long timestamp)
+            throws IOException {
+        if (!first) {
+            out.write(",\n");
+        }
+        first = false;
+        out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+        out.write(Double.toString(longitude));
+        out.write(',');
+        out.write(Double.toString(latitude));
+        out.write("]},\"properties\":{\"id\":");
+        out.write(Long.toString(id));
+        if (photoPath != null && !photoPath.isEmpty()) {
+            out.write(",\"photo\":");
+            writeString(photoPath);
+        }
+        out.write(",\"timestamp\":");
+        out.write(Long.toString(timestamp));
+        out.write(",\"time\":\"");
+        out.write(Instant.ofEpochMilli(timestamp).toString());
+        out.write("\"}}");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("\n]}\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format("\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,190 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Streams the waypoints, track points and route points of a GPX file as treasures using SAX, so
+ * only the point being read is kept in memory. A point's "link" is taken as its photo.
+ *
+ * Files come from anywhere, so documents with a DTD are rejected and external entities are never
+ * resolved. Points without valid coordinates are reported as skipped.
+ */
+final class GpxReader {
+
+    private static final String DISALLOW_DOCTYPE_DECL = "http://apache.org/xml/features/disallow-doctype-decl";
+    private static final String EXTERNAL_GENERAL_ENTITIES = "http://xml.org/sax/features/external-general-entities";
+    private static final String EXTERNAL_PARAMETER_ENTITIES = "http://xml.org/sax/features/external-parameter-entities";
+    private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private GpxReader() {
+    }
+
+    static int read(InputStream in, long defaultTimestamp, TreasureSink sink) throws IOException {
+        Handler handler = new Handler(defaultTimestamp, sink);
+        try {
+            SAXParser parser = newParser();
+            // Rejects a DTD where the parser has no feature for it, e.g. Android's
+            parser.setProperty(LEXICAL_HANDLER, handler);
+            parser.parse(in, handler);
+        } catch (ParserConfigurationException e) {
+            throw new IOException(e);
+        } catch (SAXException e) {
+            // Errors from the sink travel through the parser wrapped
+            if (e.getException() instanceof IOException) {
+                throw (IOException) e.getException();
+            }
+            throw new IOException("Invalid GPX: " + e.getMessage(), e);
+        }
+        return handler.count;
+    }
+
+    private static SAXParser newParser() throws ParserConfigurationException, SAXException {
+        SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        setFeatureIfSupported(factory, DISALLOW_DOCTYPE_DECL, true);
+        setFeatureIfSupported(factory, EXTERNAL_GENERAL_ENTITIES, false);
+        setFeatureIfSupported(factory, EXTERNAL_PARAMETER_ENTITIES, false);
+        return factory.newSAXParser();
+    }
+
+    // Parsers only know some of these; the handler covers for the ones they don't
+    private static void setFeatureIfSupported(SAXParserFactory factory, String name, boolean value)
+            throws ParserConfigurationException {
+        try {
+            factory.setFeature(name, value);
+        } catch (SAXNotRecognizedException | SAXNotSupportedException e) {
+            // Not available in this parser
+        }
+    }
+
+    private static final class Handler extends DefaultHandler implements LexicalHandler {
+        private final long defaultTimestamp;
+        private final TreasureSink sink;
+        private final StringBuilder text = new StringBuilder();
+        int count;
+
+        private boolean inPoint;
+        private boolean inTime;
+        private double latitude;
+        private double longitude;
+        private long timestamp;
+        private String photo;
+
+        Handler(long defaultTimestamp, TreasureSink sink) {
+            this.defaultTimestamp = defaultTimestamp;
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            String name = localName.isEmpty() ? qName : localName;
+            if (isPoint(name)) {
+                inPoint = true;
+                latitude = parseCoordinate(attributes.getValue("lat"));
+                longitude = parseCoordinate(attributes.getValue("lon"));
+                timestamp = defaultTimestamp;
+                photo = null;
+            } else if (inPoint && name.equals("time")) {
+                inTime = true;
+                text.setLength(0);
+            } else if (inPoint && name.equals("link") && photo == null) {
+                photo = attributes.getValue("href");
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inTime) {
+                text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            String name = localName.isEmpty() ? qName : localName;
+            if (inTime && name.equals("time")) {
+                inTime = false;
+                long parsed = TreasureFormat.parseTime(text.toString());
+                if (parsed != TreasureFormat.NO_TIMESTAMP) {
+                    timestamp = parsed;
+                }
+            } else if (inPoint && isPoint(name)) {
+                inPoint = false;
+                if (!TreasureFormat.isValidPosition(latitude, longitude)) {
+                    sink.skip();
+                    return;
+                }
+                try {
+                    sink.accept(new Treasure(photo, latitude, longitude, timestamp));
+                } catch (IOException e) {
+                    throw new SAXException(e);
+                }
+                count++;
+            }
+        }
+
+        @Override
+        public void startDTD(String name, String publicId, String systemId) throws SAXException {
+            throw new SAXException("DTDs are not allowed");
+        }
+
+        // Nothing is fetched for an entity, whatever the parser allows
+        @Override
+        public InputSource resolveEntity(String publicId, String systemId) {
+            return new InputSource(new StringReader(""));
+        }
+
+        @Override
+        public void endDTD() {
+        }
+
+        @Override
+        public void startEntity(String name) {
+        }
+
+        @Override
+        public void endEntity(String name) {
+        }
+
+        @Override
+        public void startCDATA() {
+        }
+
+        @Override
+        public void endCDATA() {
+        }
+
+        @Override
+        public void comment(char[] ch, int start, int length) {
+        }
+
+        private static boolean isPoint(String name) {
+            return name.equals("wpt") || name.equals("trkpt") || name.equals("rtept");
+        }
+
+        private static double parseCoordinate(String value) {
+            try {
+                return value == null ? Double.NaN : Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+
+// Writes treasures as GPX 1.1 waypoints, with the photo as the waypoint's link
+final class GpxWriter implements TreasureWriter {
+
+    private final Writer out;
+
+    GpxWriter(Writer out) throws IOException {
+        this.out = new BufferedWriter(out);
+        this.out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<gpx version=\"1.1\" creator=\"TreasureSnap\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+    }
+
+    @Override
+    public void write(long id, String photoPath, double latitude, double longitude, long timestamp)
+            throws IOException {
+        out.write("<wpt lat=\"");
+        out.write(Double.toString(latitude));
+        out.write("\" lon=\"");
+        out.write(Double.toString(longitude));
+        out.write("\"><time>");
+        out.write(Instant.ofEpochMilli(timestamp).toString());
+        out.write("</time><name>Treasure ");
+        out.write(Long.toString(id));
+        out.write("</name>");
+        if (photoPath != null && !photoPath.isEmpty()) {
+            out.write("<link href=\"");
+            writeEscaped(photoPath);
+            out.write("\"/>");
+        }
+        out.write("</wpt>\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write("</gpx>\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeEscaped(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                default:
+                    out.write(c);
+                    break;
+            }
+        }
+    }
+}
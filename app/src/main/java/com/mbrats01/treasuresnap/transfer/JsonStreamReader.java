@@ -0,0 +1,324 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Pull parser for JSON documents of any size, reading one token at a time through a small
+ * buffer. Modelled on android.util.JsonReader, which isn't available to the JVM unit tests.
+ * Separators are checked loosely: a missing comma is tolerated, a mismatched bracket is not.
+ */
+final class JsonStreamReader implements Closeable {
+
+    enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    // Characters consumed before the current buffer, for error messages
+    private long offset;
+
+    // One entry per open container; objects remember whether a name comes next
+    private boolean[] isObject = new boolean[32];
+    private boolean[] expectsName = new boolean[32];
+    private int depth;
+
+    private Token peeked;
+    private final StringBuilder text = new StringBuilder();
+
+    JsonStreamReader(Reader in) {
+        this.in = in;
+    }
+
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int c = nextSignificant();
+        switch (c) {
+            case -1:
+                peeked = Token.END_DOCUMENT;
+                break;
+            case '{':
+                peeked = Token.BEGIN_OBJECT;
+                break;
+            case '}':
+                peeked = Token.END_OBJECT;
+                break;
+            case '[':
+                peeked = Token.BEGIN_ARRAY;
+                break;
+            case ']':
+                peeked = Token.END_ARRAY;
+                break;
+            case '"':
+                readString();
+                peeked = depth > 0 && isObject[depth - 1] && expectsName[depth - 1] ? Token.NAME : Token.STRING;
+                break;
+            default:
+                readLiteral((char) c);
+                peeked = literalToken();
+                break;
+        }
+        return peeked;
+    }
+
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+    }
+
+    void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+    }
+
+    String nextName() throws IOException {
+        consume(Token.NAME);
+        return text.toString();
+    }
+
+    // Strings, and numbers as they were written
+    String nextString() throws IOException {
+        Token token = peek();
+        if (token != Token.STRING && token != Token.NUMBER) {
+            throw syntaxError("Expected a string but was " + token);
+        }
+        consume(token);
+        return text.toString();
+    }
+
+    // Numbers, and strings holding a number
+    double nextDouble() throws IOException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected a number but was " + token);
+        }
+        consume(token);
+        try {
+            return Double.parseDouble(text.toString());
+        } catch (NumberFormatException e) {
+            throw syntaxError("Not a number: " + text);
+        }
+    }
+
+    long nextLong() throws IOException {
+        double value = nextDouble();
+        // Parse again when a double would lose precision
+        String digits = text.toString();
+        if (Math.abs(value) >= 1L << 53 && digits.indexOf('.') < 0 && digits.indexOf('e') < 0
+                && digits.indexOf('E') < 0) {
+            return Long.parseLong(digits);
+        }
+        return (long) value;
+    }
+
+    // Skips the next value along with everything nested inside it
+    void skipValue() throws IOException {
+        int nested = 0;
+        do {
+            Token token = peek();
+            if (token == Token.END_DOCUMENT) {
+                throw syntaxError("Unexpected end of document");
+            }
+            if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+                nested++;
+            } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+                nested--;
+            }
+            consume(token);
+        } while (nested > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+        switch (token) {
+            case BEGIN_OBJECT:
+            case BEGIN_ARRAY:
+                valueRead();
+                push(token == Token.BEGIN_OBJECT);
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                if (depth == 0 || isObject[depth - 1] != (token == Token.END_OBJECT)) {
+                    throw syntaxError("Mismatched " + token);
+                }
+                depth--;
+                break;
+            case NAME:
+                expectsName[depth - 1] = false;
+                break;
+            default:
+                valueRead();
+                break;
+        }
+    }
+
+    // A value inside an object is followed by the next name
+    private void valueRead() {
+        if (depth > 0 && isObject[depth - 1]) {
+            expectsName[depth - 1] = true;
+        }
+    }
+
+    private void push(boolean object) {
+        if (depth == isObject.length) {
+            isObject = Arrays.copyOf(isObject, depth * 2);
+            expectsName = Arrays.copyOf(expectsName, depth * 2);
+        }
+        isObject[depth] = object;
+        expectsName[depth] = object;
+        depth++;
+    }
+
+    // Next character that isn't whitespace or a separator, or -1 at the end
+    private int nextSignificant() throws IOException {
+        while (true) {
+            int c = read();
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != ',' && c != ':' && c != '\uFEFF') {
+                return c;
+            }
+        }
+    }
+
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            // Copy runs of plain characters straight from the buffer
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+
+            int c = read();
+            if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+            if (c == '"') {
+                return;
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            c = read();
+            switch (c) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) {
+                            throw syntaxError("Bad unicode escape");
+                        }
+                        code = code * 16 + digit;
+                    }
+                    text.append((char) code);
+                    break;
+                case -1:
+                    throw syntaxError("Unterminated string");
+                default:
+                    // \" \\ \/
+                    text.append((char) c);
+                    break;
+            }
+        }
+    }
+
+    private void readLiteral(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        while (true) {
+            int start = position;
+            while (position < limit && !endsLiteral(buffer[position])) {
+                position++;
+            }
+            text.append(buffer, start, position - start);
+            if (position < limit) {
+                return;
+            }
+            // Ran off the buffer; refill and carry on unless the document ended
+            int c = read();
+            if (c == -1) {
+                return;
+            }
+            position--;
+        }
+    }
+
+    private static boolean endsLiteral(char c) {
+        return c == ',' || c == ':' || c == '}' || c == ']' || c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private Token literalToken() throws IOException {
+        char first = text.charAt(0);
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            return Token.NUMBER;
+        }
+        String literal = text.toString();
+        if (literal.equals("true") || literal.equals("false")) {
+            return Token.BOOLEAN;
+        }
+        if (literal.equals("null")) {
+            return Token.NULL;
+        }
+        throw syntaxError("Unexpected '" + literal + "'");
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (offset + position));
+    }
+}
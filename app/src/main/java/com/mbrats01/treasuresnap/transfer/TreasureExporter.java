@@ -0,0 +1,85 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes every treasure of a repository to a GeoJSON or GPX file.
+ *
+ * Rows are copied out of the repository a chunk at a time on its own thread and written on the
+ * caller's, so memory stays flat and the repository is never read from two threads.
+ */
+public class TreasureExporter {
+
+    static final int CHUNK_SIZE = 2000;
+
+    private final TreasureRepository treasures;
+    // The thread the repository must be used on (the main thread in the app)
+    private final Executor repositoryExecutor;
+
+    // Reused for every chunk
+    private final long[] ids = new long[CHUNK_SIZE];
+    private final String[] photoPaths = new String[CHUNK_SIZE];
+    private final double[] latitudes = new double[CHUNK_SIZE];
+    private final double[] longitudes = new double[CHUNK_SIZE];
+    private final long[] timestamps = new long[CHUNK_SIZE];
+
+    public TreasureExporter(TreasureRepository treasures, Executor repositoryExecutor) {
+        this.treasures = treasures;
+        this.repositoryExecutor = repositoryExecutor;
+    }
+
+    // Blocks until the file is written and returns how many treasures it holds; the stream is
+    // closed. Treasures added meanwhile are not included. Must not run on repositoryExecutor.
+    public synchronized int exportTo(OutputStream out, TreasureFormat format) throws IOException {
+        int[] size = new int[1];
+        runOnRepositoryThread(() -> size[0] = treasures.size());
+
+        try (TreasureWriter writer = format.newWriter(out)) {
+            for (int from = 0; from < size[0]; from += CHUNK_SIZE) {
+                int start = from;
+                int count = Math.min(CHUNK_SIZE, size[0] - from);
+                runOnRepositoryThread(() -> copyRows(start, count));
+                for (int i = 0; i < count; i++) {
+                    writer.write(ids[i], photoPaths[i], latitudes[i], longitudes[i], timestamps[i]);
+                }
+            }
+        }
+        return size[0];
+    }
+
+    private void copyRows(int from, int count) {
+        TreasureTable table = treasures.getTable();
+        for (int i = 0; i < count; i++) {
+            int row = from + i;
+            ids[i] = table.getId(row);
+            photoPaths[i] = table.getPhotoPath(row);
+            latitudes[i] = table.getLatitude(row);
+            longitudes[i] = table.getLongitude(row);
+            timestamps[i] = table.getTimestamp(row);
+        }
+    }
+
+    private void runOnRepositoryThread(Runnable task) throws InterruptedIOException {
+        CountDownLatch done = new CountDownLatch(1);
+        repositoryExecutor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Export interrupted");
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// File formats treasures can be imported from and exported to
+public enum TreasureFormat {
+
+    GEOJSON("application/geo+json", "geojson") {
+        @Override
+        int read(InputStream in, long defaultTimestamp, TreasureSink sink) throws IOException {
+            return GeoJsonReader.read(new InputStreamReader(in, StandardCharsets.UTF_8), defaultTimestamp, sink);
+        }
+
+        @Override
+        TreasureWriter newWriter(OutputStream out) throws IOException {
+            return new GeoJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+    },
+
+    GPX("application/gpx+xml", "gpx") {
+        @Override
+        int read(InputStream in, long defaultTimestamp, TreasureSink sink) throws IOException {
+            return GpxReader.read(in, defaultTimestamp, sink);
+        }
+
+        @Override
+        TreasureWriter newWriter(OutputStream out) throws IOException {
+            return new GpxWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+    };
+
+    // Returned by parseTime() for text that isn't a date-time
+    static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private final String mimeType;
+    private final String extension;
+
+    TreasureFormat(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    // Streams every treasure in the document to the sink and returns how many there were.
+    // Treasures without a time get defaultTimestamp; points without valid coordinates are
+    // reported to TreasureSink.skip() instead.
+    abstract int read(InputStream in, long defaultTimestamp, TreasureSink sink) throws IOException;
+
+    abstract TreasureWriter newWriter(OutputStream out) throws IOException;
+
+    // False for coordinates off the globe, including NaN; such points are skipped on import
+    static boolean isValidPosition(double latitude, double longitude) {
+        return Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
+    }
+
+    // Milliseconds for an ISO 8601 date-time with offset, as both formats write them
+    static long parseTime(String text) {
+        try {
+            return Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(text.trim())).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return NO_TIMESTAMP;
+        }
+    }
+
+    // Tells the formats apart by their first character; the stream is left where it was
+    public static TreasureFormat detect(BufferedInputStream in) throws IOException {
+        in.mark(256);
+        try {
+            int c;
+            do {
+                c = in.read();
+            } while (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == 0xEF || c == 0xBB || c == 0xBF);
+            if (c == '{' || c == '[') {
+                return GEOJSON;
+            }
+            if (c == '<') {
+                return GPX;
+            }
+            throw new IOException("Not a GeoJSON or GPX file");
+        } finally {
+            in.reset();
+        }
+    }
+}
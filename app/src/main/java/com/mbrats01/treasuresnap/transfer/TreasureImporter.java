@@ -0,0 +1,111 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Adds the treasures of a GeoJSON or GPX file to a repository while the file is being parsed.
+ *
+ * Treasures are handed over in batches of {@link #BATCH_SIZE}, so listeners hear about each
+ * batch once. Parsing waits while a batch is still being applied, which keeps memory flat
+ * however large the file is.
+ */
+public class TreasureImporter {
+
+    public static final int BATCH_SIZE = 2000;
+
+    private final TreasureRepository treasures;
+    // The thread the repository must be used on (the main thread in the app)
+    private final Executor repositoryExecutor;
+    private int skippedCount;
+
+    public TreasureImporter(TreasureRepository treasures, Executor repositoryExecutor) {
+        this.treasures = treasures;
+        this.repositoryExecutor = repositoryExecutor;
+    }
+
+    // Blocks until every treasure has been handed to the repository and returns how many there
+    // were. Must not run on repositoryExecutor.
+    public int importFrom(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        return importFrom(buffered, TreasureFormat.detect(buffered));
+    }
+
+    public int importFrom(InputStream in, TreasureFormat format) throws IOException {
+        // Treasures without a time of their own are dated to the import
+        BatchingSink sink = new BatchingSink();
+        int count = format.read(in, System.currentTimeMillis(), sink);
+        sink.finish();
+        skippedCount = sink.skipped;
+        return count;
+    }
+
+    // Points the last importFrom() left out for missing or invalid coordinates
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    // Collects parsed treasures and hands them to the repository a batch at a time
+    private final class BatchingSink implements TreasureSink {
+        // At most one batch is being applied while the next one is parsed
+        private final Semaphore applying = new Semaphore(1);
+        private List<Treasure> batch = new ArrayList<>(BATCH_SIZE);
+        int skipped;
+
+        @Override
+        public void accept(Treasure treasure) throws IOException {
+            // The photos don't travel with the file. A bare name would resolve against this
+            // device's photos and could pick up an unrelated one, so imports have none.
+            batch.add(new Treasure("", treasure.getLatitude(), treasure.getLongitude(),
+                    treasure.getTimestamp()));
+            if (batch.size() == BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        @Override
+        public void skip() {
+            skipped++;
+        }
+
+        // Submits what is left and waits for it to be applied
+        void finish() throws IOException {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            acquire(applying);
+            applying.release();
+        }
+
+        private void submit() throws IOException {
+            acquire(applying);
+            List<Treasure> full = batch;
+            batch = new ArrayList<>(BATCH_SIZE);
+            repositoryExecutor.execute(() -> {
+                try {
+                    treasures.addAll(full);
+                } finally {
+                    applying.release();
+                }
+            });
+        }
+    }
+
+    private static void acquire(Semaphore semaphore) throws InterruptedIOException {
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+
+import java.io.IOException;
+
+// Receives each treasure as soon as it has been parsed
+public interface TreasureSink {
+    void accept(Treasure treasure) throws IOException;
+
+    // Called for each point that was left out because its coordinates are missing or invalid
+    default void skip() {
+    }
+}
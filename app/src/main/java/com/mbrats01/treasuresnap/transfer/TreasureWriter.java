@@ -0,0 +1,10 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// Writes treasures one at a time; close() finishes the document
+public interface TreasureWriter extends Closeable {
+    void write(long id, String photoPath, double latitude, double longitude, long timestamp)
+            throws IOException;
+}
@@ -1,13 +1,17 @@
 package com.mbrats01.treasuresnap.ui.camera;
 
 import android.Manifest;
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.location.Location;
+import android.media.Image;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Size;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,21 +20,28 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ExperimentalGetImage;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.view.PreviewView;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LifecycleOwner;
 
-import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.material.bottomsheet.BottomSheetBehavior;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.barcode.BarcodeScanner;
 import com.google.mlkit.vision.barcode.BarcodeScannerOptions;
@@ -38,25 +49,53 @@ import com.google.mlkit.vision.barcode.BarcodeScanning;
 import com.google.mlkit.vision.barcode.common.Barcode;
 import com.google.mlkit.vision.common.InputImage;
 import com.mbrats01.treasuresnap.R;
+import com.mbrats01.treasuresnap.TreasureSnapApplication;
+import com.mbrats01.treasuresnap.data.CaptureProfile;
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.image.PhotoInfoReader;
+import com.mbrats01.treasuresnap.location.LocationFix;
+import com.mbrats01.treasuresnap.location.WarmLocationProvider;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CameraFragment extends BottomSheetDialogFragment {
     private static final String TAG = "CameraFragment";
+    private static final String PREFS = "camera";
+    private static final String PREF_CAPTURE_PROFILE = "capture_profile";
+    // Shared by every camera sheet of the process, so the averages cover the whole session
+    private static final CaptureStats captureStats = new CaptureStats();
+    // Live scan frames: enough for ML Kit to find a code at arm's length, small enough to scan fast
+    private static final Size LIVE_SCAN_TARGET_SIZE = new Size(1280, 720);
 
     private PreviewView previewView;
     private ImageCapture imageCapture;
+    private ProcessCameraProvider cameraProvider;
+    private CaptureProfile captureProfile;
+    // Bound with the camera, null if the device can't stream it next to the capture settings
+    private ImageAnalysis imageAnalysis;
+    // Set while live scan is on
+    private LiveScanGate liveScanGate;
+    // Set while the scan button waits for the next analysis frame
+    private boolean scanningNextFrame;
+    private ExecutorService analysisExecutor;
+    private Chip liveScanChip;
     private ListenableFuture<ProcessCameraProvider> cameraProviderFuture;
     private BarcodeScanner barcodeScanner;
-    private FusedLocationProviderClient locationClient;
+    // Streams location while the sheet is open, so a capture is tagged without waiting
+    private WarmLocationProvider locationProvider;
     private OnPhotoTakenListener photoListener;
 
     public interface OnPhotoTakenListener {
-        void onPhotoTaken(String photoPath, double lat, double lng, long timestamp);
+        void onPhotoTaken(String photoPath, double lat, double lng, long timestamp, PhotoInfo photoInfo,
+                          CaptureProfile captureProfile);
     }
 
     public void setOnPhotoTakenListener(OnPhotoTakenListener listener) {
@@ -66,6 +105,7 @@ public class CameraFragment extends BottomSheetDialogFragment {
     @Override
     public void onStart() {
         super.onStart();
+        locationProvider.start();
 
         // Expand the BottomSheet to full screen
         if (getDialog() != null && getDialog().getWindow() != null) {
@@ -97,7 +137,7 @@ public class CameraFragment extends BottomSheetDialogFragment {
         View view = inflater.inflate(R.layout.fragment_camera, container, false);
 
         previewView = view.findViewById(R.id.preview_view);
-        locationClient = LocationServices.getFusedLocationProviderClient(requireActivity());
+        locationProvider = new WarmLocationProvider(requireContext());
 
         // Configure barcode scanner for QR codes only
         BarcodeScannerOptions options = new BarcodeScannerOptions.Builder()
@@ -105,6 +145,33 @@ public class CameraFragment extends BottomSheetDialogFragment {
                 .build();
         barcodeScanner = BarcodeScanning.getClient(options);
 
+        // Profile picker; a change rebinds the camera with the profile's settings
+        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        captureProfile = CaptureProfile.fromCode(
+                prefs.getInt(PREF_CAPTURE_PROFILE, CaptureProfile.STANDARD.getCode()));
+        ChipGroup profiles = view.findViewById(R.id.capture_profiles);
+        profiles.check(chipId(captureProfile));
+        profiles.setOnCheckedStateChangeListener((group, checkedIds) -> {
+            if (checkedIds.isEmpty()) {
+                return;
+            }
+            captureProfile = profileOf(checkedIds.get(0));
+            prefs.edit().putInt(PREF_CAPTURE_PROFILE, captureProfile.getCode()).apply();
+            if (cameraProvider != null) {
+                bindCamera(cameraProvider);
+            }
+        });
+
+        analysisExecutor = Executors.newSingleThreadExecutor();
+        liveScanChip = view.findViewById(R.id.chip_live_scan);
+        liveScanChip.setOnCheckedChangeListener((chip, checked) -> {
+            if (checked) {
+                startLiveScan();
+            } else {
+                stopLiveScan();
+            }
+        });
+
         // Button listeners
         view.findViewById(R.id.button_take_photo).setOnClickListener(v -> capturePhoto());
         view.findViewById(R.id.button_scan_qr).setOnClickListener(v -> scanQR());
@@ -153,18 +220,122 @@ public class CameraFragment extends BottomSheetDialogFragment {
         }, ContextCompat.getMainExecutor(requireContext()));
     }
 
+    private static int chipId(CaptureProfile profile) {
+        switch (profile) {
+            case FAST:
+                return R.id.chip_profile_fast;
+            case QUALITY:
+                return R.id.chip_profile_quality;
+            default:
+                return R.id.chip_profile_standard;
+        }
+    }
+
+    private static CaptureProfile profileOf(int chipId) {
+        if (chipId == R.id.chip_profile_fast) {
+            return CaptureProfile.FAST;
+        } else if (chipId == R.id.chip_profile_quality) {
+            return CaptureProfile.QUALITY;
+        }
+        return CaptureProfile.STANDARD;
+    }
+
+    // Binds preview, capture and, when the device can stream it alongside, live scan analysis.
+    // Analysis stays bound for the whole session; live scan only sets and clears its analyzer,
+    // so turning it on or off never reconfigures the camera.
     private void bindCamera(ProcessCameraProvider provider) {
-        CameraSelector selector = new CameraSelector.Builder()
-                .requireLensFacing(CameraSelector.LENS_FACING_BACK)
-                .build();
+        cameraProvider = provider;
+        CameraSelector selector = backCamera();
 
         Preview preview = new Preview.Builder().build();
         preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-        imageCapture = new ImageCapture.Builder().build();
+        imageCapture = CaptureProfiles.build(captureProfile);
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setResolutionSelector(new ResolutionSelector.Builder()
+                        .setResolutionStrategy(new ResolutionStrategy(LIVE_SCAN_TARGET_SIZE,
+                                ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                        .build())
+                .build();
 
+        stopLiveScan();
+        // A one-shot scan's analyzer goes with the old analysis use case
+        scanningNextFrame = false;
         provider.unbindAll();
-        provider.bindToLifecycle((LifecycleOwner) this, selector, preview, imageCapture);
+        try {
+            provider.bindToLifecycle((LifecycleOwner) this, selector, preview, imageCapture, analysis);
+            imageAnalysis = analysis;
+        } catch (IllegalArgumentException e) {
+            // The device can't stream analysis frames next to the current capture settings
+            Log.w(TAG, "Live scan not available with " + captureProfile, e);
+            imageAnalysis = null;
+            provider.bindToLifecycle((LifecycleOwner) this, selector, preview, imageCapture);
+        }
+        liveScanChip.setEnabled(imageAnalysis != null);
+    }
+
+    private static CameraSelector backCamera() {
+        return new CameraSelector.Builder()
+                .requireLensFacing(CameraSelector.LENS_FACING_BACK)
+                .build();
+    }
+
+    // Streams frames to the QR scanner until a code is found or the chip is unchecked. Only
+    // the latest frame is kept while the analyzer is busy, and the gate drops everything beyond
+    // the configured rate, so the preview never waits on the scanner.
+    private void startLiveScan() {
+        if (liveScanGate != null) {
+            return;
+        }
+        if (imageAnalysis == null) {
+            liveScanChip.setChecked(false);
+            return;
+        }
+        LiveScanGate gate = new LiveScanGate(getResources().getInteger(R.integer.live_scan_fps));
+        liveScanGate = gate;
+        // Live scan replaces a one-shot scan's analyzer and covers what it was waiting for
+        scanningNextFrame = false;
+        imageAnalysis.setAnalyzer(analysisExecutor, frame -> analyzeFrame(frame, gate));
+    }
+
+    private void stopLiveScan() {
+        if (liveScanGate == null) {
+            return;
+        }
+        // Frames already queued on the analysis thread are dropped by the gate
+        liveScanGate.stop();
+        Log.i(TAG, "Live scan stopped, " + liveScanGate.getDroppedCount() + " frames dropped");
+        liveScanGate = null;
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        liveScanChip.setChecked(false);
+    }
+
+    // Runs on the analysis thread; the frame is closed once the scanner is done with it, or
+    // right away if it is dropped, which lets the camera deliver the next one
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    private void analyzeFrame(ImageProxy frame, LiveScanGate gate) {
+        Image mediaImage = frame.getImage();
+        if (mediaImage == null || !gate.tryAcquire(System.nanoTime())) {
+            frame.close();
+            return;
+        }
+        InputImage image = InputImage.fromMediaImage(mediaImage, frame.getImageInfo().getRotationDegrees());
+        barcodeScanner.process(image)
+                .addOnSuccessListener(barcodes -> {
+                    // Only the first hit counts; the scan stops before it is handled
+                    if (!barcodes.isEmpty() && gate.stop() && isAdded() && liveScanGate == gate) {
+                        stopLiveScan();
+                        handleQRCode(barcodes.get(0).getRawValue());
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Live QR processing error", e))
+                .addOnCompleteListener(task -> {
+                    frame.close();
+                    gate.release();
+                });
     }
 
     // Capture photo and save it locally with timestamp and location
@@ -173,66 +344,154 @@ public class CameraFragment extends BottomSheetDialogFragment {
             Toast.makeText(requireContext(), "Camera not ready", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (ActivityCompat.checkSelfPermission(requireContext(),
+                Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            Toast.makeText(requireContext(), "Location permission needed", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Permission may have been granted after the sheet opened
+        locationProvider.start();
+
+        // The fix and the time are taken when the shutter fires, not once the file is written
+        CaptureTrace trace = new CaptureTrace();
+        LocationFix fix = locationProvider.getFix();
+        long capturedAt = System.currentTimeMillis();
+        CaptureProfile profile = captureProfile;
+        // Shutter to exposure, then exposure to the JPEG being encoded and written
+        long[] shutterNanos = {0};
+        // The sheet may be closed before the capture is finished, the treasure is saved anyway
+        Context appContext = requireContext().getApplicationContext();
 
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault())
-                .format(new Date());
-        File photoFile = new File(requireContext().getFilesDir(), timestamp + ".jpg");
+                .format(new Date(capturedAt));
+        File photoFile = new File(appContext.getFilesDir(), timestamp + ".jpg");
 
         ImageCapture.OutputFileOptions outputOptions =
                 new ImageCapture.OutputFileOptions.Builder(photoFile).build();
 
-        imageCapture.takePicture(outputOptions, ContextCompat.getMainExecutor(requireContext()),
+        imageCapture.takePicture(outputOptions, ContextCompat.getMainExecutor(appContext),
                 new ImageCapture.OnImageSavedCallback() {
+                    @Override
+                    public void onCaptureStarted() {
+                        shutterNanos[0] = trace.mark("shutter");
+                        // A photo was wanted rather than a code; stopped only now, so the scan
+                        // never holds up the shutter
+                        stopLiveScan();
+                    }
+
                     @Override
                     public void onImageSaved(@NonNull ImageCapture.OutputFileResults results) {
-                        saveWithLocation(photoFile);
+                        long encodeNanos = trace.mark("encode");
+                        // Read orientation and size once so display code never re-parses the EXIF
+                        PhotoInfo photoInfo = PhotoInfoReader.read(photoFile.getAbsolutePath());
+                        trace.mark("photo_info");
+                        Log.i(TAG, captureStats.record(profile, shutterNanos[0], encodeNanos,
+                                photoFile.length()));
+                        if (fix != null) {
+                            saveWithLocation(appContext, photoFile, photoInfo, profile, capturedAt, fix, trace);
+                        } else {
+                            // No fix yet at the shutter: take the first one that arrives
+                            locationProvider.awaitFix(awaited -> saveWithLocation(
+                                    appContext, photoFile, photoInfo, profile, capturedAt, awaited, trace));
+                        }
                     }
 
                     @Override
                     public void onError(@NonNull ImageCaptureException e) {
-                        Toast.makeText(requireContext(), "Photo capture failed", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(appContext, "Photo capture failed", Toast.LENGTH_SHORT).show();
                         Log.e(TAG, "Capture error", e);
                     }
                 });
     }
 
-    private void saveWithLocation(File photo) {
-        if (ActivityCompat.checkSelfPermission(requireContext(),
-                Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
-            Toast.makeText(requireContext(), "Location permission needed", Toast.LENGTH_SHORT).show();
+    // A photo is never dropped for want of a fresh fix: without one, from a timeout or the sheet
+    // closing, the last known location is used. Only with no location at all is the file deleted.
+    private void saveWithLocation(Context appContext, File photo, PhotoInfo photoInfo,
+                                  CaptureProfile profile, long capturedAt,
+                                  @Nullable LocationFix fix, CaptureTrace trace) {
+        if (fix != null) {
+            deliver(appContext, photo, photoInfo, profile, capturedAt, fix, trace);
             return;
         }
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            discard(appContext, photo);
+            return;
+        }
+        LocationServices.getFusedLocationProviderClient(appContext).getLastLocation()
+                .addOnCompleteListener(task -> {
+                    Location location = task.isSuccessful() ? task.getResult() : null;
+                    if (location == null) {
+                        discard(appContext, photo);
+                        return;
+                    }
+                    deliver(appContext, photo, photoInfo, profile, capturedAt,
+                            new LocationFix(location.getLatitude(), location.getLongitude(),
+                                    location.hasAccuracy() ? location.getAccuracy() : 0,
+                                    location.getElapsedRealtimeNanos()),
+                            trace);
+                });
+    }
 
-        locationClient.getLastLocation().addOnSuccessListener(location -> {
-            if (location != null && photoListener != null) {
-                photoListener.onPhotoTaken(
-                        photo.getAbsolutePath(),
-                        location.getLatitude(),
-                        location.getLongitude(),
-                        System.currentTimeMillis()
-                );
-                dismiss();
-            } else {
-                Toast.makeText(requireContext(), "Could not get location", Toast.LENGTH_SHORT).show();
-            }
-        });
+    private void deliver(Context appContext, File photo, PhotoInfo photoInfo, CaptureProfile profile,
+                         long capturedAt, LocationFix fix, CaptureTrace trace) {
+        trace.mark("location");
+        // Small rotated thumbnail for the map and bottom sheet, made in the background
+        TreasureSnapApplication.getThumbnailLoader(appContext)
+                .generateThumbnail(photo.getAbsolutePath(), photoInfo);
+        if (isAdded() && photoListener != null) {
+            photoListener.onPhotoTaken(
+                    photo.getAbsolutePath(),
+                    fix.getLatitude(),
+                    fix.getLongitude(),
+                    capturedAt,
+                    photoInfo,
+                    profile
+            );
+            dismiss();
+        } else {
+            // Nobody is listening any more, e.g. the sheet was closed while the capture finished
+            TreasureSnapApplication.getTreasureRepository(appContext).add(new Treasure(
+                    photo.getAbsolutePath(), fix.getLatitude(), fix.getLongitude(), capturedAt,
+                    photoInfo, profile));
+            Toast.makeText(appContext, "Treasure saved!", Toast.LENGTH_SHORT).show();
+        }
+        trace.mark("deliver");
+        Log.i(TAG, "Capture (" + profile + ") " + trace.summary() + String.format(Locale.US, "; fix ±%.0f m, %d ms old",
+                fix.getAccuracyMeters(), fix.getAgeMillis(SystemClock.elapsedRealtimeNanos())));
+    }
+
+    // The photo can't be placed on the map, so it isn't kept
+    private static void discard(Context appContext, File photo) {
+        if (!photo.delete()) {
+            Log.w(TAG, "Could not delete " + photo);
+        }
+        Toast.makeText(appContext, "Could not get location", Toast.LENGTH_SHORT).show();
     }
 
+    // Scans the next analysis frame once. Those frames are YUV at the live scan size and go to
+    // ML Kit as they come out of the camera, so nothing is encoded, written or decoded into a
+    // bitmap. Only a device that can't stream analysis falls back to a JPEG still capture.
     private void scanQR() {
+        if (imageAnalysis != null) {
+            // While live scan is on it already looks at every frame it can
+            if (liveScanGate == null && !scanningNextFrame) {
+                scanningNextFrame = true;
+                AtomicBoolean taken = new AtomicBoolean();
+                imageAnalysis.setAnalyzer(analysisExecutor, frame -> scanNextFrame(frame, taken));
+            }
+            return;
+        }
         if (imageCapture == null) {
             Toast.makeText(requireContext(), "Camera not ready", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        File tempFile = new File(requireContext().getCacheDir(), "qr_scan.jpg");
-        ImageCapture.OutputFileOptions outputOptions =
-                new ImageCapture.OutputFileOptions.Builder(tempFile).build();
-
-        imageCapture.takePicture(outputOptions, ContextCompat.getMainExecutor(requireContext()),
-                new ImageCapture.OnImageSavedCallback() {
+        imageCapture.takePicture(ContextCompat.getMainExecutor(requireContext()),
+                new ImageCapture.OnImageCapturedCallback() {
                     @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults results) {
-                        processQRImage(tempFile.getAbsolutePath());
+                    public void onCaptureSuccess(@NonNull ImageProxy imageProxy) {
+                        processQRImage(imageProxy);
                     }
 
                     @Override
@@ -242,29 +501,62 @@ public class CameraFragment extends BottomSheetDialogFragment {
                 });
     }
 
-    // Processes a saved image with ML Kit to detect QR codes
-    private void processQRImage(String imagePath) {
-        try {
-            Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+    // Runs on the analysis thread: the first frame with an image is scanned, any others that
+    // arrive meanwhile are closed straight away
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    private void scanNextFrame(ImageProxy frame, AtomicBoolean taken) {
+        if (frame.getImage() == null || !taken.compareAndSet(false, true)) {
+            frame.close();
+            return;
+        }
+        processQRImage(frame);
+    }
 
-            barcodeScanner.process(image)
-                    .addOnSuccessListener(barcodes -> {
-                        if (barcodes.isEmpty()) {
-                            Toast.makeText(requireContext(), "No QR code found", Toast.LENGTH_SHORT).show();
-                        } else {
-                            String qrValue = barcodes.get(0).getRawValue();
-                            handleQRCode(qrValue);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Toast.makeText(requireContext(), "Failed to read QR code", Toast.LENGTH_SHORT).show();
-                        Log.e(TAG, "QR processing error", e);
-                    });
-        } catch (Exception e) {
+    // Stops handing analysis frames to a one-shot scan, unless live scan took them over meanwhile
+    private void finishNextFrameScan() {
+        if (!scanningNextFrame) {
+            return;
+        }
+        scanningNextFrame = false;
+        if (liveScanGate == null && imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+    }
+
+    // Runs ML Kit on an analysis or captured frame and closes it once the scanner is done with it
+    @OptIn(markerClass = ExperimentalGetImage.class)
+    private void processQRImage(ImageProxy imageProxy) {
+        Image mediaImage = imageProxy.getImage();
+        if (mediaImage == null) {
+            imageProxy.close();
             Toast.makeText(requireContext(), "Could not load image", Toast.LENGTH_SHORT).show();
-            Log.e(TAG, "Image decode error", e);
+            return;
         }
+        InputImage image = InputImage.fromMediaImage(mediaImage,
+                imageProxy.getImageInfo().getRotationDegrees());
+
+        barcodeScanner.process(image)
+                .addOnSuccessListener(barcodes -> {
+                    if (!isAdded()) {
+                        return;
+                    }
+                    if (barcodes.isEmpty()) {
+                        Toast.makeText(requireContext(), "No QR code found", Toast.LENGTH_SHORT).show();
+                    } else {
+                        String qrValue = barcodes.get(0).getRawValue();
+                        handleQRCode(qrValue);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    if (isAdded()) {
+                        Toast.makeText(requireContext(), "Failed to read QR code", Toast.LENGTH_SHORT).show();
+                    }
+                    Log.e(TAG, "QR processing error", e);
+                })
+                .addOnCompleteListener(task -> {
+                    imageProxy.close();
+                    finishNextFrameScan();
+                });
     }
 
     private void handleQRCode(String value) {
@@ -277,6 +569,12 @@ public class CameraFragment extends BottomSheetDialogFragment {
         }
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        locationProvider.stop();
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -288,5 +586,11 @@ public class CameraFragment extends BottomSheetDialogFragment {
                 Log.e(TAG, "Camera cleanup error", e);
             }
         }
+        if (liveScanGate != null) {
+            liveScanGate.stop();
+            liveScanGate = null;
+        }
+        imageAnalysis = null;
+        analysisExecutor.shutdown();
     }
 }
\ No newline at end of file
@@ -0,0 +1,37 @@
+package com.mbrats01.treasuresnap.ui.camera;
+
+import com.mbrats01.treasuresnap.data.CaptureProfile;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Running averages of shutter latency, encode time and file size per capture profile, to weigh
+// the profiles against each other in the field. Use on the main thread.
+final class CaptureStats {
+
+    private final Map<CaptureProfile, Totals> totals = new EnumMap<>(CaptureProfile.class);
+
+    // Records one capture and returns the profile's averages so far, for the log
+    String record(CaptureProfile profile, long shutterNanos, long encodeNanos, long fileBytes) {
+        Totals sum = totals.get(profile);
+        if (sum == null) {
+            sum = new Totals();
+            totals.put(profile, sum);
+        }
+        sum.count++;
+        sum.shutterNanos += shutterNanos;
+        sum.encodeNanos += encodeNanos;
+        sum.fileBytes += fileBytes;
+        return String.format(Locale.US, "%s: %d captures, shutter %d ms, encode %d ms, %d KB on average",
+                profile, sum.count, sum.shutterNanos / sum.count / 1_000_000,
+                sum.encodeNanos / sum.count / 1_000_000, sum.fileBytes / sum.count / 1024);
+    }
+
+    private static final class Totals {
+        int count;
+        long shutterNanos;
+        long encodeNanos;
+        long fileBytes;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mbrats01.treasuresnap.ui.camera;
+
+import java.util.Locale;
+
+// Times the stages of one capture, from the shutter to the treasure being handed over, e.g.
+// "shutter 85 ms, encode 327 ms, photo_info 9 ms, location 0 ms, deliver 3 ms, total 424 ms"
+final class CaptureTrace {
+
+    private final long startNanos = System.nanoTime();
+    private long lastNanos = startNanos;
+    private final StringBuilder stages = new StringBuilder();
+
+    // Ends the stage running since the previous mark, or since the shutter, and returns how
+    // long it took in nanoseconds
+    long mark(String stage) {
+        long now = System.nanoTime();
+        long nanos = now - lastNanos;
+        append(stage, nanos);
+        lastNanos = now;
+        return nanos;
+    }
+
+    String summary() {
+        StringBuilder summary = new StringBuilder(stages);
+        long total = lastNanos - startNanos;
+        summary.append(summary.length() == 0 ? "" : ", ")
+                .append(String.format(Locale.US, "total %d ms", total / 1_000_000));
+        return summary.toString();
+    }
+
+    private void append(String stage, long nanos) {
+        if (stages.length() > 0) {
+            stages.append(", ");
+        }
+        stages.append(String.format(Locale.US, "%s %d ms", stage, nanos / 1_000_000));
+    }
+}
@@ -0,0 +1,55 @@
+package com.mbrats01.treasuresnap.ui.camera;
+
+/**
+ * Decides which live analysis frames go to the barcode scanner: at most a set number per second,
+ * never while the scanner is still busy with the previous frame, and none once a code was found.
+ * Every other frame is dropped straight away, so the camera never waits on the scanner.
+ *
+ * Frames arrive on the analysis thread while the scanner reports back on the main thread.
+ */
+final class LiveScanGate {
+
+    private final long intervalNanos;
+    private boolean busy;
+    private boolean stopped;
+    private boolean scanned;
+    private long lastScanNanos;
+    private int dropped;
+
+    LiveScanGate(int framesPerSecond) {
+        if (framesPerSecond <= 0) {
+            throw new IllegalArgumentException("Frames per second must be positive: " + framesPerSecond);
+        }
+        intervalNanos = 1_000_000_000L / framesPerSecond;
+    }
+
+    // Whether the frame should be scanned; if so, release() must follow once the scanner is done
+    synchronized boolean tryAcquire(long nowNanos) {
+        if (stopped || busy || (scanned && nowNanos - lastScanNanos < intervalNanos)) {
+            dropped++;
+            return false;
+        }
+        busy = true;
+        scanned = true;
+        lastScanNanos = nowNanos;
+        return true;
+    }
+
+    synchronized void release() {
+        busy = false;
+    }
+
+    // Lets no more frames through; returns false if it was already stopped, so a hit that
+    // arrives after another one is ignored
+    synchronized boolean stop() {
+        if (stopped) {
+            return false;
+        }
+        stopped = true;
+        return true;
+    }
+
+    synchronized int getDroppedCount() {
+        return dropped;
+    }
+}
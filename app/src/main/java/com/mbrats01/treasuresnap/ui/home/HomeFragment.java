@@ -62,9 +62,10 @@ public class HomeFragment extends Fragment {
             CameraFragment cameraFragment = new CameraFragment();
 
             // Set listener to receive photo data
-            cameraFragment.setOnPhotoTakenListener((photoPath, latitude, longitude, timestamp) -> {
-                // Add treasure to MapFragment's static list
-                MapFragment.addTreasure(photoPath, latitude, longitude, String.valueOf(timestamp));
+            cameraFragment.setOnPhotoTakenListener((photoPath, latitude, longitude, timestamp, photoInfo, captureProfile) -> {
+                // Save treasure to the persistent treasure store
+                MapFragment.addTreasure(requireContext(), photoPath, latitude, longitude, timestamp, photoInfo,
+                        captureProfile);
 
                 Toast.makeText(requireContext(), "Treasure saved!", Toast.LENGTH_SHORT).show();
             });
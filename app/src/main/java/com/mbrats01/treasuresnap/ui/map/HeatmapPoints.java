@@ -0,0 +1,161 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Immutable snapshot of treasure positions in world coordinates (0..1 on both axes, Web
+ * Mercator) and capture times, bucketed on a fixed grid so heatmap and aggregate tiles can be
+ * rasterised on any thread while the treasure store keeps changing on the main thread.
+ *
+ * Each bucket keeps its points in its own array with room to grow. A snapshot only reads the
+ * first counts[b] entries, so {@link #plus} appends past them in place and a new snapshot costs
+ * the points added rather than all of them.
+ */
+final class HeatmapPoints {
+
+    // Receives the world coordinates of each point found by a query
+    interface Visitor {
+        void visit(float x, float y);
+    }
+
+    // 2^BUCKET_BITS buckets per axis, about one bucket per tile at zoom 8
+    private static final int BUCKET_BITS = 8;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int MIN_BUCKET_CAPACITY = 4;
+
+    static final HeatmapPoints EMPTY = new HeatmapPoints(
+            new float[BUCKETS * BUCKETS][], new long[BUCKETS * BUCKETS][], new int[BUCKETS * BUCKETS], 0);
+
+    // x, y pairs and capture times per bucket, null for a bucket that never had a point; shared
+    // with the snapshots this one was extended from or into
+    private final float[][] coordinates;
+    private final long[][] timestamps;
+    private final int[] counts;
+    private final int size;
+    // Set once a snapshot has appended past this one's counts; any other has to copy its buckets.
+    // Only touched by the thread calling plus().
+    private boolean extended;
+
+    private HeatmapPoints(float[][] coordinates, long[][] timestamps, int[] counts, int size) {
+        this.coordinates = coordinates;
+        this.timestamps = timestamps;
+        this.counts = counts;
+        this.size = size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // A new snapshot holding these points plus the first n of the given ones
+    HeatmapPoints plus(float[] x, float[] y, long[] timestamp, int n) {
+        HeatmapPoints next = new HeatmapPoints(coordinates.clone(), timestamps.clone(), counts.clone(), size + n);
+        // Nothing is shared with an empty snapshot, which keeps EMPTY safe to extend from any thread
+        boolean shared = extended && size > 0;
+        BitSet copied = shared ? new BitSet() : null;
+        if (size > 0) {
+            extended = true;
+        }
+        float[][] nextCoordinates = next.coordinates;
+        long[][] nextTimestamps = next.timestamps;
+        int[] nextCounts = next.counts;
+        for (int i = 0; i < n; i++) {
+            int b = bucket(x[i], y[i]);
+            int count = nextCounts[b];
+            float[] bucket = nextCoordinates[b];
+            long[] times = nextTimestamps[b];
+            if (bucket == null) {
+                bucket = new float[2 * MIN_BUCKET_CAPACITY];
+                times = new long[MIN_BUCKET_CAPACITY];
+                nextCoordinates[b] = bucket;
+                nextTimestamps[b] = times;
+            } else if (count == times.length || (shared && !copied.get(b))) {
+                int capacity = Math.max(MIN_BUCKET_CAPACITY, count * 2);
+                bucket = Arrays.copyOf(bucket, 2 * capacity);
+                times = Arrays.copyOf(times, capacity);
+                nextCoordinates[b] = bucket;
+                nextTimestamps[b] = times;
+            }
+            if (shared) {
+                copied.set(b);
+            }
+            bucket[2 * count] = x[i];
+            bucket[2 * count + 1] = y[i];
+            times[count] = timestamp[i];
+            nextCounts[b] = count + 1;
+        }
+        return next;
+    }
+
+    // Visits every point with minX <= x < maxX and minY <= y < maxY
+    void query(double minX, double minY, double maxX, double maxY, Visitor visitor) {
+        query(minX, minY, maxX, maxY, Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+    }
+
+    // Like query(), but only points captured between from and to (inclusive)
+    void query(double minX, double minY, double maxX, double maxY, long from, long to, Visitor visitor) {
+        int fromX = clampBucket(minX);
+        int toX = clampBucket(maxX);
+        int fromY = clampBucket(minY);
+        int toY = clampBucket(maxY);
+        for (int by = fromY; by <= toY; by++) {
+            for (int bx = fromX; bx <= toX; bx++) {
+                int b = by * BUCKETS + bx;
+                float[] bucket = coordinates[b];
+                long[] times = timestamps[b];
+                for (int i = 0; i < counts[b]; i++) {
+                    float x = bucket[2 * i];
+                    float y = bucket[2 * i + 1];
+                    if (x >= minX && x < maxX && y >= minY && y < maxY && times[i] >= from && times[i] <= to) {
+                        visitor.visit(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    // Number of points with minX <= x < maxX and minY <= y < maxY; whole buckets are not scanned
+    int count(double minX, double minY, double maxX, double maxY) {
+        return count(minX, minY, maxX, maxY, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    // Like count(), but only points captured between from and to (inclusive). Whole buckets are
+    // only skipped for an open range.
+    int count(double minX, double minY, double maxX, double maxY, long from, long to) {
+        boolean allTimes = from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+        int fromX = clampBucket(minX);
+        int toX = clampBucket(maxX);
+        int fromY = clampBucket(minY);
+        int toY = clampBucket(maxY);
+        int count = 0;
+        for (int by = fromY; by <= toY; by++) {
+            boolean insideY = allTimes && by >= minY * BUCKETS && by + 1 <= maxY * BUCKETS;
+            for (int bx = fromX; bx <= toX; bx++) {
+                int b = by * BUCKETS + bx;
+                if (insideY && bx >= minX * BUCKETS && bx + 1 <= maxX * BUCKETS) {
+                    count += counts[b];
+                    continue;
+                }
+                float[] bucket = coordinates[b];
+                long[] times = timestamps[b];
+                for (int i = 0; i < counts[b]; i++) {
+                    float x = bucket[2 * i];
+                    float y = bucket[2 * i + 1];
+                    if (x >= minX && x < maxX && y >= minY && y < maxY && times[i] >= from && times[i] <= to) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int bucket(float x, float y) {
+        return clampBucket(y) * BUCKETS + clampBucket(x);
+    }
+
+    private static int clampBucket(double coordinate) {
+        return Math.max(0, Math.min(BUCKETS - 1, (int) (coordinate * BUCKETS)));
+    }
+}
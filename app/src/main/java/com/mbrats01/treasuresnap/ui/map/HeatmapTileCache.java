@@ -0,0 +1,158 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Rendered heatmap tiles as PNG bytes, keyed by zoom/x/y, in a byte-bounded LRU memory cache
+ * backed by a capped directory on disk. An empty array stands for a tile with no treasures.
+ *
+ * The disk cache also remembers the highest treasure id it reflects, so treasures added while
+ * the heatmap was not open can still invalidate the tiles they touch.
+ */
+class HeatmapTileCache {
+
+    private static final String TAG = "HeatmapTileCache";
+    private static final String STAMP_FILE = "stamp";
+    private static final int MEMORY_BYTES = 8 * 1024 * 1024;
+    // Tiles kept on disk; the least recently used ones are trimmed when the cache opens
+    private static final int MAX_DISK_TILES = 4000;
+
+    private final File directory;
+    private final LruCache<Long, byte[]> memory = new LruCache<Long, byte[]>(MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(Long key, byte[] png) {
+            // Count empty tiles too so the cache can't fill up with them
+            return png.length + 64;
+        }
+    };
+
+    HeatmapTileCache(File directory) {
+        this.directory = directory;
+    }
+
+    @WorkerThread
+    @Nullable
+    byte[] get(int zoom, int x, int y) {
+        long key = key(zoom, x, y);
+        byte[] png = memory.get(key);
+        if (png != null) {
+            return png;
+        }
+        File file = fileFor(zoom, x, y);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            png = new byte[(int) in.length()];
+            in.readFully(png);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + file, e);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(key, png);
+        return png;
+    }
+
+    @WorkerThread
+    void put(int zoom, int x, int y, byte[] png) {
+        memory.put(key(zoom, x, y), png);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        // Write to a temporary file first so a crash never leaves a truncated tile
+        File file = fileFor(zoom, x, y);
+        File temp = new File(directory, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(png);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write " + file, e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    @WorkerThread
+    void invalidate(int zoom, int x, int y) {
+        memory.remove(key(zoom, x, y));
+        fileFor(zoom, x, y).delete();
+    }
+
+    @WorkerThread
+    void clear() {
+        memory.evictAll();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Highest treasure id the cached tiles include, or -1 if unknown
+    @WorkerThread
+    long readStamp() {
+        File file = new File(directory, STAMP_FILE);
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return Long.parseLong(new String(bytes, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @WorkerThread
+    void writeStamp(long maxId) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, STAMP_FILE))) {
+            out.write(Long.toString(maxId).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write heatmap stamp", e);
+        }
+    }
+
+    // Deletes the least recently used tiles beyond the disk cap
+    @WorkerThread
+    void trim() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null || files.length <= MAX_DISK_TILES) {
+            return;
+        }
+        long[] lastUsed = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastUsed[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastUsed[i]));
+        for (int i = 0; i < files.length - MAX_DISK_TILES; i++) {
+            files[order[i]].delete();
+        }
+    }
+
+    private File fileFor(int zoom, int x, int y) {
+        return new File(directory, zoom + "_" + x + "_" + y + ".png");
+    }
+
+    private static long key(int zoom, int x, int y) {
+        return ((long) zoom << 56) | ((long) x << 28) | y;
+    }
+}
@@ -0,0 +1,56 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.content.res.Resources;
+
+import com.mbrats01.treasuresnap.R;
+
+/**
+ * Picks how treasures are drawn for a camera zoom: grid counts from a single overlay when far
+ * out, clusters in between, and one marker per treasure when close in.
+ */
+final class LevelOfDetail {
+
+    enum Mode {
+        AGGREGATES,
+        CLUSTERS,
+        MARKERS
+    }
+
+    // How far past a threshold the zoom must go to switch back, so pinching at a threshold
+    // doesn't flip between modes
+    static final float HYSTERESIS = 0.25f;
+
+    private final float clustersFromZoom;
+    private final float markersFromZoom;
+
+    LevelOfDetail(float clustersFromZoom, float markersFromZoom) {
+        if (clustersFromZoom > markersFromZoom) {
+            throw new IllegalArgumentException("Clusters must start at or below the marker zoom");
+        }
+        this.clustersFromZoom = clustersFromZoom;
+        this.markersFromZoom = markersFromZoom;
+    }
+
+    // Thresholds from res/values/integers.xml, so they can differ per screen size
+    static LevelOfDetail fromResources(Resources resources) {
+        return new LevelOfDetail(resources.getInteger(R.integer.map_clusters_from_zoom),
+                resources.getInteger(R.integer.map_markers_from_zoom));
+    }
+
+    Mode modeFor(float zoom) {
+        if (zoom < clustersFromZoom) {
+            return Mode.AGGREGATES;
+        }
+        return zoom < markersFromZoom ? Mode.CLUSTERS : Mode.MARKERS;
+    }
+
+    // Like modeFor(), but stays in the current mode until the zoom is clearly past a threshold
+    Mode modeFor(float zoom, Mode current) {
+        Mode mode = modeFor(zoom);
+        if (mode == current || current == null) {
+            return mode;
+        }
+        boolean nearCurrent = modeFor(zoom - HYSTERESIS) == current || modeFor(zoom + HYSTERESIS) == current;
+        return nearCurrent ? current : mode;
+    }
+}
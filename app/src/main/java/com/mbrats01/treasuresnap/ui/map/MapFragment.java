@@ -2,27 +2,33 @@ package com.mbrats01.treasuresnap.ui.map;
 
 import android.Manifest;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import androidx.exifinterface.media.ExifInterface;
+import androidx.core.view.MenuProvider;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.Lifecycle;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
 import com.google.android.gms.location.LocationServices;
@@ -30,34 +36,87 @@ import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
-import com.google.android.gms.maps.model.BitmapDescriptor;
-import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
-import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
-import com.google.maps.android.clustering.Cluster;
 import com.google.maps.android.clustering.ClusterManager;
-import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
-import com.google.maps.android.clustering.view.DefaultClusterRenderer;
 import com.mbrats01.treasuresnap.R;
+import com.mbrats01.treasuresnap.TreasureSnapApplication;
+import com.mbrats01.treasuresnap.data.CaptureProfile;
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
 import com.mbrats01.treasuresnap.databinding.FragmentMapBinding;
-
+import com.mbrats01.treasuresnap.image.ThumbnailLoader;
+import com.mbrats01.treasuresnap.location.ProximityMonitor;
+import com.mbrats01.treasuresnap.transfer.TreasureExporter;
+import com.mbrats01.treasuresnap.transfer.TreasureFormat;
+import com.mbrats01.treasuresnap.transfer.TreasureImporter;
+
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
+import java.util.concurrent.Executor;
 
 public class MapFragment extends Fragment implements OnMapReadyCallback {
 
+    private static final String TAG = "MapFragment";
+    private static final String PREFS = "map";
+    private static final String PREF_PHOTO_MARKERS = "photo_markers";
+    private static final String PREF_HEATMAP = "heatmap";
+    private static final int MARKER_THUMBNAIL_DP = 40;
+    // Slider positions between the first and the last treasure
+    private static final float TIMELINE_STEPS = 1000f;
+
     private FragmentMapBinding binding;
     private FusedLocationProviderClient fusedLocationClient;
     private GoogleMap googleMap;
     private ClusterManager<TreasureItem> clusterManager;
-
-    // Static list to persist treasures across fragment lifecycle
-    private static ArrayList<Treasure> treasures = new ArrayList<>();
+    private TreasureClusterSync clusterSync;
+    private TreasureClusterRenderer clusterRenderer;
+    private MarkerThumbnailAtlas thumbnailAtlas;
+    // Set while a timeline change waits for the next frame, so scrubbing syncs once per frame
+    private boolean timelineUpdatePending;
+    // Same for store changes, so several batches landing in one frame cost one cluster pass
+    private boolean treasuresUpdatePending;
+    // Range picked on the timeline, open at both ends while it is off
+    private long timeFrom = Long.MIN_VALUE;
+    private long timeTo = Long.MAX_VALUE;
+
+    // Persistent treasure store shared with the rest of the app
+    private TreasureRepository treasures;
+    private final TreasureRepository.Listener treasuresListener = this::onTreasuresChanged;
+    // Created the first time the heatmap is shown, then kept in sync with the store
+    private TreasureHeatmapTileProvider heatmapProvider;
+    private TileOverlay heatmapOverlay;
+    // Zoom-dependent choice between grid counts, clusters and single markers
+    private LevelOfDetail levelOfDetail;
+    private LevelOfDetail.Mode detailMode;
+    // Created the first time the map is zoomed out far enough, like the heatmap
+    private TreasureAggregateTileProvider aggregateProvider;
+    private TileOverlay aggregateOverlay;
+
+    // Treasure files are picked and created through the system file picker
+    private final ActivityResultLauncher<String[]> importLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), this::importTreasures);
+    private final ActivityResultLauncher<String> exportGeoJsonLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(TreasureFormat.GEOJSON.getMimeType()),
+            uri -> exportTreasures(uri, TreasureFormat.GEOJSON));
+    private final ActivityResultLauncher<String> exportGpxLauncher = registerForActivityResult(
+            new ActivityResultContracts.CreateDocument(TreasureFormat.GPX.getMimeType()),
+            uri -> exportTreasures(uri, TreasureFormat.GPX));
+    // Alerts are turned on whatever the answer; without the permission they just stay silent
+    private final ActivityResultLauncher<String> notificationPermissionLauncher =
+            registerForActivityResult(new ActivityResultContracts.RequestPermission(),
+                    granted -> enableProximityAlerts());
 
     @Nullable
     @Override
@@ -65,6 +124,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                              ViewGroup container, Bundle savedInstanceState) {
         binding = FragmentMapBinding.inflate(inflater, container, false);
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(requireActivity());
+        treasures = TreasureSnapApplication.getTreasureRepository(requireContext());
         return binding.getRoot();
     }
 
@@ -77,6 +137,59 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         if (mapFragment != null) {
             mapFragment.getMapAsync(this);
         }
+
+        // Refresh the map while the store is still loading or when a treasure is added
+        treasures.addListener(treasuresListener);
+
+        requireActivity().addMenuProvider(new MenuProvider() {
+            @Override
+            public void onCreateMenu(@NonNull Menu menu, @NonNull MenuInflater menuInflater) {
+                menuInflater.inflate(R.menu.map, menu);
+            }
+
+            @Override
+            public void onPrepareMenu(@NonNull Menu menu) {
+                menu.findItem(R.id.action_proximity_alerts).setChecked(
+                        TreasureSnapApplication.getProximityMonitor(requireContext()).isEnabled());
+            }
+
+            @Override
+            public boolean onMenuItemSelected(@NonNull MenuItem item) {
+                int id = item.getItemId();
+                if (id == R.id.action_import_treasures) {
+                    // Document providers rarely know the GeoJSON and GPX types, so offer everything
+                    importLauncher.launch(new String[]{"*/*"});
+                } else if (id == R.id.action_export_geojson) {
+                    exportGeoJsonLauncher.launch("treasures." + TreasureFormat.GEOJSON.getExtension());
+                } else if (id == R.id.action_export_gpx) {
+                    exportGpxLauncher.launch("treasures." + TreasureFormat.GPX.getExtension());
+                } else if (id == R.id.action_proximity_alerts) {
+                    toggleProximityAlerts();
+                } else {
+                    return false;
+                }
+                return true;
+            }
+        }, getViewLifecycleOwner(), Lifecycle.State.RESUMED);
+    }
+
+    private void toggleProximityAlerts() {
+        ProximityMonitor monitor = TreasureSnapApplication.getProximityMonitor(requireContext());
+        if (monitor.isEnabled()) {
+            monitor.setEnabled(false);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            notificationPermissionLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+        } else {
+            enableProximityAlerts();
+        }
+    }
+
+    private void enableProximityAlerts() {
+        ProximityMonitor monitor = TreasureSnapApplication.getProximityMonitor(requireContext());
+        monitor.setEnabled(true);
+        monitor.start();
     }
 
     @Override
@@ -92,47 +205,205 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         // Initialize ClusterManager
         clusterManager = new ClusterManager<>(requireContext(), googleMap);
 
-        // Use distance-based algorithm for better geographic clustering
-        clusterManager.setAlgorithm(new NonHierarchicalDistanceBasedAlgorithm<>());
+        // Use precomputed per-zoom clusters so camera moves don't re-cluster from scratch
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        TreasureClusterAlgorithm clusterAlgorithm = new TreasureClusterAlgorithm(
+                (int) (metrics.widthPixels / metrics.density),
+                (int) (metrics.heightPixels / metrics.density));
+        clusterManager.setAlgorithm(clusterAlgorithm);
 
         // Apply custom renderer for visual customization
-        clusterManager.setRenderer(new TreasureClusterRenderer(requireContext(), googleMap, clusterManager));
+        int thumbnailSize = Math.round(MARKER_THUMBNAIL_DP * metrics.density);
+        thumbnailAtlas = new MarkerThumbnailAtlas(
+                TreasureSnapApplication.getThumbnailLoader(requireContext()), thumbnailSize);
+        clusterRenderer = new TreasureClusterRenderer(requireContext(), googleMap, clusterManager, thumbnailAtlas);
+        clusterManager.setRenderer(clusterRenderer);
+
+        // Optional photo thumbnails instead of pins, remembered between visits
+        SharedPreferences prefs = requireContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        boolean photoMarkers = prefs.getBoolean(PREF_PHOTO_MARKERS, false);
+        clusterRenderer.setPhotoMarkers(photoMarkers);
+        binding.chipPhotoMarkers.setChecked(photoMarkers);
+        binding.chipPhotoMarkers.setOnCheckedChangeListener((chip, checked) -> {
+            prefs.edit().putBoolean(PREF_PHOTO_MARKERS, checked).apply();
+            clusterRenderer.setPhotoMarkers(checked);
+            clusterManager.cluster();
+        });
+
+        // Rebuilds the cluster index in the background when the treasures change
+        clusterSync = new TreasureClusterSync(clusterManager, clusterAlgorithm, treasures);
+
+        setUpTimeline();
+        setUpNearby();
+
+        // Heatmap instead of markers for very dense areas, remembered between visits
+        binding.chipHeatmap.setChecked(prefs.getBoolean(PREF_HEATMAP, false));
+        binding.chipHeatmap.setOnCheckedChangeListener((chip, checked) -> {
+            prefs.edit().putBoolean(PREF_HEATMAP, checked).apply();
+            applyDisplayMode();
+            refreshMarkers();
+        });
 
-        // Set listeners
-        googleMap.setOnCameraIdleListener(clusterManager);
+        levelOfDetail = LevelOfDetail.fromResources(getResources());
+        updateLevelOfDetail();
+
+        // Crossing a level-of-detail threshold only swaps what is shown; the clustering waits
+        // until the camera settles and runs in the background
+        googleMap.setOnCameraMoveListener(this::updateLevelOfDetail);
+        // Update the clustered treasures when the camera leaves the loaded area
+        googleMap.setOnCameraIdleListener(() -> {
+            updateLevelOfDetail();
+            refreshMarkers();
+        });
         googleMap.setOnMarkerClickListener(clusterManager);
 
         // Handle cluster clicks - show all treasures in cluster
         clusterManager.setOnClusterClickListener(cluster -> {
-            List<Treasure> treasuresInCluster = new ArrayList<>();
-            for (TreasureItem item : cluster.getItems()) {
-                treasuresInCluster.add(new Treasure(
-                        item.getPhotoPath(),
-                        item.getPosition().latitude,
-                        item.getPosition().longitude,
-                        item.getTimestamp()
-                ));
-            }
-            showMultipleTreasures(treasuresInCluster);
+            Collection<TreasureItem> items = cluster.getItems();
+            showMultipleTreasures(items instanceof List ? (List<TreasureItem>) items : new ArrayList<>(items));
             return true;
         });
 
         // Handle individual marker clicks
         clusterManager.setOnClusterItemClickListener(item -> {
-            List<Treasure> treasureList = new ArrayList<>();
-            treasureList.add(new Treasure(
-                    item.getPhotoPath(),
-                    item.getPosition().latitude,
-                    item.getPosition().longitude,
-                    item.getTimestamp()
-            ));
-            showMultipleTreasures(treasureList);
+            showMultipleTreasures(Collections.singletonList(item));
             return true;
         });
 
         addTreasuresToCluster();
     }
 
+    // Limits the map to treasures found in the time range picked on the slider
+    private void setUpTimeline() {
+        binding.timelineSlider.setLabelFormatter(value ->
+                TimestampFormatter.getDefault().format(sliderToTimestamp(value)));
+        binding.timelineSlider.addOnChangeListener((slider, value, fromUser) -> {
+            if (fromUser) {
+                scheduleTimelineUpdate();
+            }
+        });
+        binding.chipTimeline.setOnCheckedChangeListener((chip, checked) -> {
+            binding.timelineSlider.setVisibility(checked ? View.VISIBLE : View.GONE);
+            if (checked) {
+                applyTimeline();
+            } else {
+                setTimeRange(Long.MIN_VALUE, Long.MAX_VALUE);
+            }
+        });
+    }
+
+    // Lists the treasures closest to the player, refreshed whenever the panel is opened
+    private void setUpNearby() {
+        binding.nearbyList.setLayoutManager(new LinearLayoutManager(requireContext()));
+        binding.chipNearby.setOnCheckedChangeListener((chip, checked) -> {
+            binding.nearbyPanel.setVisibility(checked ? View.VISIBLE : View.GONE);
+            if (checked) {
+                updateNearby();
+            } else {
+                binding.nearbyList.setAdapter(null);
+            }
+        });
+    }
+
+    private void updateNearby() {
+        if (binding == null || !binding.chipNearby.isChecked()) {
+            return;
+        }
+        if (ActivityCompat.checkSelfPermission(requireContext(), Manifest.permission.ACCESS_FINE_LOCATION)
+                != PackageManager.PERMISSION_GRANTED) {
+            showNearbyMessage(R.string.location_not_granted);
+            return;
+        }
+        fusedLocationClient.getLastLocation().addOnSuccessListener(location -> {
+            if (binding == null) {
+                return;
+            }
+            if (location == null) {
+                showNearbyMessage(R.string.location_unavailable);
+            } else {
+                showNearby(location.getLatitude(), location.getLongitude());
+            }
+        });
+    }
+
+    private void showNearby(double latitude, double longitude) {
+        int k = getResources().getInteger(R.integer.map_nearby_count);
+        TreasureTable table = treasures.getTable();
+        List<TreasureItem> items = new ArrayList<>(k);
+        double[] distances = new double[k];
+        treasures.nearest(latitude, longitude, k, (row, distanceMeters) -> {
+            distances[items.size()] = distanceMeters;
+            items.add(new TreasureItem(table, table.getId(row)));
+        });
+        if (items.isEmpty()) {
+            showNearbyMessage(R.string.nearby_none);
+            return;
+        }
+        binding.nearbyMessage.setVisibility(View.GONE);
+        binding.nearbyList.setVisibility(View.VISIBLE);
+        binding.nearbyList.setAdapter(new NearbyTreasureAdapter(items, distances,
+                TreasureSnapApplication.getThumbnailLoader(requireContext()), this::focusTreasure));
+    }
+
+    private void showNearbyMessage(int message) {
+        binding.nearbyMessage.setText(message);
+        binding.nearbyMessage.setVisibility(View.VISIBLE);
+        binding.nearbyList.setVisibility(View.GONE);
+        binding.nearbyList.setAdapter(null);
+    }
+
+    // Centres the map on a treasure from the panel and opens its details
+    private void focusTreasure(TreasureItem item) {
+        if (googleMap != null) {
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(item.getPosition(), 17f));
+        }
+        showMultipleTreasures(Collections.singletonList(item));
+    }
+
+    private void scheduleTimelineUpdate() {
+        if (timelineUpdatePending) {
+            return;
+        }
+        timelineUpdatePending = true;
+        binding.timelineSlider.postOnAnimation(() -> {
+            timelineUpdatePending = false;
+            if (binding != null && binding.chipTimeline.isChecked()) {
+                applyTimeline();
+            }
+        });
+    }
+
+    private void applyTimeline() {
+        List<Float> values = binding.timelineSlider.getValues();
+        // The ends stay open so treasures found after the slider was set still show up
+        long from = values.get(0) <= 0 ? Long.MIN_VALUE : sliderToTimestamp(values.get(0));
+        long to = values.get(1) >= TIMELINE_STEPS ? Long.MAX_VALUE : sliderToTimestamp(values.get(1));
+        setTimeRange(from, to);
+    }
+
+    // Limits the clusters, the grid counts and the heatmap alike. The range is a query against
+    // the cluster index and the tile snapshots, nothing is rebuilt.
+    private void setTimeRange(long from, long to) {
+        timeFrom = from;
+        timeTo = to;
+        clusterSync.setTimeRange(from, to);
+        if (heatmapProvider != null) {
+            heatmapProvider.setTimeRange(from, to);
+        }
+        if (aggregateProvider != null) {
+            aggregateProvider.setTimeRange(from, to);
+        }
+    }
+
+    private long sliderToTimestamp(float value) {
+        if (treasures.getTimeIndex().size() == 0) {
+            return 0;
+        }
+        long first = treasures.getTimeIndex().getMinTimestamp();
+        long last = treasures.getTimeIndex().getMaxTimestamp();
+        return first + (long) ((last - first) * (double) (value / TIMELINE_STEPS));
+    }
+
     private void moveToCurrentLocation() {
         if (ActivityCompat.checkSelfPermission(requireContext(), Manifest.permission.ACCESS_FINE_LOCATION)
                 != PackageManager.PERMISSION_GRANTED) {
@@ -147,27 +418,118 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         });
     }
 
-    private void addTreasuresToCluster() {
-        if (clusterManager == null) return;
+    private void onTreasuresChanged() {
+        if (treasuresUpdatePending || binding == null) {
+            return;
+        }
+        treasuresUpdatePending = true;
+        binding.getRoot().postOnAnimation(() -> {
+            treasuresUpdatePending = false;
+            if (binding != null) {
+                syncTreasures();
+            }
+        });
+    }
+
+    private void syncTreasures() {
+        addTreasuresToCluster();
+        updateNearby();
+        if (heatmapProvider != null) {
+            heatmapProvider.sync();
+        }
+        if (aggregateProvider != null) {
+            aggregateProvider.sync();
+        }
+    }
+
+    // Markers are only drawn when neither the heatmap nor the grid counts are showing
+    private boolean showsMarkers() {
+        return !binding.chipHeatmap.isChecked() && detailMode != LevelOfDetail.Mode.AGGREGATES;
+    }
 
-        // Clear existing items
-        clusterManager.clearItems();
+    private void updateLevelOfDetail() {
+        LevelOfDetail.Mode mode = levelOfDetail.modeFor(googleMap.getCameraPosition().zoom, detailMode);
+        if (mode == detailMode) {
+            return;
+        }
+        LevelOfDetail.Mode previous = detailMode;
+        detailMode = mode;
+        clusterRenderer.setIndividualMarkers(mode == LevelOfDetail.Mode.MARKERS);
+        if (previous == null || previous == LevelOfDetail.Mode.AGGREGATES
+                || mode == LevelOfDetail.Mode.AGGREGATES) {
+            applyDisplayMode();
+        } else if (showsMarkers()) {
+            // Between clusters and single markers; the renderer redraws in the background
+            clusterManager.cluster();
+        }
+    }
 
-        // Add all treasures as cluster items
-        for (Treasure treasure : treasures) {
-            clusterManager.addItem(new TreasureItem(treasure));
+    // Shows the heatmap, the grid counts or the markers; none of them reloads any data
+    private void applyDisplayMode() {
+        boolean heatmap = binding.chipHeatmap.isChecked();
+        boolean aggregates = !heatmap && detailMode == LevelOfDetail.Mode.AGGREGATES;
+        if (heatmap && heatmapOverlay == null) {
+            HeatmapTileCache cache = new HeatmapTileCache(new File(requireContext().getCacheDir(), "heatmap"));
+            heatmapProvider = new TreasureHeatmapTileProvider(treasures, cache, () -> {
+                if (heatmapOverlay != null) {
+                    heatmapOverlay.clearTileCache();
+                }
+            });
+            heatmapProvider.setTimeRange(timeFrom, timeTo);
+            heatmapOverlay = googleMap.addTileOverlay(new TileOverlayOptions()
+                    .tileProvider(heatmapProvider)
+                    .fadeIn(false));
+            heatmapProvider.sync();
+        }
+        if (aggregates && aggregateOverlay == null) {
+            aggregateProvider = new TreasureAggregateTileProvider(treasures, () -> {
+                if (aggregateOverlay != null) {
+                    aggregateOverlay.clearTileCache();
+                }
+            });
+            aggregateProvider.setTimeRange(timeFrom, timeTo);
+            aggregateOverlay = googleMap.addTileOverlay(new TileOverlayOptions()
+                    .tileProvider(aggregateProvider));
+            aggregateProvider.sync();
+        }
+        if (heatmapOverlay != null) {
+            heatmapOverlay.setVisible(heatmap);
+        }
+        if (aggregateOverlay != null) {
+            aggregateOverlay.setVisible(aggregates);
         }
 
-        // Trigger clustering algorithm
-        clusterManager.cluster();
+        if (showsMarkers()) {
+            clusterManager.getMarkerCollection().showAll();
+            clusterManager.getClusterMarkerCollection().showAll();
+        } else {
+            clusterManager.getMarkerCollection().hideAll();
+            clusterManager.getClusterMarkerCollection().hideAll();
+        }
     }
 
-    private void showMultipleTreasures(List<Treasure> treasureList) {
+    private void refreshMarkers() {
+        if (!showsMarkers()) {
+            return;
+        }
+        addTreasuresToCluster();
+        clusterManager.onCameraIdle();
+    }
+
+    private void addTreasuresToCluster() {
+        if (clusterSync == null || !showsMarkers()) return;
+
+        // Nothing happens unless treasures were added or removed since the last pass; camera
+        // moves are handled by the clustering itself
+        clusterSync.update();
+    }
+
+    private void showMultipleTreasures(List<TreasureItem> treasureList) {
         BottomSheetDialog bottomSheet = new BottomSheetDialog(requireContext());
         View sheetView = getLayoutInflater().inflate(R.layout.treasure_details, null);
 
         TextView countText = sheetView.findViewById(R.id.treasure_count);
-        LinearLayout container = sheetView.findViewById(R.id.treasures_container);
+        RecyclerView list = sheetView.findViewById(R.id.treasures_list);
 
         // Check if we find only one treasure
         if (treasureList.size() == 1) {
@@ -177,175 +539,112 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
             countText.setTextColor(0xFF9C27B0); // Purple color for clusters
         }
 
-        // Display each treasure
-        for (int i = 0; i < treasureList.size(); i++) {
-            Treasure treasure = treasureList.get(i);
-            View itemView = getLayoutInflater().inflate(R.layout.treasure_item, container, false);
-
-            ImageView imageView = itemView.findViewById(R.id.treasure_image);
-            TextView locationText = itemView.findViewById(R.id.treasure_location);
-            TextView timestampText = itemView.findViewById(R.id.treasure_timestamp);
-
-            // Load and display image with correct orientation
-            Bitmap bitmap = getCorrectlyOrientedBitmap(treasure.photoPath);
-            if (bitmap != null) {
-                imageView.setImageBitmap(bitmap);
-            }
-
-            // Display location coordinates
-            locationText.setText(String.format(Locale.getDefault(),
-                    "📍 %.6f, %.6f", treasure.latitude, treasure.longitude));
+        // Rows are recycled and paged, so only the visible treasures are bound and decoded
+        ThumbnailLoader thumbnailLoader = TreasureSnapApplication.getThumbnailLoader(requireContext());
+        list.setLayoutManager(new LinearLayoutManager(requireContext()));
+        list.setAdapter(new TreasureListAdapter(treasureList, thumbnailLoader));
 
-            // Display capture timestamp
-            SimpleDateFormat sdf = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault());
-            timestampText.setText("📸 " + sdf.format(new Date(treasure.timestamp)));
-
-            container.addView(itemView);
-        }
+        // Stop decoding photos nobody will see
+        bottomSheet.setOnDismissListener(dialog -> list.setAdapter(null));
 
         bottomSheet.setContentView(sheetView);
         bottomSheet.show();
     }
 
-    // Change the orientation of image
-    private Bitmap getCorrectlyOrientedBitmap(String photoPath) {
-        Bitmap bitmap = BitmapFactory.decodeFile(photoPath);
-        if (bitmap == null) {
-            return null;
+    // Streams the file into the store on the transfer thread; the map refreshes once per batch
+    private void importTreasures(@Nullable Uri uri) {
+        if (uri == null) {
+            return;
         }
-
-        try {
-            ExifInterface exif = new ExifInterface(photoPath);
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
-
-            Matrix matrix = new Matrix();
-            switch (orientation) {
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    matrix.postRotate(90);
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    matrix.postRotate(180);
-                    break;
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    matrix.postRotate(270);
-                    break;
-                default:
-                    return bitmap;
+        Context context = requireContext().getApplicationContext();
+        Executor mainExecutor = ContextCompat.getMainExecutor(context);
+        TreasureImporter importer = new TreasureImporter(treasures, mainExecutor);
+        TreasureSnapApplication.getTransferExecutor(context).execute(() -> {
+            String message;
+            try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+                if (in == null) {
+                    throw new FileNotFoundException(uri.toString());
+                }
+                int imported = importer.importFrom(in);
+                int skipped = importer.getSkippedCount();
+                message = skipped == 0
+                        ? context.getString(R.string.treasures_imported, imported)
+                        : context.getString(R.string.treasures_imported_skipped, imported, skipped);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not import " + uri, e);
+                message = context.getString(R.string.import_failed);
             }
+            String result = message;
+            mainExecutor.execute(() -> Toast.makeText(context, result, Toast.LENGTH_LONG).show());
+        });
+    }
 
-            bitmap = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void exportTreasures(@Nullable Uri uri, TreasureFormat format) {
+        if (uri == null) {
+            return;
         }
-        return bitmap;
+        Context context = requireContext().getApplicationContext();
+        Executor mainExecutor = ContextCompat.getMainExecutor(context);
+        TreasureExporter exporter = new TreasureExporter(treasures, mainExecutor);
+        TreasureSnapApplication.getTransferExecutor(context).execute(() -> {
+            String message;
+            try (OutputStream out = context.getContentResolver().openOutputStream(uri, "wt")) {
+                if (out == null) {
+                    throw new FileNotFoundException(uri.toString());
+                }
+                message = context.getString(R.string.treasures_exported, exporter.exportTo(out, format));
+            } catch (IOException e) {
+                Log.e(TAG, "Could not export " + uri, e);
+                message = context.getString(R.string.export_failed);
+            }
+            String result = message;
+            mainExecutor.execute(() -> Toast.makeText(context, result, Toast.LENGTH_LONG).show());
+        });
     }
 
-    // Add the new treasure locally in list
-    public static void addTreasure(String photoPath, double latitude, double longitude, String timestamp) {
-        Treasure treasure = new Treasure(photoPath, latitude, longitude, timestamp);
-        treasures.add(treasure);
+    // Add the new treasure to the persistent store
+    public static void addTreasure(Context context, String photoPath, double latitude, double longitude,
+                                   long timestamp, PhotoInfo photoInfo, CaptureProfile captureProfile) {
+        TreasureSnapApplication.getTreasureRepository(context)
+                .add(new Treasure(photoPath, latitude, longitude, timestamp, photoInfo, captureProfile));
     }
 
     @Override
     public void onResume() {
         super.onResume();
         // Refresh map when returning to this fragment
-        if (clusterManager != null) {
-            addTreasuresToCluster();
-        }
+        addTreasuresToCluster();
+        // The player has probably moved since
+        updateNearby();
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        binding = null;
-    }
-
-    // Treasure object
-    public static class Treasure {
-        String photoPath;
-        double latitude;
-        double longitude;
-        long timestamp;
-
-        Treasure(String path, double lat, double lon, String time) {
-            photoPath = path;
-            latitude = lat;
-            longitude = lon;
-            timestamp = Long.parseLong(time);
-        }
-
-        Treasure(String path, double lat, double lon, long time) {
-            photoPath = path;
-            latitude = lat;
-            longitude = lon;
-            timestamp = time;
-        }
-    }
-
-    private static class TreasureClusterRenderer extends DefaultClusterRenderer<TreasureItem> {
-
-        private final Context context;
-
-        public TreasureClusterRenderer(Context context, GoogleMap map, ClusterManager<TreasureItem> clusterManager) {
-            super(context, map, clusterManager);
-            this.context = context;
-        }
-
-        @Override
-        protected void onBeforeClusterRendered(@NonNull Cluster<TreasureItem> cluster, @NonNull MarkerOptions markerOptions) {
-            // Create custom icon showing the number of treasures
-            BitmapDescriptor icon = BitmapDescriptorFactory.fromBitmap(createClusterIcon(cluster.getSize()));
-            markerOptions.icon(icon);
-            markerOptions.title(cluster.getSize() + " Treasures");
+        treasures.removeListener(treasuresListener);
+        treasuresUpdatePending = false;
+        timeFrom = Long.MIN_VALUE;
+        timeTo = Long.MAX_VALUE;
+        // The next view starts without overlays, so its first camera position has to set them up
+        detailMode = null;
+        if (clusterSync != null) {
+            clusterSync.release();
+            clusterSync = null;
         }
-
-        @Override
-        protected void onBeforeClusterItemRendered(@NonNull TreasureItem item, @NonNull MarkerOptions markerOptions) {
-            // Customize individual treasure markers
-            markerOptions.title(item.getTitle());
-            markerOptions.snippet(item.getSnippet());
-
-            markerOptions.icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_VIOLET));
+        if (thumbnailAtlas != null) {
+            thumbnailAtlas.release();
+            thumbnailAtlas = null;
         }
-
-        @Override
-        protected boolean shouldRenderAsCluster(@NonNull Cluster<TreasureItem> cluster) {
-            // Cluster if 2 or more items are close together
-            return cluster.getSize() >= 2;
+        if (heatmapProvider != null) {
+            heatmapProvider.release();
+            heatmapProvider = null;
+            heatmapOverlay = null;
         }
-
-        // Creates a custom bitmap icon for clusters showing the count
-        private Bitmap createClusterIcon(int clusterSize) {
-            int size = 120;
-            Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-
-            // Draw circle background
-            Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            circlePaint.setColor(0xFF9C27B0); // Purple color
-            circlePaint.setStyle(Paint.Style.FILL);
-            canvas.drawCircle(size / 2f, size / 2f, size / 2f, circlePaint);
-
-            // Draw white border
-            Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            borderPaint.setColor(Color.WHITE);
-            borderPaint.setStyle(Paint.Style.STROKE);
-            borderPaint.setStrokeWidth(8);
-            canvas.drawCircle(size / 2f, size / 2f, size / 2f - 4, borderPaint);
-
-            // Draw count text
-            Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            textPaint.setColor(Color.WHITE);
-            textPaint.setTextSize(clusterSize < 100 ? 50 : 40); // Smaller text for large numbers
-            textPaint.setTextAlign(Paint.Align.CENTER);
-            textPaint.setFakeBoldText(true);
-
-            String text = String.valueOf(clusterSize);
-            float textY = size / 2f - ((textPaint.descent() + textPaint.ascent()) / 2);
-            canvas.drawText(text, size / 2f, textY, textPaint);
-
-            return bitmap;
+        if (aggregateProvider != null) {
+            aggregateProvider.release();
+            aggregateProvider = null;
+            aggregateOverlay = null;
         }
+        binding = null;
     }
-}
\ No newline at end of file
+}
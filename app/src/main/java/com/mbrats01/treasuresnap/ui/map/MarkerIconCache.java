@@ -0,0 +1,64 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Least recently used marker icons by photo path.
+ *
+ * The capacity follows the number of photo markers the renderer is showing, so every icon on
+ * screen stays cached however many there are and only icons nobody looked at during the last
+ * render pass are evicted. It never drops below the minimum given to the constructor.
+ */
+final class MarkerIconCache<V> {
+
+    private final int minCapacity;
+    private final Consumer<V> onEvicted;
+    private final LinkedHashMap<String, V> icons;
+    private int capacity;
+
+    MarkerIconCache(int minCapacity, Consumer<V> onEvicted) {
+        this.minCapacity = minCapacity;
+        this.onEvicted = onEvicted;
+        this.capacity = minCapacity;
+        this.icons = new LinkedHashMap<>(minCapacity, 0.75f, true);
+    }
+
+    // Keeps room for at least this many icons, evicting the least recently used beyond it
+    void setCapacity(int markers) {
+        capacity = Math.max(minCapacity, markers);
+        trim();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int size() {
+        return icons.size();
+    }
+
+    // Returns the icon and marks it as most recently used, or null if it isn't cached
+    V get(String key) {
+        return icons.get(key);
+    }
+
+    void put(String key, V icon) {
+        icons.put(key, icon);
+        trim();
+    }
+
+    void clear() {
+        icons.clear();
+    }
+
+    private void trim() {
+        Iterator<V> eldest = icons.values().iterator();
+        while (icons.size() > capacity) {
+            V evicted = eldest.next();
+            eldest.remove();
+            onEvicted.accept(evicted);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Shader;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+import com.mbrats01.treasuresnap.image.ThumbnailLoader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Circular photo icons for treasure markers.
+ *
+ * Icons are composited into the slots of one shared atlas bitmap on a background thread, taking
+ * the slots in turn, and each marker gets a {@link BitmapDescriptor} copied out of its slot. The
+ * copies are cached in a {@link MarkerIconCache} sized by the renderer to the photo markers it
+ * is showing (at least {@link #SLOT_COUNT}), so panning never evicts an icon that is still on
+ * screen. An evicted copy lives on only until the marker showing it is removed, so however many
+ * markers come and go, the icons in memory are bounded by the markers of about one render pass.
+ */
+class MarkerThumbnailAtlas {
+
+    // Receives an icon once it has been composited
+    interface Listener {
+        void onIconReady(TreasureItem item, BitmapDescriptor icon);
+    }
+
+    private static final int COLUMNS = 8;
+    private static final int ROWS = 8;
+    static final int SLOT_COUNT = COLUMNS * ROWS;
+
+    private final ThumbnailLoader thumbnailLoader;
+    private final int slotSize;
+    private final float borderWidth;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // Only drawn on the worker thread
+    private final Bitmap atlas;
+    private final Canvas canvas;
+    private final Paint photoPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
+    private final Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Matrix shaderMatrix = new Matrix();
+    private int nextSlot;
+
+    // Icons by photo path; main thread only
+    private final MarkerIconCache<Entry> entries =
+            new MarkerIconCache<>(SLOT_COUNT, entry -> entry.evicted = true);
+    private final BitmapDescriptor placeholder;
+
+    MarkerThumbnailAtlas(ThumbnailLoader thumbnailLoader, int slotSize) {
+        this.thumbnailLoader = thumbnailLoader;
+        this.slotSize = slotSize;
+        this.borderWidth = Math.max(2f, slotSize / 16f);
+
+        atlas = Bitmap.createBitmap(COLUMNS * slotSize, ROWS * slotSize, Bitmap.Config.ARGB_8888);
+        canvas = new Canvas(atlas);
+
+        borderPaint.setColor(Color.WHITE);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(borderWidth);
+
+        // Shown until the photo icon is ready; same shape so the marker doesn't jump
+        Bitmap empty = Bitmap.createBitmap(slotSize, slotSize, Bitmap.Config.ARGB_8888);
+        Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fill.setColor(0xFF9C27B0); // Purple color
+        Canvas placeholderCanvas = new Canvas(empty);
+        float radius = slotSize / 2f;
+        placeholderCanvas.drawCircle(radius, radius, radius - borderWidth, fill);
+        placeholderCanvas.drawCircle(radius, radius, radius - borderWidth / 2, borderPaint);
+        placeholder = BitmapDescriptorFactory.fromBitmap(empty);
+    }
+
+    BitmapDescriptor getPlaceholder() {
+        return placeholder;
+    }
+
+    // Returns the icon of a treasure, or null and calls the listener once it has been made
+    @MainThread
+    @Nullable
+    BitmapDescriptor get(TreasureItem item, Listener listener) {
+        String key = item.getPhotoPath();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            return entry.icon;
+        }
+
+        Entry created = new Entry();
+        entries.put(key, created);
+        PhotoInfo info = item.getPhotoInfo();
+        worker.execute(() -> {
+            if (created.evicted) {
+                return;
+            }
+            Bitmap icon = composite(key, info);
+            mainHandler.post(() -> {
+                if (icon == null || entries.get(key) != created) {
+                    return;
+                }
+                created.icon = BitmapDescriptorFactory.fromBitmap(icon);
+                listener.onIconReady(item, created.icon);
+            });
+        });
+        return null;
+    }
+
+    // Keeps the icons of this many markers cached; called by the renderer before each render pass
+    @MainThread
+    void setCapacity(int markers) {
+        entries.setCapacity(markers);
+    }
+
+    // Drops every icon and stops the worker; the atlas can't be used afterwards
+    @MainThread
+    void release() {
+        entries.clear();
+        worker.shutdownNow();
+    }
+
+    // Draws the photo as a bordered circle into the next slot and copies the slot out
+    @WorkerThread
+    @Nullable
+    private Bitmap composite(String photoPath, PhotoInfo info) {
+        Bitmap photo = thumbnailLoader.decodeThumbnail(photoPath, info, slotSize, slotSize);
+        if (photo == null) {
+            return null;
+        }
+
+        // The slot is copied out before the next icon is drawn, so slots can be reused in turn
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % SLOT_COUNT;
+        int left = (slot % COLUMNS) * slotSize;
+        int top = (slot / COLUMNS) * slotSize;
+        float radius = slotSize / 2f;
+
+        // Center-crop the photo into the slot
+        float scale = (float) slotSize / Math.min(photo.getWidth(), photo.getHeight());
+        shaderMatrix.setScale(scale, scale);
+        shaderMatrix.postTranslate(left + (slotSize - photo.getWidth() * scale) / 2f,
+                top + (slotSize - photo.getHeight() * scale) / 2f);
+        BitmapShader shader = new BitmapShader(photo, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP);
+        shader.setLocalMatrix(shaderMatrix);
+        photoPaint.setShader(shader);
+
+        canvas.save();
+        canvas.clipRect(left, top, left + slotSize, top + slotSize);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.drawCircle(left + radius, top + radius, radius - borderWidth, photoPaint);
+        canvas.drawCircle(left + radius, top + radius, radius - borderWidth / 2, borderPaint);
+        canvas.restore();
+
+        photoPaint.setShader(null);
+        photo.recycle();
+        return Bitmap.createBitmap(atlas, left, top, slotSize, slotSize);
+    }
+
+    private static final class Entry {
+        // Null while the icon is being made or if the photo could not be read
+        BitmapDescriptor icon;
+        volatile boolean evicted;
+    }
+}
@@ -0,0 +1,86 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mbrats01.treasuresnap.R;
+import com.mbrats01.treasuresnap.image.ThumbnailLoader;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// Rows of the closest finds panel: thumbnail, distance from the player and capture time
+class NearbyTreasureAdapter extends RecyclerView.Adapter<NearbyTreasureAdapter.ViewHolder> {
+
+    private final List<TreasureItem> items;
+    // Great-circle distance of each item, in the same order
+    private final double[] distancesMeters;
+    private final ThumbnailLoader thumbnailLoader;
+    private final Consumer<TreasureItem> onClick;
+
+    NearbyTreasureAdapter(List<TreasureItem> items, double[] distancesMeters,
+                          ThumbnailLoader thumbnailLoader, Consumer<TreasureItem> onClick) {
+        this.items = items;
+        this.distancesMeters = distancesMeters;
+        this.thumbnailLoader = thumbnailLoader;
+        this.onClick = onClick;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.nearby_treasure_item, parent, false);
+        return new ViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        TreasureItem item = items.get(position);
+        thumbnailLoader.load(item.getPhotoPath(), item.getPhotoInfo(), holder.imageView);
+        holder.distanceText.setText(formatDistance(distancesMeters[position]));
+        holder.timestampText.setText("📸 " + item.getSnippet());
+        holder.itemView.setOnClickListener(v -> onClick.accept(item));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        thumbnailLoader.cancel(holder.imageView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    // 85 m, 1.2 km, 120 km
+    static String formatDistance(double meters) {
+        if (meters < 1000) {
+            return String.format(Locale.getDefault(), "%d m", Math.round(meters));
+        }
+        if (meters < 100_000) {
+            return String.format(Locale.getDefault(), "%.1f km", meters / 1000);
+        }
+        return String.format(Locale.getDefault(), "%d km", Math.round(meters / 1000));
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final ImageView imageView;
+        final TextView distanceText;
+        final TextView timestampText;
+
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            imageView = itemView.findViewById(R.id.nearby_thumbnail);
+            distanceText = itemView.findViewById(R.id.nearby_distance);
+            timestampText = itemView.findViewById(R.id.nearby_timestamp);
+        }
+    }
+}
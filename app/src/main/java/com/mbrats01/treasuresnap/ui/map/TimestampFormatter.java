@@ -0,0 +1,65 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Formats treasure timestamps as "MMM dd, yyyy HH:mm:ss" and is safe to share between threads.
+ *
+ * The date and minute part is formatted once per minute and kept in a small lock-free cache,
+ * so treasures captured in the same minute share that text and only the seconds are appended.
+ */
+final class TimestampFormatter {
+
+    private static final long MINUTE_MS = 60_000L;
+    // Power of two, so the slot is a mask of the minute
+    private static final int CACHE_SLOTS = 1024;
+
+    private static final TimestampFormatter DEFAULT =
+            new TimestampFormatter(Locale.getDefault(), ZoneId.systemDefault());
+
+    private final DateTimeFormatter minuteFormat;
+    private final AtomicReferenceArray<CachedMinute> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    TimestampFormatter(Locale locale, ZoneId zone) {
+        minuteFormat = DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm", locale).withZone(zone);
+    }
+
+    // Shared formatter for the device locale and time zone
+    static TimestampFormatter getDefault() {
+        return DEFAULT;
+    }
+
+    String format(long timestamp) {
+        long minute = Math.floorDiv(timestamp, MINUTE_MS);
+        int seconds = (int) (Math.floorMod(timestamp, MINUTE_MS) / 1000);
+
+        int slot = (int) minute & (CACHE_SLOTS - 1);
+        CachedMinute cached = cache.get(slot);
+        if (cached == null || cached.minute != minute) {
+            cached = new CachedMinute(minute, minuteFormat.format(Instant.ofEpochMilli(minute * MINUTE_MS)));
+            cache.set(slot, cached);
+        }
+
+        return new StringBuilder(cached.text.length() + 3)
+                .append(cached.text)
+                .append(':')
+                .append((char) ('0' + seconds / 10))
+                .append((char) ('0' + seconds % 10))
+                .toString();
+    }
+
+    // Immutable, so a slot can be replaced by any thread without locking
+    private static final class CachedMinute {
+        final long minute;
+        final String text;
+
+        CachedMinute(long minute, String text) {
+            this.minute = minute;
+            this.text = text;
+        }
+    }
+}
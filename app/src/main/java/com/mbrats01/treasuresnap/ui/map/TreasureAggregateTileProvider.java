@@ -0,0 +1,195 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Tiles showing how many treasures fall in each cell of a coarse grid, for the zoom levels where
+ * even clusters would mean thousands of markers. Counts are summed from the buckets of a
+ * {@link HeatmapPoints} snapshot, so a tile costs a few lookups and at most CELLS x CELLS
+ * circles; nothing is created per treasure. Like the clusters, only treasures inside the
+ * timeline's range are counted.
+ */
+class TreasureAggregateTileProvider implements TileProvider {
+
+    // Rendered at twice the map's 256dp tile so labels stay sharp on dense screens
+    private static final int TILE_SIZE = 512;
+    // Grid cells per tile side
+    private static final int CELLS = 4;
+    private static final int CELL_SIZE = TILE_SIZE / CELLS;
+    private static final int MIN_RADIUS = 26;
+    private static final int MAX_RADIUS = CELL_SIZE / 2 - 6;
+    // Count at which the circle reaches its largest size
+    private static final float FULL_COUNT = 10_000f;
+    private static final int CACHED_TILES = 64;
+    private static final byte[] EMPTY_TILE = new byte[0];
+
+    private final TreasurePointsSync pointsSync;
+    // Called on the main thread when cached tiles were dropped and should be requested again
+    private final Runnable onTilesChanged;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Long, byte[]> tiles = new LruCache<>(CACHED_TILES);
+
+    // Current snapshot and time range; changed together with clearing the tiles under the lock
+    private final Object lock = new Object();
+    private HeatmapPoints points = HeatmapPoints.EMPTY;
+    private long timeFrom = Long.MIN_VALUE;
+    private long timeTo = Long.MAX_VALUE;
+
+    // Shared by the tile threads, so they're only used under renderLock
+    private final Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Object renderLock = new Object();
+
+    TreasureAggregateTileProvider(TreasureRepository treasures, Runnable onTilesChanged) {
+        this.pointsSync = new TreasurePointsSync(treasures, this::onPointsChanged);
+        this.onTilesChanged = onTilesChanged;
+
+        // Same look as the cluster markers, a little see-through so the map shows beneath
+        circlePaint.setColor(0xD99C27B0);
+        circlePaint.setStyle(Paint.Style.FILL);
+
+        borderPaint.setColor(Color.WHITE);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(6);
+
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+    }
+
+    // Picks up treasures added since the last call; the snapshot is updated in the background
+    @MainThread
+    void sync() {
+        pointsSync.sync();
+    }
+
+    // Only treasures captured between from and to (inclusive) are counted
+    @MainThread
+    void setTimeRange(long from, long to) {
+        synchronized (lock) {
+            if (from == timeFrom && to == timeTo) {
+                return;
+            }
+            timeFrom = from;
+            timeTo = to;
+            tiles.evictAll();
+        }
+        onTilesChanged.run();
+    }
+
+    @MainThread
+    void release() {
+        pointsSync.release();
+    }
+
+    @WorkerThread
+    private void onPointsChanged(HeatmapPoints newPoints, TreasurePointsSync.Change change) {
+        synchronized (lock) {
+            points = newPoints;
+            tiles.evictAll();
+        }
+        mainHandler.post(onTilesChanged);
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        long key = ((long) zoom << 58) | ((long) x << 29) | y;
+        HeatmapPoints snapshot;
+        long from;
+        long to;
+        synchronized (lock) {
+            byte[] png = tiles.get(key);
+            if (png != null) {
+                return png.length == 0 ? NO_TILE : new Tile(TILE_SIZE, TILE_SIZE, png);
+            }
+            snapshot = points;
+            from = timeFrom;
+            to = timeTo;
+        }
+
+        byte[] png = render(snapshot, from, to, x, y, zoom);
+        synchronized (lock) {
+            // Don't cache a tile made from points or a range that were replaced meanwhile
+            if (points == snapshot && timeFrom == from && timeTo == to) {
+                tiles.put(key, png);
+            }
+        }
+        return png.length == 0 ? NO_TILE : new Tile(TILE_SIZE, TILE_SIZE, png);
+    }
+
+    @WorkerThread
+    private byte[] render(HeatmapPoints snapshot, long from, long to, int tileX, int tileY, int zoom) {
+        double cellWorld = 1.0 / ((double) (1 << zoom) * CELLS);
+        int[] counts = new int[CELLS * CELLS];
+        boolean any = false;
+        for (int cy = 0; cy < CELLS; cy++) {
+            for (int cx = 0; cx < CELLS; cx++) {
+                double minX = (tileX * CELLS + cx) * cellWorld;
+                double minY = (tileY * CELLS + cy) * cellWorld;
+                counts[cy * CELLS + cx] = snapshot.count(minX, minY, minX + cellWorld, minY + cellWorld,
+                        from, to);
+                any |= counts[cy * CELLS + cx] > 0;
+            }
+        }
+        if (!any) {
+            return EMPTY_TILE;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        float scale = 1f / (float) Math.log1p(FULL_COUNT);
+        synchronized (renderLock) {
+            for (int cy = 0; cy < CELLS; cy++) {
+                for (int cx = 0; cx < CELLS; cx++) {
+                    int count = counts[cy * CELLS + cx];
+                    if (count == 0) {
+                        continue;
+                    }
+                    float t = Math.min(1f, (float) Math.log1p(count) * scale);
+                    float radius = MIN_RADIUS + (MAX_RADIUS - MIN_RADIUS) * t;
+                    float centerX = cx * CELL_SIZE + CELL_SIZE / 2f;
+                    float centerY = cy * CELL_SIZE + CELL_SIZE / 2f;
+                    canvas.drawCircle(centerX, centerY, radius, circlePaint);
+                    canvas.drawCircle(centerX, centerY, radius - 3, borderPaint);
+
+                    String label = countLabel(count);
+                    textPaint.setTextSize(label.length() < 3 ? 30 : 24);
+                    float textY = centerY - (textPaint.descent() + textPaint.ascent()) / 2;
+                    canvas.drawText(label, centerX, textY, textPaint);
+                }
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    // 7, 420, 3.1k, 12k
+    static String countLabel(int count) {
+        if (count < 1000) {
+            return String.valueOf(count);
+        }
+        if (count < 10_000) {
+            return count / 1000 + "." + count % 1000 / 100 + "k";
+        }
+        return count / 1000 + "k";
+    }
+}
@@ -0,0 +1,81 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.Cluster;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+// One node of a TreasureClusterIndex level, limited to a time range, less the treasures removed
+// and plus those added since the index was built (node < 0 for a cluster of added treasures
+// only); its items are only collected when asked for
+class TreasureCluster implements Cluster<TreasureItem> {
+
+    private final TreasureClusterAlgorithm.Snapshot snapshot;
+    private final int zoom;
+    private final int node;
+    private final long from;
+    private final long to;
+    private final LatLng position;
+    private final int size;
+    private final List<TreasureItem> added;
+    private List<TreasureItem> items;
+
+    TreasureCluster(TreasureClusterAlgorithm.Snapshot snapshot, int zoom, int node, long from, long to,
+                    double latitude, double longitude, int size, List<TreasureItem> added) {
+        this.snapshot = snapshot;
+        this.zoom = zoom;
+        this.node = node;
+        this.from = from;
+        this.to = to;
+        this.position = new LatLng(latitude, longitude);
+        this.size = size;
+        this.added = added;
+    }
+
+    @NonNull
+    @Override
+    public LatLng getPosition() {
+        return position;
+    }
+
+    @NonNull
+    @Override
+    public synchronized Collection<TreasureItem> getItems() {
+        if (items == null) {
+            List<TreasureItem> leaves = new ArrayList<>(size);
+            if (node >= 0) {
+                snapshot.index.getLeaves(zoom, node, from, to, leaf -> {
+                    if (!snapshot.isRemoved(leaf)) {
+                        leaves.add(snapshot.item(leaf));
+                    }
+                });
+            }
+            leaves.addAll(added);
+            items = leaves;
+        }
+        return items;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TreasureCluster)) return false;
+        TreasureCluster other = (TreasureCluster) o;
+        // A different range can change the size and position of the same node
+        return snapshot == other.snapshot && zoom == other.zoom && node == other.node
+                && from == other.from && to == other.to;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * System.identityHashCode(snapshot) + zoom) + node;
+    }
+}
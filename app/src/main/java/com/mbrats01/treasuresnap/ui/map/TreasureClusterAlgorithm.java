@@ -0,0 +1,459 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.algo.AbstractAlgorithm;
+import com.google.maps.android.clustering.algo.ScreenBasedAlgorithm;
+import com.mbrats01.treasuresnap.data.TreasureClusterIndex;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Clustering algorithm backed by a precomputed {@link TreasureClusterIndex}.
+ *
+ * The index is built once per change of the treasures, away from the ClusterManager's lock (see
+ * {@link TreasureClusterSync}), and handed over as a {@link Snapshot}. getClusters() never
+ * rebuilds anything: the visible area and the time range are both queries against the current
+ * snapshot, so camera moves and timeline changes stay cheap.
+ *
+ * Items added or removed through the ClusterManager after that change the snapshot without a
+ * rebuild: a removed treasure is taken out of the cluster holding it, and an added one joins the
+ * nearest cluster within the radius or starts one of its own, each time clusters are fetched.
+ * That costs a little per change on every query, so once many have piled up the sync builds a
+ * fresh index over them.
+ */
+public class TreasureClusterAlgorithm extends AbstractAlgorithm<TreasureItem>
+        implements ScreenBasedAlgorithm<TreasureItem> {
+
+    private static final int DEFAULT_MAX_DISTANCE_DP = 100;
+    private static final int MIN_ZOOM = 0;
+    private static final int MAX_ZOOM = 16;
+    private static final double TILE_SIZE_DP = 256;
+    // Clusters are returned for the visible area grown by this fraction on every side
+    private static final double VIEW_MARGIN = 0.5;
+
+    /**
+     * The clustered treasures and the index built over them, plus the treasures added and
+     * removed since. Leaf i of the index is the treasure with ids[i]; its item is made from the
+     * copied row only when it is asked for. Never changed once made, so a query can keep using
+     * the one it started with.
+     */
+    public static final class Snapshot {
+
+        private static final TreasureItem[] NO_ITEMS = new TreasureItem[0];
+
+        static final Snapshot EMPTY = new Snapshot(null, new long[0], new double[0], new double[0],
+                new long[0], 0, TreasureClusterIndex.build(new double[0], new double[0], 0,
+                MIN_ZOOM, MAX_ZOOM, DEFAULT_MAX_DISTANCE_DP, TILE_SIZE_DP), NO_ITEMS, new BitSet());
+
+        private final TreasureTable table;
+        // Ascending, the order treasures were added in
+        private final long[] ids;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final long[] timestamps;
+        private final int size;
+        final TreasureClusterIndex index;
+        // Treasures added and leaves removed since the index was built
+        private final TreasureItem[] added;
+        private final BitSet removed;
+
+        private Snapshot(TreasureTable table, long[] ids, double[] latitudes, double[] longitudes,
+                         long[] timestamps, int size, TreasureClusterIndex index,
+                         TreasureItem[] added, BitSet removed) {
+            this.table = table;
+            this.ids = ids;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.timestamps = timestamps;
+            this.size = size;
+            this.index = index;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        TreasureItem item(int leaf) {
+            return new TreasureItem(table, ids[leaf], latitudes[leaf], longitudes[leaf], timestamps[leaf]);
+        }
+
+        boolean isRemoved(int leaf) {
+            return removed.get(leaf);
+        }
+
+        public int size() {
+            return size - removed.cardinality() + added.length;
+        }
+
+        // Treasures added or removed since the index was built
+        public int getChangeCount() {
+            return added.length + removed.cardinality();
+        }
+
+        // A snapshot that also holds the given items; this one if it already held them all
+        Snapshot plus(Collection<TreasureItem> items) {
+            Set<TreasureItem> held = new HashSet<>(Arrays.asList(added));
+            List<TreasureItem> next = new ArrayList<>(Arrays.asList(added));
+            for (TreasureItem item : items) {
+                if (leafOf(item) < 0 && held.add(item)) {
+                    next.add(item);
+                }
+            }
+            if (next.size() == added.length) {
+                return this;
+            }
+            return new Snapshot(table, ids, latitudes, longitudes, timestamps, size, index,
+                    next.toArray(NO_ITEMS), removed);
+        }
+
+        // A snapshot without the given items; this one if it held none of them
+        Snapshot minus(Collection<TreasureItem> items) {
+            List<TreasureItem> nextAdded = new ArrayList<>(Arrays.asList(added));
+            BitSet nextRemoved = (BitSet) removed.clone();
+            boolean changed = false;
+            for (TreasureItem item : items) {
+                int leaf = leafOf(item);
+                if (leaf >= 0) {
+                    nextRemoved.set(leaf);
+                    changed = true;
+                } else {
+                    changed |= nextAdded.remove(item);
+                }
+            }
+            if (!changed) {
+                return this;
+            }
+            return new Snapshot(table, ids, latitudes, longitudes, timestamps, size, index,
+                    nextAdded.toArray(NO_ITEMS), nextRemoved);
+        }
+
+        // Leaf of the item if the index holds it and it wasn't removed, otherwise -1
+        private int leafOf(TreasureItem item) {
+            int leaf = Arrays.binarySearch(ids, 0, size, item.getId());
+            return leaf >= 0 && !removed.get(leaf) && item.equals(item(leaf)) ? leaf : -1;
+        }
+    }
+
+    private volatile int maxDistance = DEFAULT_MAX_DISTANCE_DP;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // {from, to}, replaced as a whole so the clustering thread never sees half of a change
+    private volatile long[] timeRange = {Long.MIN_VALUE, Long.MAX_VALUE};
+
+    private volatile CameraPosition cameraPosition;
+    private volatile int viewWidthDp;
+    private volatile int viewHeightDp;
+
+    public TreasureClusterAlgorithm(int viewWidthDp, int viewHeightDp) {
+        updateViewSize(viewWidthDp, viewHeightDp);
+    }
+
+    public void updateViewSize(int viewWidthDp, int viewHeightDp) {
+        this.viewWidthDp = viewWidthDp;
+        this.viewHeightDp = viewHeightDp;
+    }
+
+    /**
+     * Builds the index over the first n treasures of the arrays, which must not change while
+     * this runs. Slow for many treasures, so call it on a worker thread; the table is only kept
+     * for the items' photo lookups.
+     */
+    @WorkerThread
+    public Snapshot index(TreasureTable table, long[] ids, double[] latitudes, double[] longitudes,
+                          long[] timestamps, int n) {
+        TreasureClusterIndex index = TreasureClusterIndex.build(latitudes, longitudes, timestamps, n,
+                MIN_ZOOM, MAX_ZOOM, maxDistance, TILE_SIZE_DP);
+        return new Snapshot(table, ids, latitudes, longitudes, timestamps, n, index,
+                Snapshot.NO_ITEMS, new BitSet());
+    }
+
+    // Current treasures, including those added and removed through the ClusterManager
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    // Replaces every item; takes effect from the next getClusters(). Any thread.
+    public void setSnapshot(Snapshot snapshot) {
+        lock();
+        try {
+            this.snapshot = snapshot;
+        } finally {
+            unlock();
+        }
+    }
+
+    // Only treasures captured between from and to (inclusive) are clustered from the next
+    // getClusters(); any thread
+    public void setTimeRange(long from, long to) {
+        timeRange = new long[]{from, to};
+    }
+
+    // The item mutators are called by the ClusterManager with the lock held; each one swaps in a
+    // changed snapshot, which the next getClusters() picks up without rebuilding the index
+
+    @Override
+    public boolean addItem(TreasureItem item) {
+        return addItems(Collections.singletonList(item));
+    }
+
+    @Override
+    public boolean addItems(Collection<TreasureItem> newItems) {
+        Snapshot current = snapshot;
+        snapshot = current.plus(newItems);
+        return snapshot != current;
+    }
+
+    @Override
+    public void clearItems() {
+        snapshot = Snapshot.EMPTY;
+    }
+
+    @Override
+    public boolean removeItem(TreasureItem item) {
+        return removeItems(Collections.singletonList(item));
+    }
+
+    @Override
+    public boolean removeItems(Collection<TreasureItem> oldItems) {
+        Snapshot current = snapshot;
+        snapshot = current.minus(oldItems);
+        return snapshot != current;
+    }
+
+    // Takes the item's new position and time; false if it isn't held
+    @Override
+    public boolean updateItem(TreasureItem item) {
+        Snapshot current = snapshot;
+        List<TreasureItem> items = Collections.singletonList(item);
+        Snapshot without = current.minus(items);
+        if (without == current) {
+            return false;
+        }
+        snapshot = without.plus(items);
+        return true;
+    }
+
+    @Override
+    public Set<? extends Cluster<TreasureItem>> getClusters(float zoom) {
+        Snapshot current = snapshot;
+        long[] range = timeRange;
+        double[] box = visibleBox(zoom);
+        if (current.getChangeCount() > 0) {
+            return getChangedClusters(current, zoom, box, range[0], range[1]);
+        }
+
+        Set<TreasureCluster> clusters = new HashSet<>();
+        current.index.getClusters(zoom, box[0], box[1], box[2], box[3], range[0], range[1],
+                (clusterZoom, node, lat, lon, count) -> clusters.add(new TreasureCluster(current,
+                        clusterZoom, node, range[0], range[1], lat, lon, count,
+                        Collections.emptyList())));
+        return clusters;
+    }
+
+    @Override
+    public Collection<TreasureItem> getItems() {
+        Snapshot current = snapshot;
+        List<TreasureItem> items = new ArrayList<>(current.size());
+        for (int leaf = 0; leaf < current.size; leaf++) {
+            if (!current.isRemoved(leaf)) {
+                items.add(current.item(leaf));
+            }
+        }
+        items.addAll(Arrays.asList(current.added));
+        return items;
+    }
+
+    // Takes effect from the next index()
+    @Override
+    public void setMaxDistanceBetweenClusteredItems(int maxDistance) {
+        this.maxDistance = maxDistance;
+    }
+
+    @Override
+    public int getMaxDistanceBetweenClusteredItems() {
+        return maxDistance;
+    }
+
+    @Override
+    public boolean shouldReclusterOnMapMovement() {
+        return true;
+    }
+
+    @Override
+    public void onCameraChange(@NonNull CameraPosition cameraPosition) {
+        this.cameraPosition = cameraPosition;
+    }
+
+    // The index clusters less the removed treasures, and the added treasures each merged into
+    // the nearest cluster within the radius or, failing that, into a cluster of added ones
+    private static Set<TreasureCluster> getChangedClusters(Snapshot current, float zoom, double[] box,
+                                                           long from, long to) {
+        TreasureClusterIndex index = current.index;
+        List<ChangedCluster> found = new ArrayList<>();
+        Map<Integer, ChangedCluster> byNode = new HashMap<>();
+        index.getClusters(zoom, box[0], box[1], box[2], box[3], from, to, (clusterZoom, node, lat, lon, count) -> {
+            ChangedCluster cluster = new ChangedCluster(clusterZoom, node);
+            cluster.add(TreasureClusterIndex.longitudeToX(lon), TreasureClusterIndex.latitudeToY(lat), count);
+            found.add(cluster);
+            byNode.put(node, cluster);
+        });
+
+        BitSet removed = current.removed;
+        for (int leaf = removed.nextSetBit(0); leaf >= 0; leaf = removed.nextSetBit(leaf + 1)) {
+            ChangedCluster cluster = byNode.get(index.getNode(zoom, leaf));
+            if (cluster != null && current.timestamps[leaf] >= from && current.timestamps[leaf] <= to) {
+                cluster.add(TreasureClusterIndex.longitudeToX(current.longitudes[leaf]),
+                        TreasureClusterIndex.latitudeToY(current.latitudes[leaf]), -1);
+            }
+        }
+
+        // Clusters of added treasures only, by the cell of a radius-sized grid they started in
+        double r = index.getRadius(zoom);
+        int levelZoom = Math.max(MIN_ZOOM, Math.min((int) Math.floor(zoom), MAX_ZOOM + 1));
+        Map<Long, List<ChangedCluster>> cells = new HashMap<>();
+        ChangedCluster[] nearest = new ChangedCluster[1];
+        for (int i = 0; i < current.added.length; i++) {
+            TreasureItem item = current.added[i];
+            if (item.getTimestamp() < from || item.getTimestamp() > to
+                    || !inBox(box, item.getLatitude(), item.getLongitude())) {
+                continue;
+            }
+            double x = TreasureClusterIndex.longitudeToX(item.getLongitude());
+            double y = TreasureClusterIndex.latitudeToY(item.getLatitude());
+
+            nearest[0] = null;
+            if (r > 0) {
+                index.getNodesWithin(zoom, x, y, r, node -> closer(nearest, byNode.get(node), x, y, r));
+                long cellX = (long) Math.floor(x / r);
+                long cellY = (long) Math.floor(y / r);
+                for (long cx = cellX - 1; cx <= cellX + 1; cx++) {
+                    for (long cy = cellY - 1; cy <= cellY + 1; cy++) {
+                        List<ChangedCluster> cell = cells.get(cx << 32 ^ cy);
+                        if (cell != null) {
+                            for (ChangedCluster cluster : cell) {
+                                closer(nearest, cluster, x, y, r);
+                            }
+                        }
+                    }
+                }
+            }
+
+            ChangedCluster cluster = nearest[0];
+            if (cluster == null) {
+                cluster = new ChangedCluster(levelZoom, -1 - i);
+                found.add(cluster);
+                if (r > 0) {
+                    long key = (long) Math.floor(x / r) << 32 ^ (long) Math.floor(y / r);
+                    cells.computeIfAbsent(key, k -> new ArrayList<>()).add(cluster);
+                }
+            }
+            cluster.add(x, y, 1);
+            cluster.added.add(item);
+        }
+
+        Set<TreasureCluster> clusters = new HashSet<>();
+        for (ChangedCluster cluster : found) {
+            if (cluster.count > 0) {
+                clusters.add(new TreasureCluster(current, cluster.zoom, cluster.node, from, to,
+                        TreasureClusterIndex.yToLatitude(cluster.sumY / cluster.count),
+                        TreasureClusterIndex.xToLongitude(cluster.sumX / cluster.count),
+                        cluster.count, cluster.added));
+            }
+        }
+        return clusters;
+    }
+
+    // Keeps the cluster in nearest[0] if it is closer to x, y than the one there, within r
+    private static void closer(ChangedCluster[] nearest, ChangedCluster cluster, double x, double y, double r) {
+        if (cluster == null || cluster.count <= 0) {
+            return;
+        }
+        double distance = cluster.squaredDistance(x, y);
+        if (distance <= r * r && (nearest[0] == null || distance < nearest[0].squaredDistance(x, y))) {
+            nearest[0] = cluster;
+        }
+    }
+
+    private static boolean inBox(double[] box, double latitude, double longitude) {
+        if (latitude < box[0] || latitude > box[2]) {
+            return false;
+        }
+        if (box[3] - box[1] >= 360) {
+            return true;
+        }
+        return box[1] > box[3]
+                ? longitude >= box[1] || longitude <= box[3]
+                : longitude >= box[1] && longitude <= box[3];
+    }
+
+    // {south, west, north, east} of the area the camera shows, worked out from its target, zoom
+    // and the view size; the whole world before the first camera position
+    private double[] visibleBox(float zoom) {
+        CameraPosition camera = cameraPosition;
+        if (camera == null || viewWidthDp <= 0 || viewHeightDp <= 0) {
+            return new double[]{-90, -180, 90, 180};
+        }
+        double worldSizeDp = TILE_SIZE_DP * Math.pow(2, zoom);
+        double halfWidth = viewWidthDp / 2.0 / worldSizeDp * (1 + 2 * VIEW_MARGIN);
+        double halfHeight = viewHeightDp / 2.0 / worldSizeDp * (1 + 2 * VIEW_MARGIN);
+        // A rotated map can show the corners of the view in any direction
+        double halfSpan = camera.bearing == 0 ? 0 : Math.max(halfWidth, halfHeight);
+        halfWidth = Math.max(halfWidth, halfSpan);
+        halfHeight = Math.max(halfHeight, halfSpan);
+
+        double centerX = TreasureClusterIndex.longitudeToX(camera.target.longitude);
+        double centerY = TreasureClusterIndex.latitudeToY(camera.target.latitude);
+
+        double north = TreasureClusterIndex.yToLatitude(Math.max(0, centerY - halfHeight));
+        double south = TreasureClusterIndex.yToLatitude(Math.min(1, centerY + halfHeight));
+        if (halfWidth >= 0.5) {
+            return new double[]{south, -180, north, 180};
+        }
+        double west = wrapLongitude(TreasureClusterIndex.xToLongitude(centerX - halfWidth));
+        double east = wrapLongitude(TreasureClusterIndex.xToLongitude(centerX + halfWidth));
+        return new double[]{south, west, north, east};
+    }
+
+    private static double wrapLongitude(double longitude) {
+        return ((longitude + 180) % 360 + 360) % 360 - 180;
+    }
+
+    // A cluster being adjusted for the changes, in world coordinates weighted by count
+    private static final class ChangedCluster {
+        final int zoom;
+        final int node;
+        final List<TreasureItem> added = new ArrayList<>();
+        double sumX;
+        double sumY;
+        int count;
+
+        ChangedCluster(int zoom, int node) {
+            this.zoom = zoom;
+            this.node = node;
+        }
+
+        // Adds count points at x, y; a negative count takes them out
+        void add(double x, double y, int count) {
+            sumX += x * count;
+            sumY += y * count;
+            this.count += count;
+        }
+
+        double squaredDistance(double x, double y) {
+            double dx = sumX / count - x;
+            double dy = sumY / count - y;
+            return dx * dx + dy * dy;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptor;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.ClusterManager;
+import com.google.maps.android.clustering.view.DefaultClusterRenderer;
+
+import java.util.Locale;
+import java.util.Set;
+
+class TreasureClusterRenderer extends DefaultClusterRenderer<TreasureItem> {
+
+    private static final String TAG = "TreasureClusterRenderer";
+    private static final int ICON_SIZE = 120;
+    // Exact labels up to 99, then "100+" and "1k+"; comfortably holds every bucket
+    private static final int ICON_CACHE_ENTRIES = 128;
+
+    private final Context context;
+    private final MarkerThumbnailAtlas thumbnailAtlas;
+    private final BitmapDescriptor defaultItemIcon =
+            BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_VIOLET);
+    // Show photo thumbnails instead of pins for single treasures
+    private boolean photoMarkers;
+    // Close in every treasure gets its own marker, however near the others
+    private boolean individualMarkers;
+
+    // Paints are built once and reused for every icon
+    private final Paint circlePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // Cluster icons keyed by the label they show
+    private final LruCache<String, BitmapDescriptor> iconCache = new LruCache<>(ICON_CACHE_ENTRIES);
+    private int iconHits;
+    private int iconMisses;
+    private long iconBytesAllocated;
+
+    public TreasureClusterRenderer(Context context, GoogleMap map, ClusterManager<TreasureItem> clusterManager,
+                                   MarkerThumbnailAtlas thumbnailAtlas) {
+        super(context, map, clusterManager);
+        this.context = context;
+        this.thumbnailAtlas = thumbnailAtlas;
+
+        circlePaint.setColor(0xFF9C27B0); // Purple color
+        circlePaint.setStyle(Paint.Style.FILL);
+
+        borderPaint.setColor(Color.WHITE);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setStrokeWidth(8);
+
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setFakeBoldText(true);
+    }
+
+    @Override
+    public void onClustersChanged(Set<? extends Cluster<TreasureItem>> clusters) {
+        // Every single treasure about to get a marker keeps its photo icon cached, so the atlas
+        // never evicts an icon that is still on screen
+        if (photoMarkers) {
+            int markers = 0;
+            for (Cluster<TreasureItem> cluster : clusters) {
+                if (!shouldRenderAsCluster(cluster)) {
+                    markers += cluster.getSize();
+                }
+            }
+            thumbnailAtlas.setCapacity(markers);
+        }
+        super.onClustersChanged(clusters);
+    }
+
+    @Override
+    protected void onBeforeClusterRendered(@NonNull Cluster<TreasureItem> cluster, @NonNull MarkerOptions markerOptions) {
+        // Reuse the icon showing the number of treasures
+        markerOptions.icon(getClusterIcon(cluster.getSize()));
+        markerOptions.title(cluster.getSize() + " Treasures");
+    }
+
+    @Override
+    protected void onClusterUpdated(@NonNull Cluster<TreasureItem> cluster, @NonNull Marker marker) {
+        marker.setIcon(getClusterIcon(cluster.getSize()));
+        marker.setTitle(cluster.getSize() + " Treasures");
+    }
+
+    @Override
+    protected void onBeforeClusterItemRendered(@NonNull TreasureItem item, @NonNull MarkerOptions markerOptions) {
+        // Customize individual treasure markers
+        markerOptions.title(item.getTitle());
+        markerOptions.snippet(item.getSnippet());
+
+        markerOptions.icon(getItemIcon(item));
+        markerOptions.anchor(0.5f, photoMarkers ? 0.5f : 1f);
+    }
+
+    @Override
+    protected void onClusterItemUpdated(@NonNull TreasureItem item, @NonNull Marker marker) {
+        super.onClusterItemUpdated(item, marker);
+        marker.setIcon(getItemIcon(item));
+        marker.setAnchor(0.5f, photoMarkers ? 0.5f : 1f);
+    }
+
+    // Takes effect for markers rendered from now on; re-cluster to update the visible ones
+    void setPhotoMarkers(boolean photoMarkers) {
+        this.photoMarkers = photoMarkers;
+    }
+
+    // Takes effect on the next clustering pass
+    void setIndividualMarkers(boolean individualMarkers) {
+        this.individualMarkers = individualMarkers;
+    }
+
+    private BitmapDescriptor getItemIcon(TreasureItem item) {
+        if (!photoMarkers) {
+            return defaultItemIcon;
+        }
+        BitmapDescriptor icon = thumbnailAtlas.get(item, this::onThumbnailReady);
+        return icon != null ? icon : thumbnailAtlas.getPlaceholder();
+    }
+
+    private void onThumbnailReady(TreasureItem item, BitmapDescriptor icon) {
+        Marker marker = getMarker(item);
+        if (photoMarkers && marker != null) {
+            marker.setIcon(icon);
+        }
+    }
+
+    @Override
+    protected boolean shouldRenderAsCluster(@NonNull Cluster<TreasureItem> cluster) {
+        // Cluster if 2 or more items are close together
+        return !individualMarkers && cluster.getSize() >= 2;
+    }
+
+    // Share of icon lookups served from the cache
+    float getIconCacheHitRate() {
+        int lookups = iconHits + iconMisses;
+        return lookups == 0 ? 0f : (float) iconHits / lookups;
+    }
+
+    // Bitmap memory allocated for cluster icons since the renderer was created
+    long getIconBytesAllocated() {
+        return iconBytesAllocated;
+    }
+
+    private BitmapDescriptor getClusterIcon(int clusterSize) {
+        String label = bucketLabel(clusterSize);
+        BitmapDescriptor icon = iconCache.get(label);
+        if (icon != null) {
+            iconHits++;
+            return icon;
+        }
+
+        iconMisses++;
+        Bitmap bitmap = createClusterIcon(label);
+        iconBytesAllocated += bitmap.getAllocationByteCount();
+        icon = BitmapDescriptorFactory.fromBitmap(bitmap);
+        iconCache.put(label, icon);
+
+        Log.d(TAG, String.format(Locale.US, "Cluster icon cache: %.1f%% hit rate, %d KB allocated",
+                getIconCacheHitRate() * 100, iconBytesAllocated / 1024));
+        return icon;
+    }
+
+    private static String bucketLabel(int clusterSize) {
+        if (clusterSize < 100) {
+            return String.valueOf(clusterSize);
+        }
+        return clusterSize < 1000 ? "100+" : "1k+";
+    }
+
+    // Creates a custom bitmap icon for clusters showing the count
+    private Bitmap createClusterIcon(String label) {
+        int size = ICON_SIZE;
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // Draw circle background
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f, circlePaint);
+
+        // Draw white border
+        canvas.drawCircle(size / 2f, size / 2f, size / 2f - 4, borderPaint);
+
+        // Draw count text
+        textPaint.setTextSize(label.length() < 3 ? 50 : 40); // Smaller text for large numbers
+        float textY = size / 2f - ((textPaint.descent() + textPaint.ascent()) / 2);
+        canvas.drawText(label, size / 2f, textY, textPaint);
+
+        return bitmap;
+    }
+}
@@ -0,0 +1,185 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.MainThread;
+
+import com.google.maps.android.clustering.ClusterManager;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link TreasureClusterAlgorithm} in step with the treasure store. The store is copied
+ * into column arrays on the main thread, a row at a time as treasures are added, and the
+ * cluster index over them is built on a worker; the ClusterManager's lock is never held while
+ * that runs.
+ *
+ * Only the first sync and removals need a build. Treasures added after that are handed to the
+ * ClusterManager as items, which the algorithm clusters on top of the index it has, so a capture
+ * costs one item rather than a rebuild. Once {@link #MAX_CHANGES} have piled up the index is
+ * rebuilt in the background, and whatever was added while that ran goes on top of the new one.
+ *
+ * Neither the viewport nor the time range changes the index: both are queries against it, so
+ * panning or moving the timeline only re-clusters.
+ */
+class TreasureClusterSync {
+
+    // Additions and removals the algorithm applies per query before the index is rebuilt
+    static final int MAX_CHANGES = 500;
+
+    private final ClusterManager<TreasureItem> clusterManager;
+    private final TreasureClusterAlgorithm algorithm;
+    private final TreasureRepository treasures;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Main thread only. A build reads the first `size` entries, so rows can be appended while it
+    // runs; anything but additions starts over in new arrays.
+    private long[] ids = new long[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private long[] timestamps = new long[0];
+    private int size;
+    private long syncedVersion = -1;
+    private long timeFrom = Long.MIN_VALUE;
+    private long timeTo = Long.MAX_VALUE;
+    private boolean released;
+    private boolean building;
+
+    // Written on the main thread; a queued build that is no longer the latest is skipped
+    private volatile int latestBuild;
+
+    TreasureClusterSync(ClusterManager<TreasureItem> clusterManager, TreasureClusterAlgorithm algorithm,
+                        TreasureRepository treasures) {
+        this.clusterManager = clusterManager;
+        this.algorithm = algorithm;
+        this.treasures = treasures;
+    }
+
+    // Only treasures captured between from and to (inclusive) are clustered, without a rebuild
+    @MainThread
+    void setTimeRange(long from, long to) {
+        if (from == timeFrom && to == timeTo) {
+            return;
+        }
+        timeFrom = from;
+        timeTo = to;
+        algorithm.setTimeRange(from, to);
+        clusterManager.cluster();
+    }
+
+    // Picks up treasures added or removed since the last call. Waits for the store to finish
+    // loading so the index is built once rather than once per loaded chunk. Only the added
+    // treasures are passed on when nothing was removed.
+    @MainThread
+    void update() {
+        long version = treasures.getVersion();
+        if (released || version == syncedVersion || !treasures.isLoaded()) {
+            return;
+        }
+        TreasureTable table = treasures.getTable();
+        BitSet added = new BitSet();
+        boolean[] reload = {syncedVersion < 0};
+        if (!reload[0] && !treasures.changesSince(syncedVersion, (row, isAddition) -> {
+            if (isAddition) {
+                added.set(row);
+            } else {
+                reload[0] = true;
+            }
+        })) {
+            reload[0] = true;
+        }
+        syncedVersion = version;
+
+        if (reload[0]) {
+            // A build may still be reading the old arrays
+            int capacity = table.size();
+            ids = new long[capacity];
+            latitudes = new double[capacity];
+            longitudes = new double[capacity];
+            timestamps = new long[capacity];
+            size = 0;
+            for (int row = 0; row < table.size(); row++) {
+                append(table, row);
+            }
+            build(table);
+            return;
+        }
+
+        List<TreasureItem> items = new ArrayList<>(added.cardinality());
+        for (int row = added.nextSetBit(0); row >= 0; row = added.nextSetBit(row + 1)) {
+            append(table, row);
+            items.add(item(table, size - 1));
+        }
+        clusterManager.addItems(items);
+        clusterManager.cluster();
+        if (!building && algorithm.getSnapshot().getChangeCount() > MAX_CHANGES) {
+            build(table);
+        }
+    }
+
+    // Stops the background work; a build still running is dropped
+    @MainThread
+    void release() {
+        released = true;
+        worker.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void append(TreasureTable table, int row) {
+        if (size == ids.length) {
+            int capacity = Math.max(16, size * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        ids[size] = table.getId(row);
+        latitudes[size] = table.getLatitude(row);
+        longitudes[size] = table.getLongitude(row);
+        timestamps[size] = table.getTimestamp(row);
+        size++;
+    }
+
+    private TreasureItem item(TreasureTable table, int i) {
+        return new TreasureItem(table, ids[i], latitudes[i], longitudes[i], timestamps[i]);
+    }
+
+    private void build(TreasureTable table) {
+        building = true;
+        int build = ++latestBuild;
+        long[] buildIds = ids;
+        double[] buildLatitudes = latitudes;
+        double[] buildLongitudes = longitudes;
+        long[] buildTimestamps = timestamps;
+        int n = size;
+        worker.execute(() -> {
+            if (build != latestBuild) {
+                return;
+            }
+            TreasureClusterAlgorithm.Snapshot snapshot = algorithm.index(
+                    table, buildIds, buildLatitudes, buildLongitudes, buildTimestamps, n);
+            mainHandler.post(() -> {
+                if (released || build != latestBuild) {
+                    return;
+                }
+                building = false;
+                // Treasures added while the build ran go on top of it, as they did on the old one
+                List<TreasureItem> items = new ArrayList<>(size - n);
+                for (int i = n; i < size; i++) {
+                    items.add(item(table, i));
+                }
+                algorithm.setSnapshot(snapshot.plus(items));
+                clusterManager.cluster();
+            });
+        });
+    }
+}
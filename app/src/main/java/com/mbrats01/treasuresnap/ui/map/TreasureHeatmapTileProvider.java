@@ -0,0 +1,301 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Heatmap tiles for a TileOverlay, rasterised on the map's tile threads.
+ *
+ * Each tile bins the treasures around it into a small density grid, blurs it and maps the
+ * density through a color gradient. Rendered tiles go to a {@link HeatmapTileCache}; when
+ * treasures are added only the tiles they touch are dropped from it, at every zoom level.
+ *
+ * While the timeline limits the map to a time range, tiles show only the treasures inside it.
+ * They are kept in a small memory cache instead, so the disk cache always holds whole tiles.
+ */
+class TreasureHeatmapTileProvider implements TileProvider {
+
+    private static final int TILE_SIZE = 256;
+    // Density cells per tile side, and the blur radius in cells
+    private static final int GRID = 64;
+    private static final int CELL = TILE_SIZE / GRID;
+    private static final int BLUR = 3;
+    private static final int MAX_ZOOM = 21;
+    // Blurred density at which the gradient reaches its last color
+    private static final float FULL_DENSITY = 40f;
+    // Adding more treasures than this at once drops the whole cache instead of single tiles
+    private static final int MAX_TILE_INVALIDATIONS = 1000;
+    private static final int CACHED_RANGE_TILES = 64;
+    private static final byte[] EMPTY_TILE = new byte[0];
+
+    private final TreasurePointsSync pointsSync;
+    private final HeatmapTileCache cache;
+    // Called on the main thread when cached tiles were dropped and should be requested again
+    private final Runnable onTilesChanged;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final float[] kernel = gaussianKernel(BLUR);
+    private final int[] gradient = gradient();
+
+    // Current snapshot and time range; changed together with the cache invalidation under the lock
+    private final Object lock = new Object();
+    private HeatmapPoints points = HeatmapPoints.EMPTY;
+    private long timeFrom = Long.MIN_VALUE;
+    private long timeTo = Long.MAX_VALUE;
+    // Tiles for the current time range, dropped whenever it or the points change
+    private final LruCache<Long, byte[]> rangeTiles = new LruCache<>(CACHED_RANGE_TILES);
+
+    TreasureHeatmapTileProvider(TreasureRepository treasures, HeatmapTileCache cache, Runnable onTilesChanged) {
+        this.pointsSync = new TreasurePointsSync(treasures, this::onPointsChanged);
+        this.cache = cache;
+        this.onTilesChanged = onTilesChanged;
+    }
+
+    // Picks up treasures added since the last call; the snapshot is updated in the background
+    @MainThread
+    void sync() {
+        pointsSync.sync();
+    }
+
+    // Only treasures captured between from and to (inclusive) are drawn
+    @MainThread
+    void setTimeRange(long from, long to) {
+        synchronized (lock) {
+            if (from == timeFrom && to == timeTo) {
+                return;
+            }
+            timeFrom = from;
+            timeTo = to;
+            rangeTiles.evictAll();
+        }
+        onTilesChanged.run();
+    }
+
+    // Stops the background work; tiles can still be served from what was synced
+    @MainThread
+    void release() {
+        pointsSync.release();
+    }
+
+    @WorkerThread
+    private void onPointsChanged(HeatmapPoints newPoints, TreasurePointsSync.Change change) {
+        float[] xs = change.xs;
+        float[] ys = change.ys;
+        long[] ids = change.ids;
+        synchronized (lock) {
+            points = newPoints;
+            rangeTiles.evictAll();
+            if (change.initial) {
+                // Tiles on disk are still good unless a treasure they don't include touches them
+                long cachedMaxId = cache.readStamp();
+                int newer = 0;
+                for (long id : ids) {
+                    if (id > cachedMaxId) {
+                        newer++;
+                    }
+                }
+                if (cachedMaxId < 0 || cachedMaxId > change.maxId || newer > MAX_TILE_INVALIDATIONS) {
+                    cache.clear();
+                } else {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (ids[i] > cachedMaxId) {
+                            invalidateAround(xs[i], ys[i]);
+                        }
+                    }
+                }
+                cache.trim();
+            } else if (change.rebuilt || xs.length > MAX_TILE_INVALIDATIONS) {
+                cache.clear();
+            } else {
+                for (int i = 0; i < xs.length; i++) {
+                    invalidateAround(xs[i], ys[i]);
+                }
+            }
+            cache.writeStamp(change.maxId);
+        }
+        mainHandler.post(onTilesChanged);
+    }
+
+    // Drops every cached tile whose blurred area contains the point
+    private void invalidateAround(float x, float y) {
+        double margin = (double) BLUR / GRID;
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            int tiles = 1 << zoom;
+            int fromX = Math.max(0, (int) Math.floor(x * tiles - margin));
+            int toX = Math.min(tiles - 1, (int) Math.floor(x * tiles + margin));
+            int fromY = Math.max(0, (int) Math.floor(y * tiles - margin));
+            int toY = Math.min(tiles - 1, (int) Math.floor(y * tiles + margin));
+            for (int tileY = fromY; tileY <= toY; tileY++) {
+                for (int tileX = fromX; tileX <= toX; tileX++) {
+                    cache.invalidate(zoom, tileX, tileY);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        if (zoom > MAX_ZOOM) {
+            return NO_TILE;
+        }
+        long key = ((long) zoom << 58) | ((long) x << 29) | y;
+        HeatmapPoints snapshot;
+        long from;
+        long to;
+        synchronized (lock) {
+            snapshot = points;
+            from = timeFrom;
+            to = timeTo;
+        }
+        boolean allTimes = from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+        byte[] png = allTimes ? cache.get(zoom, x, y) : rangeTiles.get(key);
+        if (png == null) {
+            png = render(snapshot, from, to, x, y, zoom);
+            synchronized (lock) {
+                // Don't cache a tile made from points or a range that were replaced meanwhile
+                if (points == snapshot && timeFrom == from && timeTo == to) {
+                    if (allTimes) {
+                        cache.put(zoom, x, y, png);
+                    } else {
+                        rangeTiles.put(key, png);
+                    }
+                }
+            }
+        }
+        return png.length == 0 ? NO_TILE : new Tile(TILE_SIZE, TILE_SIZE, png);
+    }
+
+    @WorkerThread
+    private byte[] render(HeatmapPoints snapshot, long from, long to, int tileX, int tileY, int zoom) {
+        // Density grid with room for the blur around the tile
+        int size = GRID + 2 * BLUR;
+        float[] density = new float[size * size];
+        double cellWorld = 1.0 / ((double) (1 << zoom) * GRID);
+        double minX = tileX * GRID * cellWorld - BLUR * cellWorld;
+        double minY = tileY * GRID * cellWorld - BLUR * cellWorld;
+        int[] found = {0};
+        snapshot.query(minX, minY, minX + size * cellWorld, minY + size * cellWorld, from, to, (x, y) -> {
+            int cellX = Math.min(size - 1, (int) ((x - minX) / cellWorld));
+            int cellY = Math.min(size - 1, (int) ((y - minY) / cellWorld));
+            density[cellY * size + cellX]++;
+            found[0]++;
+        });
+        if (found[0] == 0) {
+            return EMPTY_TILE;
+        }
+
+        float[] blurred = blur(density, size);
+        int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        float scale = 1f / (float) Math.log1p(FULL_DENSITY);
+        for (int py = 0; py < TILE_SIZE; py++) {
+            for (int px = 0; px < TILE_SIZE; px++) {
+                float value = sample(blurred, (px + 0.5f) / CELL - 0.5f, (py + 0.5f) / CELL - 0.5f);
+                if (value > 0.01f) {
+                    float t = Math.min(1f, (float) Math.log1p(value) * scale);
+                    pixels[py * TILE_SIZE + px] = gradient[(int) (t * (gradient.length - 1))];
+                }
+            }
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(pixels, TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    // Separable gaussian blur, returning only the GRID x GRID cells of the tile itself
+    private float[] blur(float[] density, int size) {
+        float[] horizontal = new float[size * GRID];
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < GRID; x++) {
+                float sum = 0;
+                for (int k = -BLUR; k <= BLUR; k++) {
+                    sum += density[y * size + x + BLUR + k] * kernel[k + BLUR];
+                }
+                horizontal[y * GRID + x] = sum;
+            }
+        }
+        float[] result = new float[GRID * GRID];
+        for (int y = 0; y < GRID; y++) {
+            for (int x = 0; x < GRID; x++) {
+                float sum = 0;
+                for (int k = -BLUR; k <= BLUR; k++) {
+                    sum += horizontal[(y + BLUR + k) * GRID + x] * kernel[k + BLUR];
+                }
+                result[y * GRID + x] = sum;
+            }
+        }
+        return result;
+    }
+
+    // Bilinear sample of the blurred grid at fractional cell coordinates
+    private static float sample(float[] grid, float x, float y) {
+        x = Math.max(0, Math.min(GRID - 1, x));
+        y = Math.max(0, Math.min(GRID - 1, y));
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(GRID - 1, x0 + 1);
+        int y1 = Math.min(GRID - 1, y0 + 1);
+        float fx = x - x0;
+        float fy = y - y0;
+        float top = grid[y0 * GRID + x0] * (1 - fx) + grid[y0 * GRID + x1] * fx;
+        float bottom = grid[y1 * GRID + x0] * (1 - fx) + grid[y1 * GRID + x1] * fx;
+        return top * (1 - fy) + bottom * fy;
+    }
+
+    private static float[] gaussianKernel(int radius) {
+        float[] kernel = new float[2 * radius + 1];
+        float sigma = Math.max(1f, radius / 2f);
+        float sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            kernel[i + radius] = (float) Math.exp(-(i * i) / (2 * sigma * sigma));
+            sum += kernel[i + radius];
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        return kernel;
+    }
+
+    // Transparent green through yellow to red, the usual heatmap colors
+    private static int[] gradient() {
+        int[] stops = {
+                Color.argb(0, 102, 225, 0),
+                Color.argb(170, 102, 225, 0),
+                Color.argb(210, 255, 235, 0),
+                Color.argb(235, 255, 0, 0)
+        };
+        float[] positions = {0f, 0.25f, 0.6f, 1f};
+        int[] colors = new int[256];
+        for (int i = 0; i < colors.length; i++) {
+            float t = i / 255f;
+            int stop = 1;
+            while (stop < positions.length - 1 && t > positions[stop]) {
+                stop++;
+            }
+            float f = (t - positions[stop - 1]) / (positions[stop] - positions[stop - 1]);
+            colors[i] = mix(stops[stop - 1], stops[stop], f);
+        }
+        return colors;
+    }
+
+    private static int mix(int from, int to, float f) {
+        return Color.argb(
+                Math.round(Color.alpha(from) + (Color.alpha(to) - Color.alpha(from)) * f),
+                Math.round(Color.red(from) + (Color.red(to) - Color.red(from)) * f),
+                Math.round(Color.green(from) + (Color.green(to) - Color.green(from)) * f),
+                Math.round(Color.blue(from) + (Color.blue(to) - Color.blue(from)) * f));
+    }
+}
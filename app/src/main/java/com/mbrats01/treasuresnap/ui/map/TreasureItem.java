@@ -4,35 +4,53 @@ import androidx.annotation.Nullable;
 
 import com.google.maps.android.clustering.ClusterItem;
 import com.google.android.gms.maps.model.LatLng;
+import com.mbrats01.treasuresnap.data.PhotoInfo;
+import com.mbrats01.treasuresnap.data.TreasureTable;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
-
+// Lightweight cluster item. The position and time are copied when the item is made, on the main
+// thread, because clustering reads them on a background thread while the table may be growing;
+// the photo is looked up by id, only when the item is shown.
 public class TreasureItem implements ClusterItem {
+    private static final String TITLE = "Treasure 📸";
+
+    private final TreasureTable table;
+    private final long id;
     private final LatLng position;
-    private final String title;
-    private final String snippet;
-    private final String photoPath;
     private final long timestamp;
+    // Formatted on first use, most items are never shown in a snippet
+    private String snippet;
 
-    public TreasureItem(MapFragment.Treasure treasure) {
-        this.position = new LatLng(treasure.latitude, treasure.longitude);
-        this.title = "Treasure 📸";
-        this.snippet = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault())
-                .format(new Date(treasure.timestamp));
-        this.photoPath = treasure.photoPath;
-        this.timestamp = treasure.timestamp;
+    public TreasureItem(TreasureTable table, long id) {
+        this.table = table;
+        this.id = id;
+        int row = table.rowOf(id);
+        this.position = new LatLng(table.getLatitude(row), table.getLongitude(row));
+        this.timestamp = table.getTimestamp(row);
+    }
+
+    // From a copy of the row taken earlier, e.g. for a clustering snapshot; any thread
+    TreasureItem(TreasureTable table, long id, double latitude, double longitude, long timestamp) {
+        this.table = table;
+        this.id = id;
+        this.position = new LatLng(latitude, longitude);
+        this.timestamp = timestamp;
     }
 
     @Override
-    public LatLng getPosition() { return position; }
+    public LatLng getPosition() {
+        return position;
+    }
 
     @Override
-    public String getTitle() { return title; }
+    public String getTitle() { return TITLE; }
 
     @Override
-    public String getSnippet() { return snippet; }
+    public String getSnippet() {
+        if (snippet == null) {
+            snippet = TimestampFormatter.getDefault().format(getTimestamp());
+        }
+        return snippet;
+    }
 
     @Nullable
     @Override
@@ -40,9 +58,33 @@ public class TreasureItem implements ClusterItem {
         return 0f;
     }
 
-    public String getPhotoPath() { return photoPath; }
+    public long getId() { return id; }
+
+    // Current row of the treasure, looked up by id; main thread only
+    public int getRow() { return table.rowOf(id); }
+
+    public double getLatitude() { return position.latitude; }
+
+    public double getLongitude() { return position.longitude; }
+
+    public String getPhotoPath() { return table.getPhotoPath(getRow()); }
+
+    public PhotoInfo getPhotoInfo() { return table.getPhotoInfo(getRow()); }
 
     public long getTimestamp() {
         return timestamp;
     }
-}
\ No newline at end of file
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TreasureItem)) return false;
+        TreasureItem other = (TreasureItem) o;
+        return table == other.table && id == other.id;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+}
@@ -0,0 +1,106 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mbrats01.treasuresnap.R;
+import com.mbrats01.treasuresnap.image.ThumbnailLoader;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Treasure rows for the cluster bottom sheet. Rows are exposed one page at a time: binding a row
+ * near the end of the current page reveals the next page and prefetches its thumbnails, so
+ * opening a cluster costs the same whether it holds 2 or 2,000 treasures.
+ */
+class TreasureListAdapter extends RecyclerView.Adapter<TreasureListAdapter.ViewHolder> {
+
+    static final int PAGE_SIZE = 20;
+    // Reveal the next page when a row this close to the end of the current one is bound
+    private static final int PREFETCH_DISTANCE = 5;
+
+    private final List<TreasureItem> items;
+    private final ThumbnailLoader thumbnailLoader;
+    private int shownCount;
+
+    TreasureListAdapter(List<TreasureItem> items, ThumbnailLoader thumbnailLoader) {
+        this.items = items;
+        this.thumbnailLoader = thumbnailLoader;
+        this.shownCount = Math.min(PAGE_SIZE, items.size());
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View itemView = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.treasure_item, parent, false);
+        return new ViewHolder(itemView);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        TreasureItem item = items.get(position);
+
+        // Load and display image with correct orientation
+        thumbnailLoader.load(item.getPhotoPath(), item.getPhotoInfo(), holder.imageView);
+
+        // Display location coordinates
+        holder.locationText.setText(String.format(Locale.getDefault(),
+                "📍 %.6f, %.6f", item.getLatitude(), item.getLongitude()));
+
+        // Display capture timestamp
+        holder.timestampText.setText("📸 " + item.getSnippet());
+
+        if (position >= shownCount - PREFETCH_DISTANCE && shownCount < items.size()) {
+            // Adapter contents can't change during a layout pass, so reveal the page right after it
+            holder.itemView.post(() -> showNextPage(holder.imageView));
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        // Stop decoding a photo the row no longer shows
+        thumbnailLoader.cancel(holder.imageView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return shownCount;
+    }
+
+    private void showNextPage(ImageView sizeReference) {
+        int start = shownCount;
+        if (start >= items.size()) {
+            return;
+        }
+        shownCount = Math.min(start + PAGE_SIZE, items.size());
+        notifyItemRangeInserted(start, shownCount - start);
+
+        // Warm the thumbnails of the page after this one
+        int prefetchEnd = Math.min(shownCount + PAGE_SIZE, items.size());
+        for (int i = shownCount; i < prefetchEnd; i++) {
+            TreasureItem next = items.get(i);
+            thumbnailLoader.prefetch(next.getPhotoPath(), next.getPhotoInfo(), sizeReference);
+        }
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final ImageView imageView;
+        final TextView locationText;
+        final TextView timestampText;
+
+        ViewHolder(@NonNull View itemView) {
+            super(itemView);
+            imageView = itemView.findViewById(R.id.treasure_image);
+            locationText = itemView.findViewById(R.id.treasure_location);
+            timestampText = itemView.findViewById(R.id.treasure_timestamp);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.mbrats01.treasuresnap.data.TreasureClusterIndex;
+import com.mbrats01.treasuresnap.data.TreasureRepository;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link HeatmapPoints} snapshot of the treasure store for a tile provider. Changes are
+ * collected on the main thread; the new snapshot is built on a worker and handed to the
+ * listener there, together with the points that were added.
+ */
+class TreasurePointsSync {
+
+    interface Listener {
+        @WorkerThread
+        void onPointsChanged(HeatmapPoints points, Change change);
+    }
+
+    // The points added since the previous snapshot, or all of them for an initial or rebuilt one
+    static final class Change {
+        final float[] xs;
+        final float[] ys;
+        final long[] ids;
+        final boolean initial;
+        final boolean rebuilt;
+        // Highest treasure id in the snapshot
+        final long maxId;
+
+        Change(float[] xs, float[] ys, long[] ids, boolean initial, boolean rebuilt, long maxId) {
+            this.xs = xs;
+            this.ys = ys;
+            this.ids = ids;
+            this.initial = initial;
+            this.rebuilt = rebuilt;
+            this.maxId = maxId;
+        }
+    }
+
+    private final TreasureRepository treasures;
+    private final Listener listener;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // Worker thread only
+    private HeatmapPoints points = HeatmapPoints.EMPTY;
+
+    // Main thread only
+    private long syncedVersion = -1;
+
+    TreasurePointsSync(TreasureRepository treasures, Listener listener) {
+        this.treasures = treasures;
+        this.listener = listener;
+    }
+
+    // Picks up treasures added since the last call. Waits for the store to finish loading so
+    // listeners see one initial snapshot instead of one per loaded chunk.
+    @MainThread
+    void sync() {
+        long version = treasures.getVersion();
+        if (version == syncedVersion || !treasures.isLoaded()) {
+            return;
+        }
+        TreasureTable table = treasures.getTable();
+        boolean initial = syncedVersion < 0;
+
+        // Collect the new rows; anything but additions means starting over
+        BitSet added = new BitSet();
+        boolean[] rebuild = {initial};
+        if (!initial && !treasures.changesSince(syncedVersion, (row, isAddition) -> {
+            if (isAddition) {
+                added.set(row);
+            } else {
+                rebuild[0] = true;
+            }
+        })) {
+            rebuild[0] = true;
+        }
+        syncedVersion = version;
+
+        if (rebuild[0]) {
+            added.set(0, table.size());
+        }
+        int n = added.cardinality();
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        long[] ids = new long[n];
+        long[] timestamps = new long[n];
+        int i = 0;
+        for (int row = added.nextSetBit(0); row >= 0; row = added.nextSetBit(row + 1), i++) {
+            xs[i] = (float) TreasureClusterIndex.longitudeToX(table.getLongitude(row));
+            ys[i] = (float) TreasureClusterIndex.latitudeToY(table.getLatitude(row));
+            ids[i] = table.getId(row);
+            timestamps[i] = table.getTimestamp(row);
+        }
+        // Ids grow with every treasure added, so the last row holds the highest one
+        long maxId = table.size() == 0 ? 0 : table.getId(table.size() - 1);
+
+        Change change = new Change(xs, ys, ids, initial, rebuild[0], maxId);
+        worker.execute(() -> {
+            HeatmapPoints base = change.rebuilt ? HeatmapPoints.EMPTY : points;
+            points = base.plus(xs, ys, timestamps, n);
+            listener.onPointsChanged(points, change);
+        });
+    }
+
+    // Stops the background work; the last snapshot stays with the listener
+    @MainThread
+    void release() {
+        worker.shutdown();
+    }
+}
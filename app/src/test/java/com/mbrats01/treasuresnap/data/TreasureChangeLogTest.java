@@ -0,0 +1,52 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TreasureChangeLogTest {
+
+    @Test
+    public void changesSince_onlyReturnsNewerChanges() {
+        TreasureChangeLog log = new TreasureChangeLog(16);
+        log.recordAdded(0);
+        log.recordAdded(1, 3);
+        long rendered = log.getVersion();
+        log.recordAdded(3);
+        log.recordRemoved(1);
+
+        List<String> changes = new ArrayList<>();
+        assertTrue(log.changesSince(rendered, (row, added) -> changes.add((added ? "+" : "-") + row)));
+        assertEquals(4, log.getVersion());
+        assertEquals("[+3, -1]", changes.toString());
+    }
+
+    @Test
+    public void unchangedVersion_visitsNothing() {
+        TreasureChangeLog log = new TreasureChangeLog(16);
+        log.recordAdded(0);
+        assertTrue(log.changesSince(log.getVersion(), (row, added) -> fail()));
+    }
+
+    @Test
+    public void droppedChanges_requireRebuild() {
+        TreasureChangeLog log = new TreasureChangeLog(4);
+        long rendered = log.getVersion();
+        for (int row = 0; row < 5; row++) {
+            log.recordAdded(row);
+        }
+        assertFalse(log.changesSince(rendered, (row, added) -> fail()));
+        assertTrue(log.changesSince(1, (row, added) -> { }));
+    }
+
+    @Test
+    public void partiallyDroppedRange_requiresRebuild() {
+        TreasureChangeLog log = new TreasureChangeLog(4);
+        log.recordAdded(0, 6);
+        assertFalse(log.changesSince(0, (row, added) -> fail()));
+        assertTrue(log.changesSince(1, (row, added) -> fail()));
+    }
+}
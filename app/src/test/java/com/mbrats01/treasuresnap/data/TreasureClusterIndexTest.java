@@ -0,0 +1,142 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TreasureClusterIndexTest {
+
+    private static final int N = 20_000;
+
+    @Test
+    public void everyZoom_partitionsAllPoints() {
+        double[][] points = randomPoints(new Random(1), N);
+        TreasureClusterIndex index = TreasureClusterIndex.build(points[0], points[1], N, 0, 16, 100, 256);
+
+        for (int zoom = 0; zoom <= 17; zoom++) {
+            BitSet seen = new BitSet(N);
+            int[] total = {0};
+            final int z = zoom;
+            index.getClusters(zoom, (clusterZoom, node, lat, lon, count) -> {
+                assertEquals(z, clusterZoom);
+                int[] leaves = {0};
+                index.getLeaves(clusterZoom, node, leaf -> {
+                    assertFalse("Leaf " + leaf + " in two clusters", seen.get(leaf));
+                    seen.set(leaf);
+                    leaves[0]++;
+                });
+                assertEquals(count, leaves[0]);
+                total[0] += count;
+            });
+            assertEquals(N, total[0]);
+            assertEquals(N, seen.cardinality());
+        }
+    }
+
+    @Test
+    public void coarserZooms_haveFewerClusters() {
+        double[][] points = randomPoints(new Random(2), N);
+        TreasureClusterIndex index = TreasureClusterIndex.build(points[0], points[1], N, 0, 16, 100, 256);
+
+        assertEquals(N, index.getNodeCount(17));
+        for (int zoom = 0; zoom < 17; zoom++) {
+            assertTrue(index.getNodeCount(zoom) <= index.getNodeCount(zoom + 1));
+        }
+        assertTrue(index.getNodeCount(0) < 100);
+    }
+
+    @Test
+    public void viewportQuery_onlyReturnsVisibleClusters() {
+        double[][] points = randomPoints(new Random(3), N);
+        TreasureClusterIndex index = TreasureClusterIndex.build(points[0], points[1], N, 0, 16, 100, 256);
+
+        index.getClusters(12, 35.0, 33.0, 35.3, 33.6, (zoom, node, lat, lon, count) -> {
+            assertTrue(lat >= 35.0 - 1e-9 && lat <= 35.3 + 1e-9);
+            assertTrue(lon >= 33.0 - 1e-9 && lon <= 33.6 + 1e-9);
+        });
+
+        int[] acrossAntimeridian = {0};
+        index.getClusters(17, -90, 170, 90, -170, (zoom, node, lat, lon, count) -> {
+            assertTrue(lon >= 170 || lon <= -170);
+            acrossAntimeridian[0]++;
+        });
+        assertTrue(acrossAntimeridian[0] > 0);
+    }
+
+    @Test
+    public void timeRangeQuery_reportsEveryPointInRangeOnce() {
+        double[][] points = randomPoints(new Random(4), N);
+        long[] timestamps = new long[N];
+        Random random = new Random(5);
+        for (int i = 0; i < N; i++) {
+            timestamps[i] = random.nextInt(1_000);
+        }
+        TreasureClusterIndex index = TreasureClusterIndex.build(points[0], points[1], timestamps, N, 0, 16, 100, 256);
+        long from = 250;
+        long to = 499;
+        int inRange = 0;
+        for (long timestamp : timestamps) {
+            if (timestamp >= from && timestamp <= to) {
+                inRange++;
+            }
+        }
+
+        for (int zoom : new int[]{0, 8, 17}) {
+            BitSet seen = new BitSet(N);
+            int[] total = {0};
+            int[] clusters = {0};
+            final int z = zoom;
+            index.getClusters(zoom, -90, -180, 90, 180, from, to, (clusterZoom, node, lat, lon, count) -> {
+                // The same clusters, only with fewer points
+                assertEquals(z, clusterZoom);
+                clusters[0]++;
+                int[] leaves = {0};
+                index.getLeaves(clusterZoom, node, from, to, leaf -> {
+                    assertTrue(timestamps[leaf] >= from && timestamps[leaf] <= to);
+                    assertFalse("Leaf " + leaf + " in two clusters", seen.get(leaf));
+                    seen.set(leaf);
+                    leaves[0]++;
+                });
+                assertEquals(count, leaves[0]);
+                total[0] += count;
+            });
+            assertEquals(inRange, total[0]);
+            assertEquals(inRange, seen.cardinality());
+            assertTrue(clusters[0] <= index.getNodeCount(zoom));
+        }
+
+        // An open range is the plain query
+        int[] unfiltered = {0};
+        index.getClusters(8, -90, -180, 90, 180, Long.MIN_VALUE, Long.MAX_VALUE,
+                (clusterZoom, node, lat, lon, count) -> unfiltered[0]++);
+        assertEquals(index.getNodeCount(8), unfiltered[0]);
+    }
+
+    @Test
+    public void projection_roundTrips() {
+        for (double lat = -85; lat <= 85; lat += 17) {
+            double y = TreasureClusterIndex.latitudeToY(lat);
+            assertEquals(lat, TreasureClusterIndex.yToLatitude(y), 1e-9);
+        }
+        assertEquals(33.3, TreasureClusterIndex.xToLongitude(TreasureClusterIndex.longitudeToX(33.3)), 1e-9);
+    }
+
+    // Half the points in a hotspot, the rest spread over the world
+    static double[][] randomPoints(Random random, int n) {
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0) {
+                lats[i] = 35.17 + random.nextGaussian() * 0.05;
+                lons[i] = 33.36 + random.nextGaussian() * 0.05;
+            } else {
+                lats[i] = random.nextDouble() * 170 - 85;
+                lons[i] = random.nextDouble() * 360 - 180;
+            }
+        }
+        return new double[][]{lats, lons};
+    }
+}
@@ -0,0 +1,49 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TreasureIdIndexTest {
+
+    @Test
+    public void putGetRemove_matchHashMap() {
+        TreasureIdIndex index = new TreasureIdIndex();
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 200_000; i++) {
+            // Small key range so puts, overwrites and removes all collide often
+            long id = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(id);
+                assertEquals(removed == null ? -1 : removed, index.remove(id));
+            } else {
+                expected.put(id, i);
+                index.put(id, i);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (long id = 1; id <= 5_000; id++) {
+            Integer row = expected.get(id);
+            assertEquals(row == null ? -1 : row, index.get(id));
+        }
+    }
+
+    @Test
+    public void missingIds_areNotFound() {
+        TreasureIdIndex index = new TreasureIdIndex();
+        index.put(42, 0);
+        assertEquals(-1, index.get(Treasure.NO_ID));
+        assertEquals(-1, index.get(43));
+        assertEquals(-1, index.remove(43));
+        index.clear();
+        assertEquals(-1, index.get(42));
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,228 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TreasureSpatialIndexTest {
+
+    @Test
+    public void queries_matchBruteForce() {
+        Random random = new Random(42);
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        addRandomRows(table, index, random, 20_000);
+
+        for (int i = 0; i < 500; i++) {
+            assertQueryMatches(table, index, null, randomBox(random));
+        }
+    }
+
+    @Test
+    public void insertAndRemove_matchBruteForce() {
+        Random random = new Random(7);
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        BitSet removed = new BitSet();
+
+        for (int round = 0; round < 20; round++) {
+            addRandomRows(table, index, random, 1_000);
+            for (int i = 0; i < 600; i++) {
+                int row = random.nextInt(table.size());
+                assertEquals(!removed.get(row), index.remove(row));
+                removed.set(row);
+            }
+            assertEquals(table.size() - removed.cardinality(), index.size());
+            for (int i = 0; i < 50; i++) {
+                assertQueryMatches(table, index, removed, randomBox(random));
+            }
+        }
+    }
+
+    @Test
+    public void bulkInsert_matchesBruteForce() {
+        Random random = new Random(13);
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        // Bulk ranges into an empty tree and into one already split, mixed with single inserts
+        for (int round = 0; round < 5; round++) {
+            addRandomRows(table, index, random, 500);
+            int from = table.size();
+            for (int i = 0; i < 10_000; i++) {
+                boolean hotspot = random.nextBoolean();
+                table.add("p.jpg", hotspot ? 35.17 + random.nextGaussian() * 0.01 : random.nextDouble() * 180 - 90,
+                        hotspot ? 33.36 + random.nextGaussian() * 0.01 : random.nextDouble() * 360 - 180, i);
+            }
+            index.insertRange(from, table.size());
+            assertEquals(table.size(), index.size());
+            for (int i = 0; i < 100; i++) {
+                assertQueryMatches(table, index, null, randomBox(random));
+            }
+        }
+        assertEquals(table.size(), index.query(-90, -180, 90, 180, row -> { }));
+    }
+
+    @Test
+    public void duplicatePoints_doNotSplitForever() {
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        for (int i = 0; i < 5_000; i++) {
+            index.insert(table.add("p.jpg", 35.0, 33.0, i));
+        }
+        assertEquals(5_000, index.query(34, 32, 36, 34, row -> { }));
+        assertEquals(0, index.query(36, 32, 37, 34, row -> { }));
+
+        int from = table.size();
+        for (int i = 0; i < 5_000; i++) {
+            table.add("p.jpg", 35.0, 33.0, i);
+        }
+        index.insertRange(from, table.size());
+        assertEquals(10_000, index.query(34, 32, 36, 34, row -> { }));
+    }
+
+    @Test
+    public void boxAcrossAntimeridian() {
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        index.insert(table.add("a.jpg", 0, 179.5, 0));
+        index.insert(table.add("b.jpg", 0, -179.5, 0));
+        index.insert(table.add("c.jpg", 0, 0, 0));
+
+        int[] rows = collect(index, -1, 179, 1, -179);
+        assertArrayEquals(new int[]{0, 1}, rows);
+    }
+
+    @Test
+    public void nearest_matchesBruteForce() {
+        Random random = new Random(21);
+        TreasureTable table = new TreasureTable();
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        addRandomRows(table, index, random, 20_000);
+        // Right across the antimeridian and next to a pole, where boxes and distances disagree most
+        index.insert(table.add("p.jpg", 10, 179.999, 0));
+        index.insert(table.add("p.jpg", 89.9, 0, 0));
+
+        double[][] queries = {{10, -179.999}, {89.95, 180}, {-90, 0}, {35.17, 33.36}};
+        for (int q = 0; q < 200; q++) {
+            double[] query = q < queries.length ? queries[q]
+                    : new double[]{random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180};
+            int k = 1 + random.nextInt(50);
+            double[] expected = bruteForceDistances(table, query[0], query[1]);
+
+            double[] actual = new double[k];
+            int[] count = {0};
+            double[] last = {0};
+            assertEquals(k, index.nearest(query[0], query[1], k, (row, distance) -> {
+                assertEquals(GreatCircle.distanceMeters(query[0], query[1],
+                        table.getLatitude(row), table.getLongitude(row)), distance, 1e-6);
+                assertTrue(distance >= last[0]);
+                last[0] = distance;
+                actual[count[0]++] = distance;
+            }));
+            assertArrayEquals(Arrays.toString(query), Arrays.copyOf(expected, k), actual, 1e-6);
+        }
+        assertEquals(1, index.nearest(10, -179.999, 5, 1000, (row, distance) -> assertTrue(distance <= 1000)));
+    }
+
+    // Timing lives in the :benchmark module (SpatialQueryBenchmark.nearest)
+    @Test
+    public void nearest_overManyTreasures_alwaysFindsK() {
+        Random random = new Random(5);
+        TreasureTable table = new TreasureTable(100_000);
+        for (int i = 0; i < 100_000; i++) {
+            boolean hotspot = random.nextBoolean();
+            table.add("p.jpg", hotspot ? 35.17 + random.nextGaussian() * 0.05 : random.nextDouble() * 180 - 90,
+                    hotspot ? 33.36 + random.nextGaussian() * 0.05 : random.nextDouble() * 360 - 180, i);
+        }
+        TreasureSpatialIndex index = new TreasureSpatialIndex(table);
+        index.insertRange(0, table.size());
+
+        for (int q = 0; q < 200; q++) {
+            boolean hotspot = q % 2 == 0;
+            double lat = hotspot ? 35.17 + random.nextGaussian() * 0.05 : random.nextDouble() * 180 - 90;
+            double lon = hotspot ? 33.36 + random.nextGaussian() * 0.05 : random.nextDouble() * 360 - 180;
+            double[] last = {0};
+            assertEquals(20, index.nearest(lat, lon, 20, (row, distance) -> {
+                assertTrue(distance >= last[0]);
+                last[0] = distance;
+            }));
+        }
+    }
+
+    private static double[] bruteForceDistances(TreasureTable table, double lat, double lon) {
+        double[] distances = new double[table.size()];
+        for (int row = 0; row < table.size(); row++) {
+            distances[row] = GreatCircle.distanceMeters(lat, lon, table.getLatitude(row), table.getLongitude(row));
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    private static void addRandomRows(TreasureTable table, TreasureSpatialIndex index, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            double lat;
+            double lon;
+            if (random.nextBoolean()) {
+                // Hotspot around Nicosia
+                lat = 35.17 + random.nextGaussian() * 0.05;
+                lon = 33.36 + random.nextGaussian() * 0.05;
+            } else {
+                lat = random.nextDouble() * 180 - 90;
+                lon = random.nextDouble() * 360 - 180;
+            }
+            index.insert(table.add("p.jpg", lat, lon, i));
+        }
+    }
+
+    private static double[] randomBox(Random random) {
+        double size = random.nextBoolean() ? random.nextDouble() * 0.2 : random.nextDouble() * 120;
+        double south = Math.max(-90, random.nextDouble() * 180 - 90 - size / 2);
+        double west = random.nextDouble() * 360 - 180;
+        double east = west + size;
+        if (east > 180) {
+            east -= 360;
+        }
+        return new double[]{south, west, Math.min(90, south + size), east};
+    }
+
+    private static void assertQueryMatches(TreasureTable table, TreasureSpatialIndex index,
+                                           BitSet removed, double[] box) {
+        int[] expected = bruteForce(table, removed, box);
+        int[] actual = collect(index, box[0], box[1], box[2], box[3]);
+        assertArrayEquals("Box " + Arrays.toString(box), expected, actual);
+    }
+
+    private static int[] bruteForce(TreasureTable table, BitSet removed, double[] box) {
+        int[] rows = new int[table.size()];
+        int count = 0;
+        for (int row = 0; row < table.size(); row++) {
+            if (removed != null && removed.get(row)) continue;
+            double lat = table.getLatitude(row);
+            double lon = table.getLongitude(row);
+            boolean inLon = box[1] <= box[3]
+                    ? lon >= box[1] && lon <= box[3]
+                    : lon >= box[1] || lon <= box[3];
+            if (lat >= box[0] && lat <= box[2] && inLon) {
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    private static int[] collect(TreasureSpatialIndex index, double south, double west, double north, double east) {
+        int[][] rows = {new int[16]};
+        int[] count = {0};
+        int reported = index.query(south, west, north, east, row -> {
+            if (count[0] == rows[0].length) rows[0] = Arrays.copyOf(rows[0], count[0] * 2);
+            rows[0][count[0]++] = row;
+        });
+        assertEquals(count[0], reported);
+        int[] result = Arrays.copyOf(rows[0], count[0]);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+// Adding treasures one at a time versus in batches, disk writes included. Throughput lives in
+// the :benchmark module (StoreIngestBenchmark).
+public class TreasureStoreIngestTest {
+
+    private static final Executor DIRECT = Runnable::run;
+    private static final int SINGLE_ADDS = 5_000;
+    private static final int BATCHED_ADDS = 200_000;
+    private static final int BATCH_SIZE = 10_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void batchedAdds_notifyOncePerBatch() {
+        Random random = new Random(17);
+
+        TreasureStore single = TreasureStore.open(new File(folder.getRoot(), "single.log"), null, DIRECT, DIRECT);
+        int[] singleNotifications = {0};
+        single.addListener(() -> singleNotifications[0]++);
+        for (Treasure treasure : randomTreasures(random, SINGLE_ADDS)) {
+            single.add(treasure);
+        }
+
+        TreasureStore batched = TreasureStore.open(new File(folder.getRoot(), "batched.log"), null, DIRECT, DIRECT);
+        int[] batchedNotifications = {0};
+        batched.addListener(() -> batchedNotifications[0]++);
+        for (int i = 0; i < BATCHED_ADDS / BATCH_SIZE; i++) {
+            assertEquals(BATCH_SIZE, batched.addAll(randomTreasures(random, BATCH_SIZE)));
+        }
+
+        assertEquals(SINGLE_ADDS, singleNotifications[0]);
+        assertEquals(BATCHED_ADDS / BATCH_SIZE, batchedNotifications[0]);
+        assertEquals(BATCHED_ADDS, batched.size());
+        assertEquals(BATCHED_ADDS, batched.getSpatialIndex().size());
+        assertEquals(BATCHED_ADDS, batched.getTimeIndex().size());
+        assertEquals(BATCHED_ADDS, batched.get(BATCHED_ADDS - 1).getId());
+
+        TreasureStore reopened = TreasureStore.open(new File(folder.getRoot(), "batched.log"), null, DIRECT, DIRECT);
+        assertEquals(BATCHED_ADDS, reopened.size());
+        assertEquals(batched.get(12_345).getLatitude(), reopened.get(12_345).getLatitude(), 0);
+    }
+
+    @Test
+    public void badReference_leavesStoreUntouched() {
+        TreasureStore store = TreasureStore.open(new File(folder.getRoot(), "a.log"), null, DIRECT, DIRECT);
+        List<Treasure> batch = randomTreasures(new Random(1), 10);
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() <= 200) {
+            longName.append("photo");
+        }
+        batch.add(new Treasure(longName.toString(), 1, 2, 3));
+        try {
+            store.addAll(batch);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // nothing stored
+        }
+        assertEquals(0, store.size());
+        assertEquals(0, TreasureStore.open(new File(folder.getRoot(), "a.log"), null, DIRECT, DIRECT).size());
+    }
+
+    private static List<Treasure> randomTreasures(Random random, int count) {
+        List<Treasure> treasures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            treasures.add(new Treasure("IMG_" + i + ".jpg", 35 + random.nextGaussian(),
+                    33 + random.nextGaussian(), 1_700_000_000_000L + i * 1000L));
+        }
+        return treasures;
+    }
+}
@@ -0,0 +1,284 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TreasureStoreTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void addedTreasures_surviveReopen() throws IOException {
+        File photoDir = folder.newFolder("photos");
+        File logFile = new File(folder.getRoot(), "treasures.log");
+
+        TreasureStore store = TreasureStore.open(logFile, photoDir, DIRECT, DIRECT);
+        store.add(new Treasure(new File(photoDir, "a.jpg").getPath(), 35.1, 33.3, 1000L));
+        store.add(new Treasure("/sdcard/b.jpg", -12.5, 170.25, 2000L));
+
+        TreasureStore reopened = TreasureStore.open(logFile, photoDir, DIRECT, DIRECT);
+        assertTrue(reopened.isLoaded());
+        assertEquals(2, reopened.size());
+        assertEquals(new File(photoDir, "a.jpg").getPath(), reopened.get(0).getPhotoPath());
+        assertEquals(35.1, reopened.get(0).getLatitude(), 0);
+        assertEquals(33.3, reopened.get(0).getLongitude(), 0);
+        assertEquals(1000L, reopened.get(0).getTimestamp());
+        assertEquals("/sdcard/b.jpg", reopened.get(1).getPhotoPath());
+        assertEquals(2000L, reopened.get(1).getTimestamp());
+    }
+
+    @Test
+    public void partiallyWrittenRecord_isDropped() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            append(log, "a.jpg", 1, 2, 3);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.setLength(raf.length() + TreasureLog.RECORD_SIZE / 2);
+        }
+
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            assertEquals(1, log.getRecordCount());
+            append(log, "b.jpg", 4, 5, 6);
+            assertEquals(2, log.getRecordCount());
+        }
+        assertEquals(TreasureLog.HEADER_SIZE + 2 * TreasureLog.RECORD_SIZE, logFile.length());
+    }
+
+    // Timing lives in the :benchmark module (StoreLoadBenchmark)
+    @Test
+    public void coldLoad_100kRecords_loadsEveryRecord() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            for (int i = 0; i < 100_000; i++) {
+                append(log, "2025" + i + ".jpg", i % 180 - 90, i % 360 - 180, i);
+            }
+            log.sync();
+        }
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+
+        assertEquals(100_000, store.size());
+        assertEquals(99_999L, store.get(99_999).getTimestamp());
+    }
+
+    @Test
+    public void photoInfo_survivesReopenAndUpdate() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        store.add(new Treasure("/sdcard/a.jpg", 1, 2, 3, new PhotoInfo(6, 4000, 3000, 2_500_000L)));
+        store.add(new Treasure("/sdcard/b.jpg", 4, 5, 6));
+        assertFalse(store.getTable().hasPhotoInfo(1));
+        store.updatePhotoInfo(1, new PhotoInfo(1, 640, 480, 90_000L));
+
+        TreasureStore reopened = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        PhotoInfo first = reopened.get(0).getPhotoInfo();
+        assertEquals(6, first.getOrientation());
+        assertEquals(4000, first.getWidth());
+        assertEquals(3000, first.getHeight());
+        assertEquals(2_500_000L, first.getFileSize());
+        PhotoInfo second = reopened.get(1).getPhotoInfo();
+        assertEquals(1, second.getOrientation());
+        assertEquals(640, second.getWidth());
+        assertEquals(90_000L, second.getFileSize());
+    }
+
+    @Test
+    public void versionOneLog_isMigrated() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        byte[] ref = "a.jpg".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer v1 = ByteBuffer.allocate(TreasureLog.HEADER_SIZE + TreasureLog.RECORD_SIZE);
+        v1.putInt(TreasureLog.MAGIC).putInt(1).putInt(TreasureLog.RECORD_SIZE);
+        v1.putDouble(35.1).putDouble(33.3).putLong(1000L).putShort((short) ref.length).put(ref);
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.write(v1.array());
+        }
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(1, store.size());
+        assertEquals("a.jpg", store.get(0).getPhotoPath());
+        assertEquals(35.1, store.get(0).getLatitude(), 0);
+        assertEquals(1000L, store.get(0).getTimestamp());
+        assertFalse(store.get(0).getPhotoInfo().isKnown());
+        assertEquals(1L, store.get(0).getId());
+
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            assertEquals(1, log.getRecordCount());
+        }
+    }
+
+    @Test
+    public void versionThreeLog_isMigratedWithTheStandardProfile() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        // The longest reference a record holds still fits once the length shrinks to a byte
+        byte[] ref = new String(new char[TreasureLog.MAX_PHOTO_REF_BYTES]).replace('\0', 'r')
+                .getBytes(StandardCharsets.UTF_8);
+        ByteBuffer v3 = ByteBuffer.allocate(TreasureLog.HEADER_SIZE + TreasureLog.RECORD_SIZE);
+        v3.putInt(TreasureLog.MAGIC).putInt(3).putInt(TreasureLog.RECORD_SIZE);
+        v3.putDouble(35.1).putDouble(33.3).putLong(1000L)
+                .putLong(2_500_000L).putInt(4000).putInt(3000).putShort((short) 6)
+                .putLong(42L).putShort((short) ref.length).put(ref);
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.write(v3.array());
+        }
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(1, store.size());
+        assertEquals(new String(ref, StandardCharsets.UTF_8), store.get(0).getPhotoPath());
+        assertEquals(42L, store.get(0).getId());
+        assertEquals(4000, store.get(0).getPhotoInfo().getWidth());
+        assertEquals(CaptureProfile.STANDARD, store.get(0).getCaptureProfile());
+
+        store.add(new Treasure("/sdcard/b.jpg", 4, 5, 6, PhotoInfo.UNKNOWN, CaptureProfile.QUALITY));
+        TreasureStore reopened = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(CaptureProfile.STANDARD, reopened.getTable().getCaptureProfile(0));
+        assertEquals(CaptureProfile.QUALITY, reopened.getTable().getCaptureProfile(1));
+        assertEquals(43L, reopened.get(1).getId());
+    }
+
+    @Test
+    public void overlongPhotoReferences_onlyLoseThePhotoWhenMigrated() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        // Legal in version 1, which had room for 102 bytes
+        byte[] v1Ref = repeat('a', 90);
+        ByteBuffer v1 = ByteBuffer.allocate(TreasureLog.HEADER_SIZE + 2 * TreasureLog.RECORD_SIZE);
+        v1.putInt(TreasureLog.MAGIC).putInt(1).putInt(TreasureLog.RECORD_SIZE);
+        v1.putDouble(35.1).putDouble(33.3).putLong(1000L).putShort((short) v1Ref.length).put(v1Ref);
+        v1.position(TreasureLog.HEADER_SIZE + TreasureLog.RECORD_SIZE);
+        v1.putDouble(-12.5).putDouble(170.25).putLong(2000L).putShort((short) 5).put(repeat('b', 5));
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.write(v1.array());
+        }
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(2, store.size());
+        assertEquals("", store.get(0).getPhotoPath());
+        assertEquals(35.1, store.get(0).getLatitude(), 0);
+        assertEquals(1000L, store.get(0).getTimestamp());
+        assertEquals("bbbbb", store.get(1).getPhotoPath());
+
+        // The migrated log takes new treasures again
+        store.add(new Treasure("c.jpg", 1, 2, 3000L));
+        assertEquals(3, TreasureStore.open(logFile, null, DIRECT, DIRECT).size());
+    }
+
+    @Test
+    public void versionThreeRecord_withAnOverlongReference_isMigrated() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        // 84 bytes, as a version 2 slot allowed, claimed by a version 3 record
+        byte[] ref = repeat('r', 84);
+        ByteBuffer v3 = ByteBuffer.allocate(TreasureLog.HEADER_SIZE + TreasureLog.RECORD_SIZE);
+        v3.putInt(TreasureLog.MAGIC).putInt(3).putInt(TreasureLog.RECORD_SIZE);
+        v3.putDouble(35.1).putDouble(33.3).putLong(1000L)
+                .putLong(0L).putInt(0).putInt(0).putShort((short) PhotoInfo.ORIENTATION_UNKNOWN)
+                .putLong(9L).putShort((short) ref.length);
+        // Only what fits in the record was ever written
+        v3.put(ref, 0, v3.remaining());
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.write(v3.array());
+        }
+
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(1, store.size());
+        assertEquals(9L, store.get(0).getId());
+        assertEquals("", store.get(0).getPhotoPath());
+        assertEquals(35.1, store.get(0).getLatitude(), 0);
+    }
+
+    @Test
+    public void ids_areStableAndIndexed() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+
+        // Adds made while the log is still loading are numbered once it has loaded
+        List<Runnable> io = new ArrayList<>();
+        TreasureStore loading = TreasureStore.open(logFile, null, io::add, DIRECT);
+        loading.add(new Treasure("/sdcard/a.jpg", 1, 2, 3));
+        runAll(io);
+        loading.add(new Treasure("/sdcard/b.jpg", 4, 5, 6));
+        runAll(io);
+        assertEquals(1L, loading.get(0).getId());
+        assertEquals(2L, loading.get(1).getId());
+
+        TreasureStore reopened = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        reopened.add(new Treasure("/sdcard/c.jpg", 7, 8, 9));
+        assertEquals(1L, reopened.get(0).getId());
+        assertEquals(2L, reopened.get(1).getId());
+        assertEquals(3L, reopened.get(2).getId());
+        assertEquals(1, reopened.indexOf(2L));
+        assertEquals(-1, reopened.indexOf(4L));
+
+        TreasureStore again = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        assertEquals(2, again.indexOf(3L));
+        assertEquals("/sdcard/c.jpg", again.get(again.indexOf(3L)).getPhotoPath());
+    }
+
+    // Timing lives in the :benchmark module (TimelineQueryBenchmark)
+    @Test
+    public void timelineQuery_scrubbing200k_onlyReportsTheWindow() throws IOException {
+        File logFile = new File(folder.getRoot(), "treasures.log");
+        Random random = new Random(11);
+        long start = 1_700_000_000_000L;
+        int n = 200_000;
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            for (int i = 0; i < n; i++) {
+                append(log, "p.jpg", 35 + random.nextGaussian(), 33 + random.nextGaussian(), start + i * 1000L);
+            }
+        }
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+
+        // Slide a one-hour window across the whole hunt inside a fixed viewport
+        int steps = 1000;
+        long span = n * 1000L;
+        for (int step = 0; step < steps; step++) {
+            long from = start + span * step / steps;
+            long to = from + 3_600_000L;
+            int[] reported = {0};
+            int found = store.query(34, 32, 36, 34, from, to, row -> {
+                long timestamp = store.getTable().getTimestamp(row);
+                assertTrue(timestamp >= from && timestamp <= to);
+                reported[0]++;
+            });
+            assertEquals(reported[0], found);
+        }
+    }
+
+    private static byte[] repeat(char c, int count) {
+        byte[] bytes = new byte[count];
+        Arrays.fill(bytes, (byte) c);
+        return bytes;
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static void append(TreasureLog log, String photoRef, double latitude, double longitude,
+                               long timestamp) throws IOException {
+        TreasureLog.Record record = new TreasureLog.Record();
+        record.photoRef = photoRef;
+        record.latitude = latitude;
+        record.longitude = longitude;
+        record.timestamp = timestamp;
+        log.append(record);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TreasureTableTest {
+
+    private static final String PHOTO_DIR = "/data/user/0/com.mbrats01.treasuresnap/files/";
+
+    @Test
+    public void rows_roundTrip() {
+        TreasureTable table = new TreasureTable(1);
+        table.add(PHOTO_DIR + "a.jpg", 35.1, 33.3, 1000L);
+        table.add("relative.jpg", -1, -2, 2000L);
+
+        TreasureTable other = new TreasureTable();
+        other.add("/sdcard/DCIM/b.jpg", 10, 20, 3000L);
+        table.addAll(other);
+
+        assertEquals(3, table.size());
+        assertEquals(PHOTO_DIR + "a.jpg", table.getPhotoPath(0));
+        assertEquals("relative.jpg", table.getPhotoPath(1));
+        assertEquals("/sdcard/DCIM/b.jpg", table.getPhotoPath(2));
+        assertEquals(35.1, table.getLatitude(0), 0);
+        assertEquals(20, table.getLongitude(2), 0);
+        assertEquals(2000L, table.getTimestamp(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rowOutOfRange_throws() {
+        new TreasureTable().getLatitude(0);
+    }
+}
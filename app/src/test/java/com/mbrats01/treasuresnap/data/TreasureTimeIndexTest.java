@@ -0,0 +1,88 @@
+package com.mbrats01.treasuresnap.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TreasureTimeIndexTest {
+
+    @Test
+    public void rangeQueries_matchLinearScan() {
+        Random random = new Random(3);
+        TreasureTable table = new TreasureTable();
+        TreasureTimeIndex index = new TreasureTimeIndex(table);
+
+        // Mostly in capture order, with batches and single rows arriving out of order
+        long time = 0;
+        for (int batch = 0; batch < 50; batch++) {
+            int from = table.size();
+            for (int i = 0; i < 400; i++) {
+                time += random.nextInt(60_000);
+                long timestamp = random.nextInt(10) == 0 ? random.nextInt((int) time + 1) : time;
+                table.add("p.jpg", 0, 0, timestamp);
+            }
+            if (batch % 2 == 0) {
+                index.insertRange(from, table.size());
+            } else {
+                for (int row = from; row < table.size(); row++) {
+                    index.insert(row);
+                }
+            }
+        }
+        assertEquals(table.size(), index.size());
+        assertEquals(minTimestamp(table), index.getMinTimestamp());
+
+        for (int q = 0; q < 500; q++) {
+            long a = (long) (random.nextDouble() * time);
+            long b = (long) (random.nextDouble() * time);
+            long from = Math.min(a, b);
+            long to = Math.max(a, b);
+
+            List<Integer> expected = new ArrayList<>();
+            for (int row = 0; row < table.size(); row++) {
+                long timestamp = table.getTimestamp(row);
+                if (timestamp >= from && timestamp <= to) {
+                    expected.add(row);
+                }
+            }
+            List<Integer> actual = new ArrayList<>();
+            long[] previous = {Long.MIN_VALUE};
+            int found = index.query(from, to, row -> {
+                assertTrue(table.getTimestamp(row) >= previous[0]);
+                previous[0] = table.getTimestamp(row);
+                actual.add(row);
+            });
+
+            Collections.sort(actual);
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), found);
+            assertEquals(expected.size(), index.count(from, to));
+        }
+    }
+
+    @Test
+    public void remove_dropsOnlyThatRow() {
+        TreasureTable table = new TreasureTable();
+        TreasureTimeIndex index = new TreasureTimeIndex(table);
+        for (int i = 0; i < 10; i++) {
+            index.insert(table.add("p.jpg", 0, 0, i / 2));
+        }
+        assertTrue(index.remove(3));
+        assertFalse(index.remove(3));
+        assertEquals(9, index.size());
+        assertEquals(1, index.count(1, 1));
+    }
+
+    private static long minTimestamp(TreasureTable table) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < table.size(); row++) {
+            min = Math.min(min, table.getTimestamp(row));
+        }
+        return min;
+    }
+}
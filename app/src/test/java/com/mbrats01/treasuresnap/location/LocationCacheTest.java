@@ -0,0 +1,62 @@
+package com.mbrats01.treasuresnap.location;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocationCacheTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void keepsTheFreshestAccurateFix() {
+        LocationCache cache = new LocationCache();
+        LocationFix first = new LocationFix(1, 2, 20, 100 * SECOND);
+        LocationFix better = new LocationFix(1.1, 2.1, 8, 101 * SECOND);
+        LocationFix slightlyWorse = new LocationFix(1.2, 2.2, 12, 102 * SECOND);
+
+        assertTrue(cache.offer(first));
+        assertTrue(cache.offer(better));
+        assertTrue(cache.offer(slightlyWorse));
+        assertSame(slightlyWorse, cache.get(102 * SECOND, 1_000));
+    }
+
+    @Test
+    public void inaccurateFix_onlyWinsOnceTheKeptOneIsOld() {
+        LocationCache cache = new LocationCache();
+        LocationFix accurate = new LocationFix(1, 2, 5, 100 * SECOND);
+        cache.offer(accurate);
+
+        assertFalse(cache.offer(new LocationFix(3, 4, 500, 103 * SECOND)));
+        assertFalse(cache.offer(new LocationFix(3, 4, 0, 104 * SECOND)));
+        assertSame(accurate, cache.get(104 * SECOND, 60_000));
+
+        LocationFix late = new LocationFix(3, 4, 500, 111 * SECOND);
+        assertTrue(cache.offer(late));
+        assertSame(late, cache.get(111 * SECOND, 60_000));
+    }
+
+    @Test
+    public void olderFix_neverReplacesANewerOne() {
+        LocationCache cache = new LocationCache();
+        LocationFix newer = new LocationFix(1, 2, 30, 100 * SECOND);
+        cache.offer(newer);
+
+        assertFalse(cache.offer(new LocationFix(3, 4, 3, 99 * SECOND)));
+        assertSame(newer, cache.get(100 * SECOND, 1_000));
+    }
+
+    @Test
+    public void staleFix_isNotReturned() {
+        LocationCache cache = new LocationCache();
+        LocationFix fix = new LocationFix(1, 2, 5, 100 * SECOND);
+        cache.offer(fix);
+
+        assertSame(fix, cache.get(130 * SECOND, 30_000));
+        assertNull(cache.get(131 * SECOND, 30_000));
+        assertEquals(31_000, fix.getAgeMillis(131 * SECOND));
+
+        cache.clear();
+        assertNull(cache.get(100 * SECOND, 30_000));
+    }
+}
@@ -0,0 +1,163 @@
+package com.mbrats01.treasuresnap.location;
+
+import com.mbrats01.treasuresnap.data.GreatCircle;
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureStore;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class ProximityEngineTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void alertsOnce_untilThePlayerLeaves() {
+        TreasureStore store = openStore();
+        store.add(new Treasure("a.jpg", 35.0, 33.0, 1));
+        List<Long> alerts = new ArrayList<>();
+        ProximityEngine engine = new ProximityEngine(store, 50, (id, row, distance) -> alerts.add(id));
+
+        engine.onLocation(35.001, 33.0, 5); // ~111 m away
+        assertTrue(alerts.isEmpty());
+        engine.onLocation(35.0003, 33.0, 5); // ~33 m
+        engine.onLocation(35.0001, 33.0, 5);
+        assertEquals(1, alerts.size());
+        // Just past the radius but within the re-arm distance: no second alert when coming back
+        engine.onLocation(35.0005, 33.0, 5);
+        engine.onLocation(35.0002, 33.0, 5);
+        assertEquals(1, alerts.size());
+        // Well away, then back again
+        engine.onLocation(35.01, 33.0, 5);
+        engine.onLocation(35.0, 33.0, 5);
+        assertEquals(2, alerts.size());
+        // Inaccurate fixes are ignored
+        engine.onLocation(35.01, 33.0, 5);
+        engine.onLocation(35.0, 33.0, 500);
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    public void treasuresAddedLater_alertWithoutRearmingEverything() {
+        TreasureStore store = openStore();
+        store.add(new Treasure("a.jpg", 35.0, 33.0, 1));
+        List<Long> alerts = new ArrayList<>();
+        ProximityEngine engine = new ProximityEngine(store, 50, (id, row, distance) -> alerts.add(id));
+        engine.onLocation(35.01, 33.01, 0);
+        int armed = engine.getCellsArmed();
+
+        store.add(new Treasure("b.jpg", 35.01, 33.0101, 2));
+        engine.onLocation(35.01, 33.01, 0);
+        assertEquals(1, alerts.size());
+        assertEquals(2L, (long) alerts.get(0));
+        assertEquals(armed, engine.getCellsArmed());
+    }
+
+    @Test
+    public void matchesBruteForce_anywhereOnEarth() {
+        Random random = new Random(3);
+        TreasureStore store = openStore();
+        List<Treasure> batch = new ArrayList<>();
+        // Walks near the poles and across the antimeridian as well as around home
+        double[][] starts = {{35.17, 33.36}, {89.99, 0}, {-89.99, 0}, {10, 179.999}, {0, 0}};
+        for (double[] start : starts) {
+            for (int i = 0; i < 300; i++) {
+                double lat = Math.max(-90, Math.min(90, start[0] + random.nextGaussian() * 0.003));
+                double lon = start[1] + random.nextGaussian() * 0.01;
+                batch.add(new Treasure("p.jpg", lat, lon > 180 ? lon - 360 : lon, i));
+            }
+        }
+        store.addAll(batch);
+        TreasureTable table = store.getTable();
+
+        for (double radius : new double[]{25, 200}) {
+            Set<Long> alerted = new HashSet<>();
+            ProximityEngine engine = new ProximityEngine(store, radius, (id, row, distance) -> {
+                assertTrue(alerted.add(id));
+                assertTrue(distance <= radius);
+            });
+            Set<Long> expectedInside = new HashSet<>();
+            int alerts = 0;
+            for (double[] start : starts) {
+                double lat = start[0];
+                double lon = start[1];
+                for (int step = 0; step < 40; step++) {
+                    lat = Math.max(-90, Math.min(90, lat + random.nextGaussian() * 0.0005));
+                    lon += random.nextGaussian() * 0.0015;
+                    lon = lon > 180 ? lon - 360 : lon < -180 ? lon + 360 : lon;
+
+                    Set<Long> expected = new HashSet<>();
+                    for (int row = 0; row < table.size(); row++) {
+                        double distance = GreatCircle.distanceMeters(lat, lon, table.getLatitude(row), table.getLongitude(row));
+                        long id = table.getId(row);
+                        if (distance <= radius && !expectedInside.contains(id)) {
+                            expected.add(id);
+                        }
+                        if (distance > radius * ProximityEngine.REARM_FACTOR) {
+                            expectedInside.remove(id);
+                        }
+                    }
+                    expectedInside.addAll(expected);
+
+                    alerted.clear();
+                    engine.onLocation(lat, lon, 0);
+                    assertEquals("Fix " + lat + ", " + lon, expected, alerted);
+                    alerts += alerted.size();
+                }
+            }
+            // The walks have to actually reach treasures for the comparison to mean anything
+            assertTrue(alerts > 0);
+        }
+    }
+
+    // Timing lives in the :benchmark module (ProximityBenchmark)
+    @Test
+    public void hundredThousandTreasures_armFewerCellsThanFixes() {
+        Random random = new Random(9);
+        TreasureStore store = openStore();
+        List<Treasure> batch = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            batch.add(new Treasure("p.jpg", 35.17 + random.nextGaussian() * 0.05,
+                    33.36 + random.nextGaussian() * 0.05, i));
+        }
+        store.addAll(batch);
+
+        int[] alerts = {0};
+        ProximityEngine engine = new ProximityEngine(store, 30, (id, row, distance) -> alerts[0]++);
+        // Wandering around town, one fix every second or so
+        double lat = 35.17;
+        double lon = 33.36;
+        int fixes = 20_000;
+        for (int i = 0; i < fixes; i++) {
+            lat += random.nextGaussian() * 0.00003;
+            lon += random.nextGaussian() * 0.00003;
+            engine.onLocation(lat, lon, 10);
+        }
+        assertTrue(alerts[0] > 0);
+        // Fewer cells than fixes, where re-arming the whole block would take nine per fix
+        assertTrue(engine.getCellsArmed() < fixes);
+    }
+
+    private TreasureStore openStore() {
+        try {
+            return TreasureStore.open(new File(folder.newFolder(), "treasures.log"), null, DIRECT, DIRECT);
+        } catch (java.io.IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.mbrats01.treasuresnap.transfer;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureStore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class TreasureTransferTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void geoJson_roundTrip() throws IOException {
+        roundTrip(TreasureFormat.GEOJSON);
+    }
+
+    @Test
+    public void gpx_roundTrip() throws IOException {
+        roundTrip(TreasureFormat.GPX);
+    }
+
+    @Test
+    public void geoJson_readsMembersInAnyOrderAndSkipsOtherGeometries() throws IOException {
+        String json = "﻿{\"features\": [\n"
+                + "  {\"properties\": {\"photo\": \"dir/caf\\u00e9 \\\"1\\\".jpg\", \"extra\": {\"a\": [1, {}]},"
+                + "    \"time\": \"2024-05-01T12:00:00+02:00\"},"
+                + "   \"type\": \"Feature\", \"geometry\": {\"coordinates\": [33.36, 35.17, 120.5], \"type\": \"Point\"}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"LineString\", \"coordinates\": [[1, 2], [3, 4]]},"
+                + "   \"properties\": null},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [-0.5, 51.5]},"
+                + "   \"properties\": {\"timestamp\": 1700000000123, \"time\": \"2020-01-01T00:00:00Z\"}}\n"
+                + "], \"type\": \"FeatureCollection\"}";
+        TreasureStore store = newStore("a.log");
+        int imported = new TreasureImporter(store, DIRECT).importFrom(stream(json));
+
+        assertEquals(2, imported);
+        assertEquals(2, store.size());
+        // The photo isn't part of the file, so its name is not kept either
+        assertEquals("", store.get(0).getPhotoPath());
+        assertEquals(35.17, store.get(0).getLatitude(), 0);
+        assertEquals(33.36, store.get(0).getLongitude(), 0);
+        assertEquals(1714557600000L, store.get(0).getTimestamp());
+        assertEquals(51.5, store.get(1).getLatitude(), 0);
+        assertEquals(1700000000123L, store.get(1).getTimestamp());
+    }
+
+    @Test
+    public void geoJson_skipsPointsWithoutValidCoordinates() throws IOException {
+        String json = "{\"type\": \"FeatureCollection\", \"features\": [\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [33.36, 35.17]}},\n"
+                // Too few numbers, the previous feature's coordinates must not be reused
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [null, \"x\"]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [null, 1.5, 2.5]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [10, 95]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\", \"coordinates\": [-180.5, 10]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Point\"}}\n"
+                + "]}";
+        TreasureStore store = newStore("a.log");
+        TreasureImporter importer = new TreasureImporter(store, DIRECT);
+
+        assertEquals(2, importer.importFrom(stream(json)));
+        assertEquals(4, importer.getSkippedCount());
+        assertEquals(2, store.size());
+        assertEquals(35.17, store.get(0).getLatitude(), 0);
+        // Only numbers count towards [longitude, latitude]
+        assertEquals(1.5, store.get(1).getLongitude(), 0);
+        assertEquals(2.5, store.get(1).getLatitude(), 0);
+    }
+
+    @Test
+    public void gpx_skipsPointsOffTheGlobe() throws IOException {
+        String gpx = "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">"
+                + "<wpt lat=\"46.5\" lon=\"7.25\"/><wpt lat=\"91\" lon=\"7.25\"/><wpt lat=\"x\" lon=\"1\"/>"
+                + "</gpx>";
+        TreasureImporter importer = new TreasureImporter(newStore("a.log"), DIRECT);
+
+        assertEquals(1, importer.importFrom(stream(gpx)));
+        assertEquals(2, importer.getSkippedCount());
+    }
+
+    @Test
+    public void gpx_withDoctype_isRejected() throws IOException {
+        File secret = folder.newFile("secret.txt");
+        try (FileOutputStream out = new FileOutputStream(secret)) {
+            out.write("46.5".getBytes(StandardCharsets.UTF_8));
+        }
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE gpx [<!ENTITY secret SYSTEM \"" + secret.toURI() + "\">]>\n"
+                + "<gpx version=\"1.1\"><wpt lat=\"46.5\" lon=\"7.25\"><name>&secret;</name></wpt></gpx>";
+        TreasureStore store = newStore("a.log");
+        try {
+            new TreasureImporter(store, DIRECT).importFrom(stream(gpx));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Invalid GPX"));
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void gpx_readsTrackPoints() throws IOException {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">"
+                + "<metadata><link href=\"https://example.com\"/><time>2019-01-01T00:00:00Z</time></metadata>"
+                + "<trk><trkseg>"
+                + "<trkpt lat=\"46.5\" lon=\"7.25\"><ele>1200</ele><time>2024-05-01T10:00:00Z</time></trkpt>"
+                + "<trkpt lat=\"46.6\" lon=\"7.26\"/>"
+                + "</trkseg></trk></gpx>";
+        TreasureStore store = newStore("a.log");
+        long before = System.currentTimeMillis();
+        int imported = new TreasureImporter(store, DIRECT).importFrom(stream(gpx));
+
+        assertEquals(2, imported);
+        assertEquals(46.5, store.get(0).getLatitude(), 0);
+        assertEquals(7.25, store.get(0).getLongitude(), 0);
+        assertEquals(1714557600000L, store.get(0).getTimestamp());
+        assertEquals("", store.get(0).getPhotoPath());
+        // No time of its own, so it is dated to the import
+        assertTrue(store.get(1).getTimestamp() >= before);
+    }
+
+    @Test
+    public void malformedFile_reportsError() {
+        try {
+            new TreasureImporter(newStore("a.log"), DIRECT)
+                    .importFrom(stream("{\"features\": [{\"geometry\": {\"coordinates\": [1, 2}]}"));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("at character"));
+        }
+    }
+
+    @Test
+    public void import_500kPoints_refreshesOncePerBatch() throws IOException {
+        int n = 500_000;
+        File file = folder.newFile("hunt.geojson");
+        Random random = new Random(3);
+        try (TreasureWriter writer = TreasureFormat.GEOJSON.newWriter(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            for (int i = 0; i < n; i++) {
+                writer.write(i + 1, "IMG_" + i + ".jpg", 35 + random.nextGaussian(),
+                        33 + random.nextGaussian(), 1_700_000_000_000L + i * 1000L);
+            }
+        }
+
+        TreasureStore store = newStore("a.log");
+        int[] notifications = {0};
+        store.addListener(() -> notifications[0]++);
+        int imported;
+        try (InputStream in = new FileInputStream(file)) {
+            imported = new TreasureImporter(store, DIRECT).importFrom(in);
+        }
+
+        assertEquals(n, imported);
+        assertEquals(n, store.size());
+        assertEquals((n + TreasureImporter.BATCH_SIZE - 1) / TreasureImporter.BATCH_SIZE, notifications[0]);
+        assertEquals(n, newStore("a.log").size());
+    }
+
+    private void roundTrip(TreasureFormat format) throws IOException {
+        TreasureStore source = newStore("source.log");
+        source.add(new Treasure("/sdcard/DCIM/a&b <1>.jpg", 35.1234567, 33.7654321, 1_700_000_000_123L));
+        source.add(new Treasure("", -89.5, -179.99, 0L));
+        source.add(new Treasure("café \"2\".jpg", 12.5, 170.25, 1_600_000_000_000L));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(3, new TreasureExporter(source, DIRECT).exportTo(out, format));
+
+        TreasureStore target = newStore("target.log");
+        assertEquals(3, new TreasureImporter(target, DIRECT).importFrom(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(3, target.size());
+        for (int i = 0; i < 3; i++) {
+            Treasure expected = source.get(i);
+            Treasure actual = target.get(i);
+            assertEquals("", actual.getPhotoPath());
+            assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+            assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+        }
+    }
+
+    private TreasureStore newStore(String name) {
+        return TreasureStore.open(new File(folder.getRoot(), name), null, DIRECT, DIRECT);
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,37 @@
+package com.mbrats01.treasuresnap.ui.camera;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LiveScanGateTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void framesAreThrottled_andDroppedWhileBusy() {
+        LiveScanGate gate = new LiveScanGate(5);
+
+        assertTrue(gate.tryAcquire(0));
+        // Busy with the first frame, however late the next one comes
+        assertFalse(gate.tryAcquire(500 * MS));
+        gate.release();
+        assertTrue(gate.tryAcquire(600 * MS));
+        gate.release();
+        // Free, but only 100 ms since the last scan at 5 fps
+        assertFalse(gate.tryAcquire(700 * MS));
+        assertTrue(gate.tryAcquire(800 * MS));
+        assertEquals(2, gate.getDroppedCount());
+    }
+
+    @Test
+    public void stop_dropsEverythingAndOnlyCountsOnce() {
+        LiveScanGate gate = new LiveScanGate(30);
+        assertTrue(gate.tryAcquire(0));
+
+        assertTrue(gate.stop());
+        assertFalse(gate.stop());
+        gate.release();
+        assertFalse(gate.tryAcquire(1_000 * MS));
+    }
+}
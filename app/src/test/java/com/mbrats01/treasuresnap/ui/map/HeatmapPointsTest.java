@@ -0,0 +1,134 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HeatmapPointsTest {
+
+    @Test
+    public void query_matchesLinearScan() {
+        Random random = new Random(5);
+        int n = 20_000;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextFloat();
+            ys[i] = i % 3 == 0 ? 0.3f + random.nextFloat() * 0.001f : random.nextFloat();
+        }
+        // Built in two steps, the way new treasures are added to a snapshot
+        long[] times = new long[n];
+        HeatmapPoints points = HeatmapPoints.EMPTY.plus(xs, ys, times, n / 2)
+                .plus(copyFrom(xs, n / 2), copyFrom(ys, n / 2), times, n - n / 2);
+        assertEquals(n, points.size());
+
+        for (int q = 0; q < 200; q++) {
+            double size = Math.pow(2, -random.nextInt(12));
+            double minX = random.nextDouble() * (1 - size);
+            double minY = random.nextDouble() * (1 - size);
+            int expected = 0;
+            for (int i = 0; i < n; i++) {
+                if (xs[i] >= minX && xs[i] < minX + size && ys[i] >= minY && ys[i] < minY + size) {
+                    expected++;
+                }
+            }
+            int[] found = {0};
+            points.query(minX, minY, minX + size, minY + size, (x, y) -> found[0]++);
+            assertEquals(expected, found[0]);
+        }
+    }
+
+    @Test
+    public void count_matchesQuery() {
+        Random random = new Random(9);
+        int n = 50_000;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = (float) Math.min(0.999, Math.abs(0.5 + random.nextGaussian() * 0.1));
+            ys[i] = (float) Math.min(0.999, Math.abs(0.4 + random.nextGaussian() * 0.1));
+        }
+        HeatmapPoints points = HeatmapPoints.EMPTY.plus(xs, ys, new long[n], n);
+
+        // Grid cells of the aggregate tiles at the zoom levels they are drawn, then unaligned boxes
+        for (int zoom = 0; zoom < 8; zoom++) {
+            double cell = 1.0 / ((1 << zoom) * 4);
+            for (int q = 0; q < 50; q++) {
+                double minX = Math.floor(random.nextDouble() / cell) * cell;
+                double minY = Math.floor(random.nextDouble() / cell) * cell;
+                assertCountMatches(points, minX, minY, cell);
+            }
+        }
+        for (int q = 0; q < 200; q++) {
+            assertCountMatches(points, random.nextDouble() * 0.7, random.nextDouble() * 0.7,
+                    random.nextDouble() * 0.3);
+        }
+    }
+
+    @Test
+    public void plus_leavesEarlierSnapshotsUnchanged() {
+        float[] xs = {0.1f, 0.1f, 0.5f, 0.9f};
+        float[] ys = {0.2f, 0.2f, 0.5f, 0.9f};
+        HeatmapPoints base = HeatmapPoints.EMPTY.plus(xs, ys, new long[4], 2);
+        // Appended in place past the base snapshot's points
+        HeatmapPoints first = base.plus(new float[]{0.1f, 0.5f}, new float[]{0.2f, 0.5f}, new long[2], 2);
+        // Extends the base again, so it must not write over the first one
+        HeatmapPoints second = base.plus(new float[]{0.9f}, new float[]{0.9f}, new long[1], 1);
+
+        assertEquals(2, base.count(0, 0, 1, 1));
+        assertEquals(4, first.count(0, 0, 1, 1));
+        assertEquals(3, second.count(0, 0, 1, 1));
+        assertEquals(3, first.count(0.05, 0.15, 0.15, 0.25));
+        assertEquals(2, second.count(0.05, 0.15, 0.15, 0.25));
+        assertEquals(1, second.count(0.85, 0.85, 0.95, 0.95));
+        assertEquals(0, first.count(0.85, 0.85, 0.95, 0.95));
+    }
+
+    @Test
+    public void timeRange_onlyCountsPointsInside() {
+        Random random = new Random(13);
+        int n = 10_000;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        long[] times = new long[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextFloat();
+            ys[i] = random.nextFloat();
+            times[i] = random.nextInt(1_000);
+        }
+        HeatmapPoints points = HeatmapPoints.EMPTY.plus(xs, ys, times, n);
+
+        for (int q = 0; q < 100; q++) {
+            double size = Math.pow(2, -random.nextInt(6));
+            double minX = random.nextDouble() * (1 - size);
+            double minY = random.nextDouble() * (1 - size);
+            long from = random.nextInt(1_000);
+            long to = from + random.nextInt(500);
+            int expected = 0;
+            for (int i = 0; i < n; i++) {
+                if (xs[i] >= minX && xs[i] < minX + size && ys[i] >= minY && ys[i] < minY + size
+                        && times[i] >= from && times[i] <= to) {
+                    expected++;
+                }
+            }
+            int[] found = {0};
+            points.query(minX, minY, minX + size, minY + size, from, to, (x, y) -> found[0]++);
+            assertEquals(expected, found[0]);
+            assertEquals(expected, points.count(minX, minY, minX + size, minY + size, from, to));
+        }
+    }
+
+    private static void assertCountMatches(HeatmapPoints points, double minX, double minY, double size) {
+        int[] found = {0};
+        points.query(minX, minY, minX + size, minY + size, (x, y) -> found[0]++);
+        assertEquals(found[0], points.count(minX, minY, minX + size, minY + size));
+    }
+
+    private static float[] copyFrom(float[] values, int from) {
+        float[] copy = new float[values.length - from];
+        System.arraycopy(values, from, copy, 0, copy.length);
+        return copy;
+    }
+}
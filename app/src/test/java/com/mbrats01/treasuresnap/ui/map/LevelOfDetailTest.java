@@ -0,0 +1,41 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import org.junit.Test;
+
+import static com.mbrats01.treasuresnap.ui.map.LevelOfDetail.Mode.AGGREGATES;
+import static com.mbrats01.treasuresnap.ui.map.LevelOfDetail.Mode.CLUSTERS;
+import static com.mbrats01.treasuresnap.ui.map.LevelOfDetail.Mode.MARKERS;
+import static org.junit.Assert.*;
+
+public class LevelOfDetailTest {
+
+    private final LevelOfDetail levelOfDetail = new LevelOfDetail(6, 17);
+
+    @Test
+    public void modeFor_followsThresholds() {
+        assertEquals(AGGREGATES, levelOfDetail.modeFor(2f));
+        assertEquals(AGGREGATES, levelOfDetail.modeFor(5.9f));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(6f));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(16.9f));
+        assertEquals(MARKERS, levelOfDetail.modeFor(17f));
+        assertEquals(MARKERS, levelOfDetail.modeFor(21f));
+    }
+
+    @Test
+    public void modeFor_staysPutNearThreshold() {
+        assertEquals(AGGREGATES, levelOfDetail.modeFor(6.1f, AGGREGATES));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(6.4f, AGGREGATES));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(5.9f, CLUSTERS));
+        assertEquals(AGGREGATES, levelOfDetail.modeFor(5.6f, CLUSTERS));
+        assertEquals(MARKERS, levelOfDetail.modeFor(16.8f, MARKERS));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(16.5f, MARKERS));
+        // Jumps across a whole range don't wait for anything
+        assertEquals(MARKERS, levelOfDetail.modeFor(18f, AGGREGATES));
+        assertEquals(CLUSTERS, levelOfDetail.modeFor(10f, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thresholds_mustBeOrdered() {
+        new LevelOfDetail(18, 12);
+    }
+}
@@ -0,0 +1,68 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MarkerIconCacheTest {
+
+    private static final int MIN_CAPACITY = 64;
+
+    @Test
+    public void markersPastMinimum_areNotEvictedWhileVisible() {
+        int[] evicted = {0};
+        MarkerIconCache<String> cache = new MarkerIconCache<>(MIN_CAPACITY, icon -> evicted[0]++);
+        List<String> visible = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            visible.add("photo" + i);
+        }
+
+        // The first pass makes every icon, later passes (pan and zoom in place) must find them all
+        Random random = new Random(3);
+        int made = 0;
+        for (int pass = 0; pass < 10; pass++) {
+            cache.setCapacity(visible.size());
+            Collections.shuffle(visible, random);
+            for (String key : visible) {
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                    made++;
+                }
+            }
+        }
+        assertEquals(visible.size(), made);
+        assertEquals(0, evicted[0]);
+    }
+
+    @Test
+    public void panning_keepsOnlyTheVisibleMarkers() {
+        int[] evicted = {0};
+        MarkerIconCache<String> cache = new MarkerIconCache<>(MIN_CAPACITY, icon -> evicted[0]++);
+
+        // 150 markers on screen, a third of them new after every pan
+        int made = 0;
+        for (int pan = 0; pan < 100; pan++) {
+            cache.setCapacity(150);
+            for (int i = pan * 50; i < pan * 50 + 150; i++) {
+                String key = "photo" + i;
+                if (cache.get(key) == null) {
+                    cache.put(key, key);
+                    made++;
+                }
+            }
+            assertTrue(cache.size() <= 150);
+        }
+        assertEquals(99 * 50 + 150, made);
+        assertEquals(made - cache.size(), evicted[0]);
+
+        // Zooming out to clusters gives the memory back down to the minimum
+        cache.setCapacity(3);
+        assertEquals(MIN_CAPACITY, cache.getCapacity());
+        assertEquals(MIN_CAPACITY, cache.size());
+    }
+}
@@ -0,0 +1,30 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+// Snippet formatting; how it compares with a SimpleDateFormat per item lives in the :benchmark
+// module (TreasureItemBenchmark)
+public class TimestampFormatterTest {
+
+    @Test
+    public void cachedFormatter_matchesSimpleDateFormat() {
+        SimpleDateFormat expected = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.US);
+        expected.setTimeZone(TimeZone.getTimeZone("UTC"));
+        TimestampFormatter formatter = new TimestampFormatter(Locale.US, ZoneId.of("UTC"));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long timestamp = random.nextLong() % 4_000_000_000_000L;
+            assertEquals(expected.format(new Date(timestamp)), formatter.format(timestamp));
+        }
+    }
+}
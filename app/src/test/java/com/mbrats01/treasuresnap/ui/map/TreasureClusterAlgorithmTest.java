@@ -0,0 +1,124 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import com.google.maps.android.clustering.Cluster;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TreasureClusterAlgorithmTest {
+
+    private static final int INDEXED = 5_000;
+    private static final int ADDED = 300;
+
+    @Test
+    public void addedItems_areClusteredWithoutARebuild() {
+        TreasureTable table = randomTable(new Random(1), INDEXED + ADDED);
+        TreasureClusterAlgorithm algorithm = indexed(table, INDEXED);
+        List<TreasureItem> added = items(table, INDEXED, INDEXED + ADDED);
+        int clustersBefore = algorithm.getClusters(10).size();
+
+        assertTrue(algorithm.addItems(added));
+        // Already held, by the index or by the earlier addition
+        assertFalse(algorithm.addItem(added.get(0)));
+        assertFalse(algorithm.addItem(new TreasureItem(table, table.getId(0))));
+        assertEquals(ADDED, algorithm.getSnapshot().getChangeCount());
+        assertEquals(INDEXED + ADDED, algorithm.getItems().size());
+
+        assertEveryItemOnce(algorithm, items(table, 0, INDEXED + ADDED));
+        // Those near the town join its clusters; only the quarter spread over the world are alone
+        assertTrue(algorithm.getClusters(10).size() - clustersBefore <= ADDED / 4);
+
+        // Only the treasures of the time range are clustered, the added ones as well
+        algorithm.setTimeRange(INDEXED - 100, INDEXED + 99);
+        assertEveryItemOnce(algorithm, items(table, INDEXED - 100, INDEXED + 100));
+    }
+
+    @Test
+    public void removedItems_leaveTheirClusters() {
+        TreasureTable table = randomTable(new Random(2), INDEXED + ADDED);
+        TreasureClusterAlgorithm algorithm = indexed(table, INDEXED);
+        algorithm.addItems(items(table, INDEXED, INDEXED + ADDED));
+
+        List<TreasureItem> kept = new ArrayList<>();
+        List<TreasureItem> removed = new ArrayList<>();
+        for (TreasureItem item : items(table, 0, INDEXED + ADDED)) {
+            (item.getId() % 7 == 0 ? removed : kept).add(item);
+        }
+        assertTrue(algorithm.removeItems(removed));
+        assertFalse(algorithm.removeItem(removed.get(0)));
+        assertEquals(kept.size(), algorithm.getSnapshot().size());
+        assertEquals(new HashSet<>(kept), new HashSet<>(algorithm.getItems()));
+        assertEveryItemOnce(algorithm, kept);
+
+        // Removed and then added again, e.g. by updateItem()
+        assertTrue(algorithm.updateItem(kept.get(0)));
+        assertFalse(algorithm.updateItem(removed.get(0)));
+        assertTrue(algorithm.addItem(removed.get(0)));
+        kept.add(removed.get(0));
+        assertEveryItemOnce(algorithm, kept);
+
+        algorithm.clearItems();
+        assertTrue(algorithm.getItems().isEmpty());
+        assertTrue(algorithm.getClusters(10).isEmpty());
+    }
+
+    private static void assertEveryItemOnce(TreasureClusterAlgorithm algorithm, List<TreasureItem> expected) {
+        for (int zoom : new int[]{0, 5, 10, 15, 17}) {
+            Set<TreasureItem> seen = new HashSet<>();
+            int total = 0;
+            for (Cluster<TreasureItem> cluster : algorithm.getClusters(zoom)) {
+                assertEquals(cluster.getSize(), cluster.getItems().size());
+                for (TreasureItem item : cluster.getItems()) {
+                    assertTrue("Item " + item.getId() + " in two clusters", seen.add(item));
+                }
+                total += cluster.getSize();
+            }
+            assertEquals(expected.size(), total);
+            assertEquals(new HashSet<>(expected), seen);
+        }
+    }
+
+    private static TreasureClusterAlgorithm indexed(TreasureTable table, int n) {
+        long[] ids = new long[n];
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        long[] timestamps = new long[n];
+        for (int row = 0; row < n; row++) {
+            ids[row] = table.getId(row);
+            latitudes[row] = table.getLatitude(row);
+            longitudes[row] = table.getLongitude(row);
+            timestamps[row] = table.getTimestamp(row);
+        }
+        // No camera position, so every cluster in the world is returned
+        TreasureClusterAlgorithm algorithm = new TreasureClusterAlgorithm(411, 731);
+        algorithm.setSnapshot(algorithm.index(table, ids, latitudes, longitudes, timestamps, n));
+        return algorithm;
+    }
+
+    private static List<TreasureItem> items(TreasureTable table, int fromRow, int toRow) {
+        List<TreasureItem> items = new ArrayList<>();
+        for (int row = fromRow; row < toRow; row++) {
+            items.add(new TreasureItem(table, table.getId(row)));
+        }
+        return items;
+    }
+
+    // Most treasures around one town, captured one per millisecond in id order
+    private static TreasureTable randomTable(Random random, int n) {
+        TreasureTable table = new TreasureTable(n);
+        for (int i = 0; i < n; i++) {
+            double lat = i % 4 == 0 ? random.nextDouble() * 170 - 85 : 35.17 + random.nextGaussian() * 0.05;
+            double lon = i % 4 == 0 ? random.nextDouble() * 360 - 180 : 33.36 + random.nextGaussian() * 0.05;
+            table.setId(table.add("p" + i + ".jpg", lat, lon, i), i + 1);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,31 @@
+package com.mbrats01.treasuresnap.ui.map;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TreasureItemTest {
+
+    @Test
+    public void position_isReadWithoutTheTable() {
+        TreasureTable table = new TreasureTable(1);
+        int row = table.add("a.jpg", 35.17, 33.36, 1000L);
+        table.setId(row, 7);
+        TreasureItem item = new TreasureItem(table, 7);
+
+        // Clustering reads positions off the main thread while the table is rebuilt under it
+        table.clear();
+        for (int i = 0; i < 10_000; i++) {
+            table.setId(table.add("b.jpg", -10, 20, i), i + 100);
+        }
+
+        LatLng position = item.getPosition();
+        assertEquals(35.17, position.latitude, 0);
+        assertEquals(33.36, position.longitude, 0);
+        assertSame(position, item.getPosition());
+        assertEquals(1000L, item.getTimestamp());
+    }
+}
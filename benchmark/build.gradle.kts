@@ -0,0 +1,93 @@
+import java.util.Properties
+
+plugins {
+    `java-library`
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+// The map data path is compiled straight from the app's sources, so the benchmarks always
+// measure the current code without turning the app into a library
+sourceSets {
+    main {
+        java {
+            srcDir("../app/src/main/java")
+            include("com/mbrats01/treasuresnap/benchmark/**")
+            include("com/mbrats01/treasuresnap/data/**")
+            include("com/mbrats01/treasuresnap/location/ProximityEngine.java")
+            include("com/mbrats01/treasuresnap/ui/map/TimestampFormatter.java")
+            include("com/mbrats01/treasuresnap/ui/map/TreasureItem.java")
+            include("com/mbrats01/treasuresnap/ui/map/TreasureCluster.java")
+            include("com/mbrats01/treasuresnap/ui/map/TreasureClusterAlgorithm.java")
+        }
+    }
+}
+
+// The maps libraries only ship as AARs, which a JVM module can't consume, so their classes.jar
+// is unpacked instead. LatLng is Parcelable, so android.jar has to be on the classpath as well,
+// the same setup the app's unit tests run with.
+val aars: Configuration by configurations.creating {
+    isTransitive = false
+}
+val aarClassesDir = layout.buildDirectory.dir("aar-classes")
+val unpackAars by tasks.registering {
+    inputs.files(aars)
+    outputs.dir(aarClassesDir)
+    doLast {
+        val target = aarClassesDir.get().asFile
+        target.deleteRecursively()
+        aars.files.forEach { aar ->
+            copy {
+                from(zipTree(aar)) { include("classes.jar") }
+                into(target)
+                rename { aar.nameWithoutExtension + ".jar" }
+            }
+        }
+    }
+}
+
+val sdkDir: String? = Properties().apply {
+    rootProject.file("local.properties").takeIf { it.exists() }?.reader()?.use { load(it) }
+}.getProperty("sdk.dir") ?: System.getenv("ANDROID_HOME")
+// Matches the app's compileSdk
+val androidJar = files("$sdkDir/platforms/android-35/android.jar")
+
+dependencies {
+    aars(variantOf(libs.android.maps.utils) { artifactType("aar") })
+    aars(variantOf(libs.google.maps) { artifactType("aar") })
+    aars(variantOf(libs.play.services.basement) { artifactType("aar") })
+
+    implementation(fileTree(aarClassesDir) { builtBy(unpackAars) })
+    implementation(androidJar)
+    implementation(libs.androidx.annotation)
+}
+
+// Sizes and distributions can be overridden per run, e.g.
+//   ./gradlew :benchmark:jmh -Pbenchmark.sizes=1000,1000000 -Pbenchmark.distributions=HOTSPOT
+// Results are written as JSON; pass -Pbenchmark.results=<file> to keep runs side by side.
+// Heap use is compared with the gc profiler, -Pbenchmark.profilers=gc, which reports the bytes
+// each operation allocates as gc.alloc.rate.norm.
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    resultFormat.set("JSON")
+    resultsFile.set(
+        providers.gradleProperty("benchmark.results").map { layout.projectDirectory.file(it) }
+            .orElse(layout.buildDirectory.file("results/jmh/results.json"))
+    )
+    providers.gradleProperty("benchmark.sizes").orNull?.let {
+        benchmarkParameters.put("size", objects.listProperty<String>().value(it.split(",")))
+    }
+    providers.gradleProperty("benchmark.distributions").orNull?.let {
+        benchmarkParameters.put("distribution", objects.listProperty<String>().value(it.split(",")))
+    }
+    providers.gradleProperty("benchmark.includes").orNull?.let {
+        includes.add(it)
+    }
+    providers.gradleProperty("benchmark.profilers").orNull?.let {
+        profilers.addAll(it.split(","))
+    }
+}
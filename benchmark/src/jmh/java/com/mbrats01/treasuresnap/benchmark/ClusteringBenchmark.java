@@ -0,0 +1,124 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.google.android.gms.maps.model.CameraPosition;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.maps.android.clustering.Cluster;
+import com.google.maps.android.clustering.algo.GridBasedAlgorithm;
+import com.google.maps.android.clustering.algo.NonHierarchicalDistanceBasedAlgorithm;
+import com.google.maps.android.clustering.algo.NonHierarchicalViewBasedAlgorithm;
+import com.mbrats01.treasuresnap.data.TreasureClusterIndex;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+import com.mbrats01.treasuresnap.ui.map.TreasureClusterAlgorithm;
+import com.mbrats01.treasuresnap.ui.map.TreasureItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One getClusters() call per algorithm, the work the ClusterManager does after every camera
+ * move or timeline change, plus building the precomputed hierarchy that the app's algorithm
+ * answers from.
+ */
+public class ClusteringBenchmark extends DatasetBenchmark {
+
+    // A phone-sized map view in dp, the same as the app's unit tests use
+    private static final int VIEW_WIDTH_DP = 411;
+    private static final int VIEW_HEIGHT_DP = 731;
+    // Same radius the algorithms use by default
+    private static final int MAX_DISTANCE_DP = 100;
+
+    @Param({"10000", "100000", "500000"})
+    public int size;
+
+    @Param({"4", "10", "15"})
+    public float zoom;
+
+    private TreasureTable table;
+    private NonHierarchicalDistanceBasedAlgorithm<TreasureItem> nonHierarchical;
+    private NonHierarchicalViewBasedAlgorithm<TreasureItem> viewBased;
+    private GridBasedAlgorithm<TreasureItem> gridBased;
+    private TreasureClusterAlgorithm precomputed;
+    private TreasureClusterAlgorithm precomputedInTimeRange;
+
+    @Override
+    protected void setUp() {
+        table = dataset.toTable();
+        List<TreasureItem> items = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            items.add(new TreasureItem(table, table.getId(row)));
+        }
+        CameraPosition camera = new CameraPosition(new LatLng(35.17, 33.36), zoom, 0f, 0f);
+
+        nonHierarchical = new NonHierarchicalDistanceBasedAlgorithm<>();
+        nonHierarchical.addItems(items);
+
+        viewBased = new NonHierarchicalViewBasedAlgorithm<>(VIEW_WIDTH_DP, VIEW_HEIGHT_DP);
+        viewBased.onCameraChange(camera);
+        viewBased.addItems(items);
+
+        gridBased = new GridBasedAlgorithm<>();
+        gridBased.addItems(items);
+
+        precomputed = new TreasureClusterAlgorithm(VIEW_WIDTH_DP, VIEW_HEIGHT_DP);
+        precomputed.onCameraChange(camera);
+        long[] ids = new long[size];
+        for (int row = 0; row < size; row++) {
+            ids[row] = table.getId(row);
+        }
+        // The hierarchy is built once and then kept until the treasures change
+        TreasureClusterAlgorithm.Snapshot snapshot = precomputed.index(table, ids,
+                dataset.latitudes, dataset.longitudes, dataset.timestamps, size);
+        precomputed.setSnapshot(snapshot);
+
+        // The middle half of the timeline, so many clusters only count part of their treasures
+        precomputedInTimeRange = new TreasureClusterAlgorithm(VIEW_WIDTH_DP, VIEW_HEIGHT_DP);
+        precomputedInTimeRange.onCameraChange(camera);
+        precomputedInTimeRange.setSnapshot(snapshot);
+        if (size > 0) {
+            long first = dataset.timestamps[0];
+            long span = dataset.timestamps[size - 1] - first;
+            precomputedInTimeRange.setTimeRange(first + span / 4, first + span * 3 / 4);
+        }
+    }
+
+    @Benchmark
+    public Set<? extends Cluster<TreasureItem>> nonHierarchicalDistanceBased() {
+        return nonHierarchical.getClusters(zoom);
+    }
+
+    @Benchmark
+    public Set<? extends Cluster<TreasureItem>> nonHierarchicalViewBased() {
+        return viewBased.getClusters(zoom);
+    }
+
+    @Benchmark
+    public Set<? extends Cluster<TreasureItem>> gridBased() {
+        return gridBased.getClusters(zoom);
+    }
+
+    @Benchmark
+    public Set<? extends Cluster<TreasureItem>> precomputedHierarchy() {
+        return precomputed.getClusters(zoom);
+    }
+
+    @Benchmark
+    public Set<? extends Cluster<TreasureItem>> precomputedHierarchyInTimeRange() {
+        return precomputedInTimeRange.getClusters(zoom);
+    }
+
+    // What the precomputed algorithm pays once, on a worker, after the treasures change
+    @Benchmark
+    public TreasureClusterIndex buildHierarchy() {
+        return TreasureClusterIndex.build(dataset.latitudes, dataset.longitudes, dataset.timestamps,
+                size, 0, 16, MAX_DISTANCE_DP, 256);
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
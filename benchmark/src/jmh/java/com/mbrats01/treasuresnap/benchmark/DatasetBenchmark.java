@@ -0,0 +1,48 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common parameters of the benchmarks: every one runs over each distribution, and declares the
+ * dataset sizes worth running for it as its own "size" @Param. Both can be overridden from the
+ * command line, see benchmark/build.gradle.kts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public abstract class DatasetBenchmark {
+
+    static final long SEED = 42;
+
+    @Param({"UNIFORM", "HOTSPOT", "CITY_GRID"})
+    public TreasureDataset.Distribution distribution;
+
+    protected TreasureDataset dataset;
+
+    @Setup
+    public void generateDataset() throws Exception {
+        dataset = TreasureDataset.generate(distribution, size(), SEED);
+        setUp();
+    }
+
+    // Number of treasures in the dataset, usually the benchmark's "size" @Param
+    protected abstract int size();
+
+    // Runs after the dataset was generated, once per trial
+    protected void setUp() throws Exception {
+    }
+}
@@ -0,0 +1,81 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.TreasureStore;
+import com.mbrats01.treasuresnap.location.ProximityEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// One location fix through the proximity alerts while the player walks among the treasures
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProximityBenchmark extends DatasetBenchmark {
+
+    // Runs the io work and the callbacks inline, so open() returns with the store loaded
+    private static final Executor DIRECT = Runnable::run;
+    private static final int STEPS = 1024;
+    // A few metres per fix, about one fix a second on foot
+    private static final double STEP_DEGREES = 0.00003;
+    private static final double RADIUS_METERS = 30;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File logFile;
+    private TreasureStore store;
+    private ProximityEngine engine;
+    private final double[] latitudeSteps = new double[STEPS];
+    private final double[] longitudeSteps = new double[STEPS];
+    private double latitude;
+    private double longitude;
+    private int next;
+    private int alerts;
+
+    @Override
+    protected void setUp() throws IOException {
+        logFile = Files.createTempFile("treasures", ".log").toFile();
+        dataset.writeLog(logFile);
+        store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        engine = new ProximityEngine(store, RADIUS_METERS, (id, row, distance) -> alerts++);
+
+        // The walk starts at a treasure, so it stays where the data is
+        Random random = new Random(SEED);
+        int start = random.nextInt(size);
+        latitude = dataset.latitudes[start];
+        longitude = dataset.longitudes[start];
+        for (int i = 0; i < STEPS; i++) {
+            latitudeSteps[i] = random.nextGaussian() * STEP_DEGREES;
+            longitudeSteps[i] = random.nextGaussian() * STEP_DEGREES;
+        }
+    }
+
+    @TearDown
+    public void closeStore() {
+        store.close();
+        if (!logFile.delete()) {
+            logFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int onLocation() {
+        int i = next++ & (STEPS - 1);
+        latitude += latitudeSteps[i];
+        longitude += longitudeSteps[i];
+        engine.onLocation(latitude, longitude, 10);
+        return alerts;
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
@@ -0,0 +1,88 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.TreasureSpatialIndex;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Viewport and nearest-neighbour queries through the quadtree versus a scan of the whole table,
+// and building the tree
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialQueryBenchmark extends DatasetBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    // Height and width of the viewport: a few streets or a whole region
+    @Param({"0.01", "1.0"})
+    public double viewportDegrees;
+
+    private TreasureTable table;
+    private TreasureSpatialIndex index;
+    // Viewports centred on random treasures, so they are as busy as the data is
+    private final double[] souths = new double[QUERIES];
+    private final double[] wests = new double[QUERIES];
+    private int next;
+
+    @Override
+    protected void setUp() {
+        table = dataset.toTable();
+        index = new TreasureSpatialIndex(table);
+        index.insertRange(0, table.size());
+
+        Random random = new Random(SEED);
+        for (int i = 0; i < QUERIES; i++) {
+            int row = random.nextInt(size);
+            souths[i] = table.getLatitude(row) - viewportDegrees / 2;
+            wests[i] = table.getLongitude(row) - viewportDegrees / 2;
+        }
+    }
+
+    @Benchmark
+    public int spatialIndex() {
+        int i = next++ & (QUERIES - 1);
+        return index.query(souths[i], wests[i], souths[i] + viewportDegrees, wests[i] + viewportDegrees, row -> { });
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int i = next++ & (QUERIES - 1);
+        double north = souths[i] + viewportDegrees;
+        double east = wests[i] + viewportDegrees;
+        int found = 0;
+        for (int row = 0; row < table.size(); row++) {
+            double latitude = table.getLatitude(row);
+            double longitude = table.getLongitude(row);
+            if (latitude >= souths[i] && latitude <= north && longitude >= wests[i] && longitude <= east) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // The closest finds panel, from the centre of the viewport
+    @Benchmark
+    public int nearest() {
+        int i = next++ & (QUERIES - 1);
+        return index.nearest(souths[i] + viewportDegrees / 2, wests[i] + viewportDegrees / 2, 20, (row, distance) -> { });
+    }
+
+    @Benchmark
+    public TreasureSpatialIndex buildIndex() {
+        TreasureSpatialIndex built = new TreasureSpatialIndex(table);
+        built.insertRange(0, table.size());
+        return built;
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
@@ -0,0 +1,82 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// Adding a whole dataset to an empty store one treasure at a time versus in batches, as an
+// import does; log writes and index updates included. Reported in treasures per second, so the
+// dataset has a fixed size.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(StoreIngestBenchmark.RECORDS)
+public class StoreIngestBenchmark extends DatasetBenchmark {
+
+    static final int RECORDS = 100_000;
+
+    // Runs the io work and the callbacks inline, so every add has reached the log when it returns
+    private static final Executor DIRECT = Runnable::run;
+
+    @Param({"10000"})
+    public int batchSize;
+
+    private List<Treasure> treasures;
+
+    @Override
+    protected void setUp() {
+        treasures = dataset.toTreasures();
+    }
+
+    @Benchmark
+    public int singleAdds() throws IOException {
+        File logFile = Files.createTempFile("treasures", ".log").toFile();
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        try {
+            for (Treasure treasure : treasures) {
+                store.add(treasure);
+            }
+            return store.size();
+        } finally {
+            close(store, logFile);
+        }
+    }
+
+    @Benchmark
+    public int batchedAdds() throws IOException {
+        File logFile = Files.createTempFile("treasures", ".log").toFile();
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        try {
+            for (int from = 0; from < RECORDS; from += batchSize) {
+                store.addAll(treasures.subList(from, Math.min(RECORDS, from + batchSize)));
+            }
+            return store.size();
+        } finally {
+            close(store, logFile);
+        }
+    }
+
+    private static void close(TreasureStore store, File logFile) {
+        store.close();
+        if (!logFile.delete()) {
+            logFile.deleteOnExit();
+        }
+    }
+
+    @Override
+    protected int size() {
+        return RECORDS;
+    }
+}
@@ -0,0 +1,66 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.TreasureLog;
+import com.mbrats01.treasuresnap.data.TreasureStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+
+// Opening a store from its log at app start: reading the records, then indexing them
+public class StoreLoadBenchmark extends DatasetBenchmark {
+
+    // Runs the io work and the callbacks inline, so open() returns with the store loaded
+    private static final Executor DIRECT = Runnable::run;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File logFile;
+
+    @Override
+    protected void setUp() throws IOException {
+        logFile = Files.createTempFile("treasures", ".log").toFile();
+        dataset.writeLog(logFile);
+    }
+
+    @TearDown
+    public void deleteLog() {
+        if (!logFile.delete()) {
+            logFile.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int openStore() {
+        TreasureStore store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        store.close();
+        if (store.size() != size) {
+            throw new IllegalStateException("Loaded " + store.size() + " of " + size);
+        }
+        return store.size();
+    }
+
+    // The part of openStore() spent reading and decoding the log
+    @Benchmark
+    public long readLog() throws IOException {
+        long[] checksum = {0};
+        try (TreasureLog log = TreasureLog.open(logFile)) {
+            long position = 0;
+            while (position < log.getRecordCount()) {
+                position += log.read(position, 4096, record -> checksum[0] += record.timestamp);
+            }
+        }
+        return checksum[0];
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
@@ -0,0 +1,68 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.TreasureStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// One step of the timeline slider: a one-hour window of the hunt inside a fixed viewport
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimelineQueryBenchmark extends DatasetBenchmark {
+
+    // Runs the io work and the callbacks inline, so open() returns with the store loaded
+    private static final Executor DIRECT = Runnable::run;
+    private static final int STEPS = 1000;
+    private static final long WINDOW_MS = 3_600_000L;
+    // Around the hotspots and the city grid, like a player looking at their home town
+    private static final double SOUTH = 34.17;
+    private static final double WEST = 32.36;
+    private static final double NORTH = 36.17;
+    private static final double EAST = 34.36;
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private File logFile;
+    private TreasureStore store;
+    private long first;
+    private long span;
+    private int next;
+
+    @Override
+    protected void setUp() throws IOException {
+        logFile = Files.createTempFile("treasures", ".log").toFile();
+        dataset.writeLog(logFile);
+        store = TreasureStore.open(logFile, null, DIRECT, DIRECT);
+        first = dataset.timestamps[0];
+        span = dataset.timestamps[size - 1] - first;
+    }
+
+    @TearDown
+    public void closeStore() {
+        store.close();
+        if (!logFile.delete()) {
+            logFile.deleteOnExit();
+        }
+    }
+
+    // The window slides across the whole hunt, one step per call
+    @Benchmark
+    public int timelineStep() {
+        int step = next++ % STEPS;
+        long from = first + span * step / STEPS;
+        return store.query(SOUTH, WEST, NORTH, EAST, from, from + WINDOW_MS, row -> { });
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
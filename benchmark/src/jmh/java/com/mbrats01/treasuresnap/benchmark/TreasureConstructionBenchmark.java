@@ -0,0 +1,101 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.google.android.gms.maps.model.LatLng;
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// Building a whole dataset in the old layout, a Treasure plus a cluster item with its own LatLng and
+// formatted snippet per treasure, versus as rows of the columnar TreasureTable. With
+// -Pbenchmark.profilers=gc, gc.alloc.rate.norm gives the heap each layout takes per dataset.
+public class TreasureConstructionBenchmark extends DatasetBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    private String[] photoPaths;
+    // One formatter for all items, so what is allocated is close to what the items keep
+    private SimpleDateFormat snippetFormat;
+
+    @Override
+    protected void setUp() {
+        photoPaths = new String[size];
+        for (int i = 0; i < size; i++) {
+            photoPaths[i] = dataset.photoPath(i);
+        }
+        snippetFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.US);
+    }
+
+    @Benchmark
+    public List<LegacyTreasureItem> treasureObjectsAndItems() {
+        List<LegacyTreasureItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Treasure treasure = new Treasure(photoPaths[i], dataset.latitudes[i], dataset.longitudes[i],
+                    dataset.timestamps[i]);
+            items.add(new LegacyTreasureItem(treasure, snippetFormat));
+        }
+        return items;
+    }
+
+    @Benchmark
+    public List<Treasure> treasureObjects() {
+        List<Treasure> treasures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            treasures.add(new Treasure(photoPaths[i], dataset.latitudes[i], dataset.longitudes[i],
+                    dataset.timestamps[i]));
+        }
+        return treasures;
+    }
+
+    @Benchmark
+    public TreasureTable tableRows() {
+        TreasureTable table = new TreasureTable(size);
+        for (int i = 0; i < size; i++) {
+            int row = table.add(photoPaths[i], dataset.latitudes[i], dataset.longitudes[i], dataset.timestamps[i]);
+            table.setId(row, row + 1);
+        }
+        return table;
+    }
+
+    // Reading every treasure back, as the list and detail views do
+    @Benchmark
+    public void tableRowsToTreasures(Blackhole blackhole) {
+        TreasureTable table = tableRows();
+        for (int row = 0; row < table.size(); row++) {
+            blackhole.consume(table.get(row));
+        }
+    }
+
+    // The cluster item as it was before TreasureTable: every field copied out of the treasure
+    static final class LegacyTreasureItem {
+        final Treasure treasure;
+        final LatLng position;
+        final String title;
+        final String snippet;
+        final String photoPath;
+        final long timestamp;
+
+        LegacyTreasureItem(Treasure treasure, SimpleDateFormat snippetFormat) {
+            this.treasure = treasure;
+            this.position = new LatLng(treasure.getLatitude(), treasure.getLongitude());
+            this.title = "Treasure 📸";
+            this.snippet = snippetFormat.format(new Date(treasure.getTimestamp()));
+            this.photoPath = treasure.getPhotoPath();
+            this.timestamp = treasure.getTimestamp();
+        }
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
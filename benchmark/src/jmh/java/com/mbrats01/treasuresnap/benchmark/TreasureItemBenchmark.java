@@ -0,0 +1,68 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.TreasureTable;
+import com.mbrats01.treasuresnap.ui.map.TreasureItem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// The per-treasure work of making cluster items for a store
+public class TreasureItemBenchmark extends DatasetBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private TreasureTable table;
+
+    @Override
+    protected void setUp() {
+        table = dataset.toTable();
+    }
+
+    @Benchmark
+    public List<TreasureItem> createItems() {
+        List<TreasureItem> items = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            items.add(new TreasureItem(table, table.getId(row)));
+        }
+        return items;
+    }
+
+    // The clustering algorithms read every position at least once
+    @Benchmark
+    public void createItemsAndPositions(Blackhole blackhole) {
+        for (int row = 0; row < size; row++) {
+            blackhole.consume(new TreasureItem(table, table.getId(row)).getPosition());
+        }
+    }
+
+    // Formatting is normally deferred to the first info window; this is the cost if it isn't
+    @Benchmark
+    public void createItemsAndSnippets(Blackhole blackhole) {
+        for (int row = 0; row < size; row++) {
+            blackhole.consume(new TreasureItem(table, table.getId(row)).getSnippet());
+        }
+    }
+
+    // What TreasureItem did before snippets went through the cached TimestampFormatter
+    @Benchmark
+    public void createItemsAndSnippetsPerItemFormat(Blackhole blackhole) {
+        for (int row = 0; row < size; row++) {
+            TreasureItem item = new TreasureItem(table, table.getId(row));
+            blackhole.consume(new SimpleDateFormat("MMM dd, yyyy HH:mm:ss", Locale.getDefault())
+                    .format(new Date(item.getTimestamp())));
+        }
+    }
+
+    @Override
+    protected int size() {
+        return size;
+    }
+}
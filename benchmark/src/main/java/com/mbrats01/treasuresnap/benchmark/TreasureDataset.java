@@ -0,0 +1,168 @@
+package com.mbrats01.treasuresnap.benchmark;
+
+import com.mbrats01.treasuresnap.data.Treasure;
+import com.mbrats01.treasuresnap.data.TreasureLog;
+import com.mbrats01.treasuresnap.data.TreasureTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic treasures for the benchmarks. The same distribution, size and seed always give the
+ * same points, so results from different runs measure the same data.
+ */
+public final class TreasureDataset {
+
+    public enum Distribution {
+        // Anywhere in the Web Mercator band, the worst case for clustering
+        UNIFORM,
+        // Most treasures around a few popular places, the rest scattered
+        HOTSPOT,
+        // Treasures along the streets of a dense city grid, with many near-duplicates
+        CITY_GRID
+    }
+
+    // Centre of the hotspots and the city grid
+    private static final double HOME_LATITUDE = 35.17;
+    private static final double HOME_LONGITUDE = 33.36;
+    private static final int HOTSPOTS = 8;
+    private static final double HOTSPOT_BACKGROUND = 0.1;
+    private static final int STREETS = 200;
+    // Roughly 100 m between streets and a few metres of GPS noise
+    private static final double BLOCK_DEGREES = 0.001;
+    private static final double GPS_NOISE_DEGREES = 0.00005;
+    private static final long START_TIMESTAMP = 1_700_000_000_000L;
+
+    public final Distribution distribution;
+    public final int size;
+    public final double[] latitudes;
+    public final double[] longitudes;
+    public final long[] timestamps;
+
+    private TreasureDataset(Distribution distribution, int size) {
+        this.distribution = distribution;
+        this.size = size;
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        this.timestamps = new long[size];
+    }
+
+    public static TreasureDataset generate(Distribution distribution, int size, long seed) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size " + size);
+        }
+        TreasureDataset dataset = new TreasureDataset(distribution, size);
+        Random random = new Random(seed);
+        switch (distribution) {
+            case UNIFORM:
+                dataset.fillUniform(random);
+                break;
+            case HOTSPOT:
+                dataset.fillHotspots(random);
+                break;
+            case CITY_GRID:
+                dataset.fillCityGrid(random);
+                break;
+        }
+        // Found one after another, a few minutes apart on average
+        long timestamp = START_TIMESTAMP;
+        for (int i = 0; i < size; i++) {
+            timestamp += 1000 + random.nextInt(300_000);
+            dataset.timestamps[i] = timestamp;
+        }
+        return dataset;
+    }
+
+    public String photoPath(int i) {
+        return "IMG_" + i + ".jpg";
+    }
+
+    public List<Treasure> toTreasures() {
+        List<Treasure> treasures = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            treasures.add(new Treasure(photoPath(i), latitudes[i], longitudes[i], timestamps[i]));
+        }
+        return treasures;
+    }
+
+    // Rows numbered with ids 1..size, as a loaded store would have them
+    public TreasureTable toTable() {
+        TreasureTable table = new TreasureTable(size);
+        for (int i = 0; i < size; i++) {
+            int row = table.add(photoPath(i), latitudes[i], longitudes[i], timestamps[i]);
+            table.setId(row, row + 1);
+        }
+        return table;
+    }
+
+    // Writes the treasures as a treasure log, replacing the file
+    public void writeLog(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        List<TreasureLog.Record> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TreasureLog.Record record = new TreasureLog.Record();
+            record.id = i + 1;
+            record.photoRef = photoPath(i);
+            record.latitude = latitudes[i];
+            record.longitude = longitudes[i];
+            record.timestamp = timestamps[i];
+            records.add(record);
+        }
+        try (TreasureLog log = TreasureLog.open(file)) {
+            log.appendAll(records);
+            log.sync();
+        }
+    }
+
+    private void fillUniform(Random random) {
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = random.nextDouble() * 170 - 85;
+            longitudes[i] = random.nextDouble() * 360 - 180;
+        }
+    }
+
+    private void fillHotspots(Random random) {
+        double[] centerLatitudes = new double[HOTSPOTS];
+        double[] centerLongitudes = new double[HOTSPOTS];
+        double[] spreads = new double[HOTSPOTS];
+        for (int h = 0; h < HOTSPOTS; h++) {
+            // Within a day's drive of home, from a single square to a whole town
+            centerLatitudes[h] = HOME_LATITUDE + random.nextGaussian() * 0.5;
+            centerLongitudes[h] = HOME_LONGITUDE + random.nextGaussian() * 0.5;
+            spreads[h] = 0.001 + random.nextDouble() * 0.05;
+        }
+        for (int i = 0; i < size; i++) {
+            if (random.nextDouble() < HOTSPOT_BACKGROUND) {
+                latitudes[i] = random.nextDouble() * 170 - 85;
+                longitudes[i] = random.nextDouble() * 360 - 180;
+                continue;
+            }
+            int h = random.nextInt(HOTSPOTS);
+            latitudes[i] = clampLatitude(centerLatitudes[h] + random.nextGaussian() * spreads[h]);
+            longitudes[i] = centerLongitudes[h] + random.nextGaussian() * spreads[h];
+        }
+    }
+
+    private void fillCityGrid(Random random) {
+        double south = HOME_LATITUDE - STREETS / 2 * BLOCK_DEGREES;
+        double west = HOME_LONGITUDE - STREETS / 2 * BLOCK_DEGREES;
+        double extent = STREETS * BLOCK_DEGREES;
+        for (int i = 0; i < size; i++) {
+            // Somewhere along a random street, running either north-south or east-west
+            double street = random.nextInt(STREETS + 1) * BLOCK_DEGREES;
+            double along = random.nextDouble() * extent;
+            boolean northSouth = random.nextBoolean();
+            latitudes[i] = south + (northSouth ? along : street) + random.nextGaussian() * GPS_NOISE_DEGREES;
+            longitudes[i] = west + (northSouth ? street : along) + random.nextGaussian() * GPS_NOISE_DEGREES;
+        }
+    }
+
+    private static double clampLatitude(double latitude) {
+        return Math.max(-85, Math.min(85, latitude));
+    }
+}